@@ -0,0 +1,28 @@
+package net.hidme.mahjong.benchmark;
+
+import net.hidme.mahjong.core.data.MCRHand;
+import net.hidme.mahjong.core.quiz.MCRHandGenerator;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of quiz hand generation.
+ * Generated hands are random, so results vary more than those of {@link MCRScoringBenchmark}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class MCRHandGeneratorBenchmark {
+
+    private final MCRHandGenerator generator = new MCRHandGenerator();
+
+    @Benchmark
+    public MCRHand generate() {
+        return generator.generate();
+    }
+
+}
@@ -0,0 +1,83 @@
+package net.hidme.mahjong.benchmark;
+
+import net.hidme.mahjong.core.calc.HandStructure;
+import net.hidme.mahjong.core.calc.MCRCalculator;
+import net.hidme.mahjong.core.calc.MCRDeclaredTileCalculator;
+import net.hidme.mahjong.core.calc.MCRStructureAnalyzer;
+import net.hidme.mahjong.core.data.MCRHand;
+import net.hidme.mahjong.core.data.MCRHandParser;
+import net.hidme.mahjong.core.data.Result;
+import net.hidme.mahjong.core.data.Tile;
+import org.openjdk.jmh.annotations.*;
+
+import java.text.ParseException;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of the scoring pipeline on fixed hands of different shapes.
+ * Run with {@code -prof gc} to see the allocation rate.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Benchmark)
+public class MCRScoringBenchmark {
+
+    /**
+     * Hands of typical shapes in the format of {@link MCRHandParser}.
+     */
+    public enum Shape {
+
+        CHICKEN_HAND(";123m0,345m0;56s678pWW7s;N,E,0,0,0,0"),
+        NINE_GATES(";;11123456789999s;E,E,0,0,0,0"),
+        SEVEN_SHIFTED_PAIRS(";;11223344556677s;S,W,0,0,0,0"),
+        KNITTED_STRAIGHT(";;147m258p369s123mEE;S,W,0,0,0,0");
+
+        Shape(String hand) {
+            this.hand = hand;
+        }
+
+        private final String hand;
+
+    }
+
+    @Param
+    public Shape shape;
+
+    private String handString;
+    private MCRHand hand;
+    private final MCRHandParser parser = new MCRHandParser();
+    private final MCRStructureAnalyzer analyzer = new MCRStructureAnalyzer();
+    private final MCRCalculator calculator = new MCRCalculator();
+
+    @Setup
+    public void setup() throws ParseException {
+        handString = shape.hand;
+        hand = parser.parse(handString);
+    }
+
+    @Benchmark
+    public MCRHand parse() throws ParseException {
+        return parser.parse(handString);
+    }
+
+    @Benchmark
+    public List<HandStructure> getPossibleStructures() {
+        return analyzer.getPossibleStructures(hand);
+    }
+
+    @Benchmark
+    public Result calculate() {
+        return calculator.calculate(hand);
+    }
+
+    @Benchmark
+    public Set<Tile> calculateDeclaredTiles() {
+        return new MCRDeclaredTileCalculator(hand.claims, hand.tiles).calculate(false);
+    }
+
+}
@@ -2,7 +2,9 @@ module net.hidme.mahjong.core {
     requires com.google.common;
 
     exports net.hidme.mahjong.core.calc;
+    exports net.hidme.mahjong.core.cli;
     exports net.hidme.mahjong.core.data;
     exports net.hidme.mahjong.core.quiz;
+    exports net.hidme.mahjong.core.stats;
     exports net.hidme.mahjong.core.util;
 }
\ No newline at end of file
@@ -0,0 +1,89 @@
+package net.hidme.mahjong.core.calc;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import net.hidme.mahjong.core.data.*;
+
+/**
+ * A calculator for MCR with a bounded cache of results in front of an {@link MCRCalculator}.
+ * Hands are keyed by a canonical encoding, so a cache hit skips the calculation entirely.
+ * When the cache is full, the least recently used results are evicted.
+ * <p>
+ *     Each call returns a copy of the cached result, which the caller may modify.
+ *     The calculator is safe for concurrent use.
+ * </p>
+ */
+public class MCRCachedCalculator implements Calculator {
+
+    /**
+     * @param calculator the calculator for hands not in the cache
+     * @param maximumSize the maximum number of cached results
+     */
+    public MCRCachedCalculator(MCRCalculator calculator, long maximumSize) {
+        this.calculator = calculator;
+        cache = CacheBuilder.newBuilder()
+                .maximumSize(maximumSize)
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * Calculate the Fan for a Hu hand of tiles in MCR, or look it up in the cache.
+     * @see MCRCalculator#calculate(Hand)
+     */
+    @Override
+    public Result calculate(Hand hand) {
+        if (!(hand instanceof MCRHand mcrHand))
+            throw new IllegalArgumentException("incompatible hand type " + hand.getClass().getName());
+        final String key = encode(mcrHand);
+        MCRResult result = cache.getIfPresent(key);
+        if (result == null) {
+            // the same hand may be calculated by several threads at the same time, which is harmless
+            result = (MCRResult) calculator.calculate(mcrHand);
+            cache.put(key, result);
+        }
+        return new MCRResult(result);
+    }
+
+    /**
+     * Get statistics of the cache, e.g. the number of hits and misses.
+     */
+    public CacheStats getStats() {
+        return cache.stats();
+    }
+
+    /**
+     * Get the approximate number of cached results.
+     */
+    public long size() {
+        return cache.size();
+    }
+
+    public void clear() {
+        cache.invalidateAll();
+    }
+
+    /**
+     * Encode everything of a hand that affects its Fan into a string of small chars.
+     * Hand tiles are sorted, so hands only different in the order of hand tiles have the same encoding.
+     * Flower tiles are only counted.
+     * It starts with the key of {@link MCRTileAnalysis#keyOf(MCRHand)}.
+     */
+    static String encode(MCRHand hand) {
+        final StringBuilder builder = new StringBuilder(32);
+        MCRTileAnalysis.appendKey(builder, hand);
+        builder.append((char) ((hand.selfDrawn ? 1 : 0)
+                        | (hand.lastTile ? 2 : 0)
+                        | (hand.lastDrawOrClaim ? 4 : 0)
+                        | (hand.kong ? 8 : 0)))
+                .append((char) hand.prevalentWind.ordinal())
+                .append((char) hand.seatWind.ordinal())
+                .append((char) hand.flowers.length);
+        return builder.toString();
+    }
+
+    private final MCRCalculator calculator;
+    private final Cache<String, MCRResult> cache;
+
+}
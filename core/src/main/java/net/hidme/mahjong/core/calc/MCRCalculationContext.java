@@ -0,0 +1,39 @@
+package net.hidme.mahjong.core.calc;
+
+import net.hidme.mahjong.core.data.MCRHand;
+import net.hidme.mahjong.core.data.Tile;
+
+import java.util.Set;
+
+/**
+ * Per-hand state shared by all structures within a single MCR calculation.
+ * Results that only depend on the hand (not on a certain structure) are computed lazily and memoized here.
+ * A context is confined to a single calculation and is not safe for concurrent use.
+ */
+public class MCRCalculationContext {
+
+    public MCRCalculationContext(MCRHand hand) {
+        this.hand = hand;
+    }
+
+    public MCRHand getHand() {
+        return hand;
+    }
+
+    /**
+     * Get the set of tiles that complete the hand without the declared tile.
+     * Arbitrarily many of each tile are allowed, so the declared tile is always included.
+     * The set is calculated on first use.
+     */
+    public Set<Tile> getDeclaredTiles() {
+        if (declaredTiles == null) {
+            final MCRDeclaredTileCalculator declaredTileCalculator = new MCRDeclaredTileCalculator(hand.claims, hand.tiles);
+            declaredTiles = declaredTileCalculator.calculate(true);
+        }
+        return declaredTiles;
+    }
+
+    private final MCRHand hand;
+    private Set<Tile> declaredTiles;
+
+}
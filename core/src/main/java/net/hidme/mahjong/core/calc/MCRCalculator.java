@@ -2,15 +2,40 @@ package net.hidme.mahjong.core.calc;
 
 import net.hidme.mahjong.core.data.*;
 
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.stream.Stream;
 
 import static net.hidme.mahjong.core.data.MCRFan.*;
 
 /**
  * The calculator for MCR (Mahjong Chinese Rule).
+ * <p>
+ *     A calculator is safe for concurrent use, so a single instance may be shared.
+ *     It holds no mutable state; shared tables are immutable or memoize values deterministically,
+ *     and everything else (contexts, results and Fan calculators) is created per calculation.
+ * </p>
+ * <p>
+ *     With an {@link MCRWinningHandIndex}, hands covered by the index are looked up first,
+ *     and only hands not found are calculated.
+ * </p>
  */
 public class MCRCalculator implements Calculator {
 
+    public MCRCalculator() {
+        this(null);
+    }
+
+    /**
+     * @param index the index in which covered hands are looked up before being calculated, or {@code null}
+     */
+    public MCRCalculator(MCRWinningHandIndex index) {
+        this.index = index;
+    }
+
     /**
      * Calculate the Fan for a Hu hand of tiles in MCR.
      * The caller may want to cast the return value into an {@link MCRResult MCRResult} object.
@@ -21,26 +46,162 @@ public class MCRCalculator implements Calculator {
     public Result calculate(Hand hand) {
         if (!(hand instanceof MCRHand mcrHand))
             throw new IllegalArgumentException("incompatible hand type " + hand.getClass().getName());
-        final MCRStructureAnalyzer analyzer = new MCRStructureAnalyzer();
+        return calculateHand(mcrHand);
+    }
+
+    /**
+     * Analyze the tiles of a hand, so that hands with the same tiles, declared tile and claims
+     * can be calculated for other flowers and options without analyzing their structures again.
+     * The index is not consulted by the analysis.
+     */
+    public MCRTileAnalysis analyze(MCRHand hand) {
+        return new MCRTileAnalysis(analyzer, hand);
+    }
+
+    /**
+     * Calculate the Fan for each hand in parallel on the common fork-join pool.
+     * @return calculation results in the order of hands
+     * @see #calculateAll(List, ForkJoinPool)
+     */
+    public List<MCRResult> calculateAll(List<? extends MCRHand> hands) {
+        return calculateAll(hands, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Calculate the Fan for each hand in parallel on {@code pool}.
+     * Hands are split into batches, each of which is calculated by a single task.
+     * The call blocks until all hands are calculated,
+     * and the first exception thrown by any hand is rethrown.
+     * @return calculation results in the order of hands
+     */
+    public List<MCRResult> calculateAll(List<? extends MCRHand> hands, ForkJoinPool pool) {
+        final MCRResult[] results = new MCRResult[hands.size()];
+        pool.invoke(new BatchTask(hands, results, 0, results.length));
+        return List.of(results);
+    }
+
+    /**
+     * Calculate the Fan for each hand of a stream lazily.
+     * The returned stream is parallel iff {@code hands} is parallel,
+     * and ordered iff {@code hands} is ordered.
+     */
+    public Stream<MCRResult> calculateAll(Stream<? extends MCRHand> hands) {
+        return hands.map(this::calculateHand);
+    }
+
+    // the number of hands calculated by a single task without being split
+    private static final int BATCH_SIZE = 64;
+
+    private class BatchTask extends RecursiveAction {
+
+        BatchTask(List<? extends MCRHand> hands, MCRResult[] results, int from, int to) {
+            this.hands = hands;
+            this.results = results;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= BATCH_SIZE) {
+                for (int i = from; i < to; i++) {
+                    results[i] = calculateHand(hands.get(i));
+                }
+                return;
+            }
+            final int middle = (from + to) >>> 1;
+            invokeAll(new BatchTask(hands, results, from, middle), new BatchTask(hands, results, middle, to));
+        }
+
+        private final List<? extends MCRHand> hands;
+        private final MCRResult[] results;
+        private final int from, to;
+
+    }
+
+    private MCRResult calculateHand(MCRHand mcrHand) {
+        if (index != null) {
+            final MCRResult indexed = index.lookup(mcrHand);
+            if (indexed != null) return indexed;
+        }
         final List<HandStructure> structures = analyzer.getPossibleStructures(mcrHand);
+        // structures of the same hand share the context
+        final MCRCalculationContext context = new MCRCalculationContext(mcrHand);
+        if (structures.size() == 1)
+            return calculate(context, structures.getFirst());
+        // Fans of sets are cheap and exact, so they are calculated first to order and bound structures
+        final int count = structures.size();
+        final MCRResult[] results = new MCRResult[count];
+        // upper bounds of Fans of normal structures, excluding Fans of the hand shared by them
+        final int[] bounds = new int[count];
+        final List<Integer> order = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            final HandStructure structure = structures.get(i);
+            results[i] = new MCRResult();
+            new MCRSetFanCalc(mcrHand, structure, results[i]).calculate();
+            bounds[i] = structure instanceof NormalHandStructure normalStruct
+                    ? results[i].getFanTotal() + MCRTotalFanCalc.getStructureFanBound(normalStruct)
+                    : UNBOUNDED;
+            order.add(i);
+        }
+        // the most promising structure first
+        order.sort(Comparator.comparingInt((Integer i) -> bounds[i]).reversed());
+        // the total of Fans of the hand, which is known after a normal structure is calculated
+        int handFanTotal = -1;
         MCRResult result = new MCRResult();
-        // calculate each structure and select the largest Fan result
-        for (HandStructure structure : structures) {
-            final MCRResult tmpResult = calculate(mcrHand, structure);
-            if (tmpResult.getFanTotal() > result.getFanTotal())
+        int resultIndex = -1;
+        for (int i : order) {
+            final HandStructure structure = structures.get(i);
+            if (resultIndex >= 0 && bounds[i] != UNBOUNDED && handFanTotal >= 0) {
+                // skip a structure that cannot beat the current result
+                // the earliest structure is selected among those with the largest Fan
+                final int bound = Math.max(handFanTotal + bounds[i], CHICKEN_HAND.score)
+                        + FLOWER_TILE.score * mcrHand.flowers.length;
+                if (bound < result.getFanTotal() || bound == result.getFanTotal() && i > resultIndex) continue;
+            }
+            final MCRResult tmpResult;
+            if (structure instanceof NormalHandStructure && handFanTotal < 0) {
+                final int setFanTotal = results[i].getFanTotal();
+                final MCRTotalFanCalc totalFanCalc = new MCRTotalFanCalc(context, structure, results[i]);
+                totalFanCalc.calculateHandFans();
+                handFanTotal = results[i].getFanTotal() - setFanTotal;
+                totalFanCalc.calculateStructureFans();
+                tmpResult = resolve(mcrHand, results[i]);
+            } else {
+                tmpResult = calculateTotalFans(context, structure, results[i]);
+            }
+            final int total = tmpResult.getFanTotal();
+            if (resultIndex < 0 || total > result.getFanTotal() || total == result.getFanTotal() && i < resultIndex) {
                 result = tmpResult;
+                resultIndex = i;
+            }
         }
         return result;
     }
 
+    // the bound of structures that are never skipped
+    private static final int UNBOUNDED = Integer.MAX_VALUE;
+
+    // the optional index of precomputed results
+    private final MCRWinningHandIndex index;
+    // the analyzer is stateless and shared by all calculations
+    private final MCRStructureAnalyzer analyzer = new MCRStructureAnalyzer();
+
     // calculate Fan of a hand w.r.t a certain structure
-    private MCRResult calculate(MCRHand hand, HandStructure structure) {
+    private MCRResult calculate(MCRCalculationContext context, HandStructure structure) {
         final MCRResult result = new MCRResult();
-        // first check total properties
-        new MCRTotalFanCalc(hand, structure, result).calculate();
-        // then check Fans over sets
-        new MCRSetFanCalc(hand, structure, result).calculate();
-        // resolve Fan conflicts
+        new MCRSetFanCalc(context.getHand(), structure, result).calculate();
+        return calculateTotalFans(context, structure, result);
+    }
+
+    // check total properties after Fans over sets are added to result
+    private MCRResult calculateTotalFans(MCRCalculationContext context, HandStructure structure, MCRResult result) {
+        new MCRTotalFanCalc(context, structure, result).calculate();
+        return resolve(context.getHand(), result);
+    }
+
+    // resolve Fan conflicts after all Fans are added
+    static MCRResult resolve(MCRHand hand, MCRResult result) {
         MCRFanConflictResolver.resolveConflict(result);
         // chicken hand is checked at last
         if (result.isEmpty())
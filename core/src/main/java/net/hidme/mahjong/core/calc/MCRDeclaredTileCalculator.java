@@ -1,12 +1,16 @@
 package net.hidme.mahjong.core.calc;
 
 import net.hidme.mahjong.core.data.Claim;
-import net.hidme.mahjong.core.data.MCRHand;
 import net.hidme.mahjong.core.data.Tile;
+import net.hidme.mahjong.core.data.TileCounts;
 
 import java.util.LinkedHashSet;
 import java.util.Set;
 
+/**
+ * The calculator of tiles that lead to winning in MCR.
+ * It does not modify the given claims and tiles, so it is safe for concurrent use if they are not modified.
+ */
 public class MCRDeclaredTileCalculator {
 
     /**
@@ -25,15 +29,17 @@ public class MCRDeclaredTileCalculator {
      */
     public Set<Tile> calculate(boolean allowsInvalidTileSet) {
         final Set<Tile> declaredTiles = new LinkedHashSet<>();
-        for (Tile tile : Tile.values()) {
-            try {
-                final MCRHand mcrHand = new MCRHand(new Tile[0], claims, tiles, tile, allowsInvalidTileSet, true);
-                final MCRStructureAnalyzer analyzer = new MCRStructureAnalyzer();
-                if (!analyzer.getPossibleStructures(mcrHand).isEmpty())
-                    declaredTiles.add(tile);
-            } catch (Throwable ignored) {
-                ignored.printStackTrace();
-            }
+        final MCRStructureAnalyzer analyzer = new MCRStructureAnalyzer();
+        // probe each tile on the same counts; no hand is constructed
+        final byte[] counts = TileCounts.of(tiles).toArray();
+        final TileCounts claimCounts = TileCounts.ofClaims(claims);
+        for (int i = 0; i < TileCounts.SIZE; i++) {
+            // a tile must not be used more than 4 times
+            if (!allowsInvalidTileSet && counts[i] + claimCounts.count(i) >= 4) continue;
+            counts[i]++;
+            if (analyzer.isWinning(counts, claims.length != 0))
+                declaredTiles.add(TileCounts.tileAt(i));
+            counts[i]--;
         }
         return declaredTiles;
     }
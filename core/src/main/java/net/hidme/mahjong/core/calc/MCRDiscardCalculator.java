@@ -0,0 +1,120 @@
+package net.hidme.mahjong.core.calc;
+
+import net.hidme.mahjong.core.data.Claim;
+import net.hidme.mahjong.core.data.Tile;
+import net.hidme.mahjong.core.data.TileCounts;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * The discard calculator for MCR.
+ * For each discard of a hand, it finds the resulting shanten and the effective tiles,
+ * i.e. tiles that decrease the shanten when drawn.
+ * For a ready hand, the effective tiles are the tiles that lead to winning
+ * (see {@link MCRDeclaredTileCalculator}, regardless of the fan requirement).
+ */
+public class MCRDiscardCalculator {
+
+    /**
+     * A discard and its consequence.
+     * @param tile the discarded tile
+     * @param shanten the shanten after discarding
+     * @param effectiveTiles effective tiles in the order of tiles, which are not all visible
+     * @param effectiveTileCount the total number of effective tiles not visible
+     */
+    public record Discard(Tile tile, int shanten, List<Tile> effectiveTiles, int effectiveTileCount) {
+    }
+
+    /**
+     * Initialize the calculator with a hand of 14 tiles (possibly including claims).
+     * Flower tiles are ignored.
+     */
+    public MCRDiscardCalculator(Claim[] claims, Tile[] tiles) {
+        this.claims = claims;
+        this.tiles = tiles;
+    }
+
+    /**
+     * Calculate all discards without other visible tiles.
+     * @see #calculate(TileCounts)
+     */
+    public List<Discard> calculate() {
+        return calculate(TileCounts.EMPTY);
+    }
+
+    /**
+     * Calculate all discards, one for each distinct tile in hand.
+     * Discards are sorted by shanten, then by the number of effective tiles (descending), then by tiles.
+     * @param visibleTiles tiles visible to the player other than the hand and claims
+     *                     (e.g. discards and claims of other players),
+     *                     which are not counted as effective tiles
+     */
+    public List<Discard> calculate(TileCounts visibleTiles) {
+        final MCRShantenCalculator shantenCalculator = new MCRShantenCalculator();
+        // all discards and draws are probed on the same counts
+        final byte[] counts = TileCounts.of(tiles).toArray();
+        final TileCounts claimCounts = TileCounts.ofClaims(claims);
+        // the number of each tile not visible to the player
+        // a discarded tile is visible as well, so it does not depend on the discard
+        final int[] remaining = new int[TileCounts.SIZE];
+        for (int i = 0; i < TileCounts.SIZE; i++) {
+            remaining[i] = Math.max(0, 4 - counts[i] - claimCounts.count(i) - visibleTiles.count(i));
+        }
+        final int claimCount = claims.length;
+        final List<Discard> discards = new ArrayList<>();
+        for (int discarded = 0; discarded < TileCounts.SIZE; discarded++) {
+            if (counts[discarded] == 0) continue;
+            counts[discarded]--;
+            final int shanten = shantenCalculator.calculate(counts, claimCount);
+            // a draw decreases the shanten of each shape by at most 1,
+            // so only shapes with the least shanten are concerned
+            final boolean normal = shantenCalculator.calculateNormal(counts, claimCount) == shanten;
+            final boolean sevenPairs = shantenCalculator.calculateSevenPairs(counts, claimCount) == shanten;
+            final boolean thirteenOrphans = shantenCalculator.calculateThirteenOrphans(counts, claimCount) == shanten;
+            // any tile may be effective for knitted tiles
+            final boolean knitted = shantenCalculator.calculateKnittedStraight(counts, claimCount) == shanten
+                    || shantenCalculator.calculateHonorsAndKnitted(counts, claimCount) == shanten;
+            final List<Tile> effectiveTiles = new ArrayList<>();
+            int effectiveTileCount = 0;
+            for (int drawn = 0; drawn < TileCounts.SIZE; drawn++) {
+                if (remaining[drawn] == 0) continue;
+                if (!knitted && !(normal && isConnected(counts, drawn))
+                        && !(sevenPairs && counts[drawn] > 0)
+                        && !(thirteenOrphans && TileCounts.tileAt(drawn).isOrphan()))
+                    continue;
+                counts[drawn]++;
+                if (shantenCalculator.calculate(counts, claimCount) < shanten) {
+                    effectiveTiles.add(TileCounts.tileAt(drawn));
+                    effectiveTileCount += remaining[drawn];
+                }
+                counts[drawn]--;
+            }
+            counts[discarded]++;
+            discards.add(new Discard(TileCounts.tileAt(discarded), shanten,
+                    List.copyOf(effectiveTiles), effectiveTileCount));
+        }
+        discards.sort(DISCARD_COMPARATOR);
+        return discards;
+    }
+
+    // whether a tile forms a pair or a partial chow with some tile in hand
+    private static boolean isConnected(byte[] counts, int index) {
+        if (counts[index] > 0) return true;
+        if (index >= 27) return false;
+        final int start = index / 9 * 9;
+        for (int i = Math.max(start, index - 2); i <= Math.min(start + 8, index + 2); i++) {
+            if (counts[i] > 0) return true;
+        }
+        return false;
+    }
+
+    private static final Comparator<Discard> DISCARD_COMPARATOR = Comparator.comparingInt(Discard::shanten)
+            .thenComparing(Comparator.comparingInt(Discard::effectiveTileCount).reversed())
+            .thenComparing(Discard::tile);
+
+    private final Claim[] claims;
+    private final Tile[] tiles;
+
+}
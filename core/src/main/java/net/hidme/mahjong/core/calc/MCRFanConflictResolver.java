@@ -9,67 +9,85 @@ import static net.hidme.mahjong.core.data.MCRFan.*;
 
 /**
  * Remove conflicts among MCR Fans.
+ * Each Fan has a precomputed exclusion mask, i.e. the bitset of Fans it implies
+ * (see {@link MCRResult} for the layout of Fan bitsets).
+ * The masks are never modified once built, so resolving is safe for concurrent use on different results.
  */
 public abstract class MCRFanConflictResolver {
 
     static void resolveConflict(MCRResult result) {
-        for (MCRFan fan : MCRFan.values()) {
-            if (result.containsFan(fan)) {
-                final Collection<MCRFan> conflicts = CONFLICT_MAP.get(fan);
-                if (conflicts != null) {
-                    for (MCRFan toRemove : conflicts) {
-                        result.removeFan(toRemove);
+        final long[] fanBits = result.getFanBits();
+        // Fans are visited in the order of ordinals, and a Fan removed before visited excludes nothing
+        for (int word = 0; word < fanBits.length; word++) {
+            long bits = fanBits[word];
+            while (bits != 0) {
+                final int bit = Long.numberOfTrailingZeros(bits);
+                final long[] exclusion = EXCLUSION_MASKS[word * 64 + bit];
+                if (exclusion != null) {
+                    for (int i = 0; i < fanBits.length; i++) {
+                        fanBits[i] &= ~exclusion[i];
                     }
                 }
                 // special
-                if (fan == NINE_GATES)
+                if (word * 64 + bit == NINE_GATES.ordinal())
                     result.reduceFan(PUNG_OF_TERMINALS_OR_HONORS);
+                // the rest of the word, which may have been changed by the exclusion
+                bits = fanBits[word] & (-2L << bit);
             }
         }
+        result.retainFans(fanBits);
     }
 
-    private static final Map<MCRFan, Collection<MCRFan>> CONFLICT_MAP;
+    // the exclusion mask of each Fan indexed by ordinals, or null if it excludes nothing
+    private static final long[][] EXCLUSION_MASKS = new long[MCRFan.values().length][];
 
     static {
-        CONFLICT_MAP = new HashMap<>();
-        addConflict(BIG_FOUR_WINDS, ALL_PUNGS);
-        addConflict(ALL_GREEN, HALF_FLUSH);
-        addConflict(NINE_GATES, FULL_FLUSH, FULLY_CONCEALED_HAND, CONCEALED_HAND, NO_HONORS);
-        addConflict(FOUR_KONGS, ALL_PUNGS, SINGLE_WAIT);
-        addConflict(SEVEN_SHIFTED_PAIRS, FULL_FLUSH, SEVEN_PAIRS, FULLY_CONCEALED_HAND, CONCEALED_HAND, NO_HONORS);
-        addConflict(THIRTEEN_ORPHANS, ALL_TERMINALS_AND_HONORS, ALL_TYPES, FULLY_CONCEALED_HAND, CONCEALED_HAND);
-        addConflict(ALL_TERMINALS, ALL_TERMINALS_AND_HONORS, ALL_PUNGS, OUTSIDE_HAND, DOUBLE_PUNG, PUNG_OF_TERMINALS_OR_HONORS, NO_HONORS);
-        addConflict(ALL_HONORS, ALL_TERMINALS_AND_HONORS, ALL_PUNGS, OUTSIDE_HAND, PUNG_OF_TERMINALS_OR_HONORS);
-        addConflict(FOUR_CONCEALED_PUNGS, ALL_PUNGS, FULLY_CONCEALED_HAND, CONCEALED_HAND);
-        addConflict(PURE_TERMINAL_CHOWS, FULL_FLUSH, ALL_CHOWS, PURE_DOUBLE_CHOW, TWO_TERMINAL_CHOWS, NO_HONORS);
-        addConflict(QUADRUPLE_CHOW, TILE_HOG);
-        addConflict(FOUR_PURE_SHIFTED_PUNGS, ALL_PUNGS);
-        addConflict(ALL_TERMINALS_AND_HONORS, ALL_PUNGS, OUTSIDE_HAND, PUNG_OF_TERMINALS_OR_HONORS);
-        addConflict(SEVEN_PAIRS, FULLY_CONCEALED_HAND, CONCEALED_HAND);
-        addConflict(GREATER_HONORS_AND_KNITTED_TILES, LESSER_HONORS_AND_KNITTED_TILES, ALL_TYPES, FULLY_CONCEALED_HAND, CONCEALED_HAND);
-        addConflict(ALL_EVEN_PUNGS, ALL_PUNGS, ALL_SIMPLES, NO_HONORS);
-        addConflict(FULL_FLUSH, NO_HONORS);
-        addConflict(UPPER_TILES, UPPER_FOUR, NO_HONORS);
-        addConflict(MIDDLE_TILES, ALL_SIMPLES, NO_HONORS);
-        addConflict(LOWER_TILES, LOWER_FOUR, NO_HONORS);
-        addConflict(THREE_SUITED_TERMINAL_CHOWS, ALL_CHOWS, MIXED_DOUBLE_CHOW, TWO_TERMINAL_CHOWS, NO_HONORS);
-        addConflict(ALL_FIVE, ALL_SIMPLES, NO_HONORS);
-        addConflict(LESSER_HONORS_AND_KNITTED_TILES, ALL_TYPES, FULLY_CONCEALED_HAND, CONCEALED_HAND);
-        addConflict(UPPER_FOUR, NO_HONORS);
-        addConflict(LOWER_FOUR, NO_HONORS);
-        addConflict(REVERSIBLE_TILES, ONE_VOIDED_SUIT);
-        addConflict(LAST_TILE_DRAW, SELF_DRAWN);
-        addConflict(OUT_WITH_REPLACEMENT_TILE, SELF_DRAWN);
-        addConflict(ROBBING_THE_KONG, LAST_TILE);
-        addConflict(MELDED_HAND, SINGLE_WAIT);
-        addConflict(TWO_CONCEALED_KONGS, TWO_CONCEALED_PUNGS);
-        addConflict(FULLY_CONCEALED_HAND, CONCEALED_HAND, SELF_DRAWN);
-        addConflict(ALL_CHOWS, NO_HONORS);
-        addConflict(ALL_SIMPLES, NO_HONORS);
+        final Map<MCRFan, Set<MCRFan>> conflictMap = new EnumMap<>(MCRFan.class);
+        addConflict(conflictMap, BIG_FOUR_WINDS, ALL_PUNGS);
+        addConflict(conflictMap, ALL_GREEN, HALF_FLUSH);
+        addConflict(conflictMap, NINE_GATES, FULL_FLUSH, FULLY_CONCEALED_HAND, CONCEALED_HAND, NO_HONORS);
+        addConflict(conflictMap, FOUR_KONGS, ALL_PUNGS, SINGLE_WAIT);
+        addConflict(conflictMap, SEVEN_SHIFTED_PAIRS, FULL_FLUSH, SEVEN_PAIRS, FULLY_CONCEALED_HAND, CONCEALED_HAND, NO_HONORS);
+        addConflict(conflictMap, THIRTEEN_ORPHANS, ALL_TERMINALS_AND_HONORS, ALL_TYPES, FULLY_CONCEALED_HAND, CONCEALED_HAND);
+        addConflict(conflictMap, ALL_TERMINALS, ALL_TERMINALS_AND_HONORS, ALL_PUNGS, OUTSIDE_HAND, DOUBLE_PUNG, PUNG_OF_TERMINALS_OR_HONORS, NO_HONORS);
+        addConflict(conflictMap, ALL_HONORS, ALL_TERMINALS_AND_HONORS, ALL_PUNGS, OUTSIDE_HAND, PUNG_OF_TERMINALS_OR_HONORS);
+        addConflict(conflictMap, FOUR_CONCEALED_PUNGS, ALL_PUNGS, FULLY_CONCEALED_HAND, CONCEALED_HAND);
+        addConflict(conflictMap, PURE_TERMINAL_CHOWS, FULL_FLUSH, ALL_CHOWS, PURE_DOUBLE_CHOW, TWO_TERMINAL_CHOWS, NO_HONORS);
+        addConflict(conflictMap, QUADRUPLE_CHOW, TILE_HOG);
+        addConflict(conflictMap, FOUR_PURE_SHIFTED_PUNGS, ALL_PUNGS);
+        addConflict(conflictMap, ALL_TERMINALS_AND_HONORS, ALL_PUNGS, OUTSIDE_HAND, PUNG_OF_TERMINALS_OR_HONORS);
+        addConflict(conflictMap, SEVEN_PAIRS, FULLY_CONCEALED_HAND, CONCEALED_HAND);
+        addConflict(conflictMap, GREATER_HONORS_AND_KNITTED_TILES, LESSER_HONORS_AND_KNITTED_TILES, ALL_TYPES, FULLY_CONCEALED_HAND, CONCEALED_HAND);
+        addConflict(conflictMap, ALL_EVEN_PUNGS, ALL_PUNGS, ALL_SIMPLES, NO_HONORS);
+        addConflict(conflictMap, FULL_FLUSH, NO_HONORS);
+        addConflict(conflictMap, UPPER_TILES, UPPER_FOUR, NO_HONORS);
+        addConflict(conflictMap, MIDDLE_TILES, ALL_SIMPLES, NO_HONORS);
+        addConflict(conflictMap, LOWER_TILES, LOWER_FOUR, NO_HONORS);
+        addConflict(conflictMap, THREE_SUITED_TERMINAL_CHOWS, ALL_CHOWS, MIXED_DOUBLE_CHOW, TWO_TERMINAL_CHOWS, NO_HONORS);
+        addConflict(conflictMap, ALL_FIVE, ALL_SIMPLES, NO_HONORS);
+        addConflict(conflictMap, LESSER_HONORS_AND_KNITTED_TILES, ALL_TYPES, FULLY_CONCEALED_HAND, CONCEALED_HAND);
+        addConflict(conflictMap, UPPER_FOUR, NO_HONORS);
+        addConflict(conflictMap, LOWER_FOUR, NO_HONORS);
+        addConflict(conflictMap, REVERSIBLE_TILES, ONE_VOIDED_SUIT);
+        addConflict(conflictMap, LAST_TILE_DRAW, SELF_DRAWN);
+        addConflict(conflictMap, OUT_WITH_REPLACEMENT_TILE, SELF_DRAWN);
+        addConflict(conflictMap, ROBBING_THE_KONG, LAST_TILE);
+        addConflict(conflictMap, MELDED_HAND, SINGLE_WAIT);
+        addConflict(conflictMap, TWO_CONCEALED_KONGS, TWO_CONCEALED_PUNGS);
+        addConflict(conflictMap, FULLY_CONCEALED_HAND, CONCEALED_HAND, SELF_DRAWN);
+        addConflict(conflictMap, ALL_CHOWS, NO_HONORS);
+        addConflict(conflictMap, ALL_SIMPLES, NO_HONORS);
+        conflictMap.forEach((fan, conflicts) -> {
+            final long[] mask = new long[MCRResult.FAN_BITS_LENGTH];
+            for (MCRFan conflict : conflicts) {
+                mask[conflict.ordinal() >>> 6] |= 1L << conflict.ordinal();
+            }
+            EXCLUSION_MASKS[fan.ordinal()] = mask;
+        });
     }
 
-    private static void addConflict(MCRFan fan, MCRFan... conflicts) {
-        CONFLICT_MAP.computeIfAbsent(fan, k -> new HashSet<>())
+    private static void addConflict(Map<MCRFan, Set<MCRFan>> conflictMap, MCRFan fan, MCRFan... conflicts) {
+        conflictMap.computeIfAbsent(fan, k -> new HashSet<>())
                 .addAll(List.of(conflicts));
     }
 
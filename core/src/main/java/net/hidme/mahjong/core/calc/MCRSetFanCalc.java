@@ -1,27 +1,21 @@
 package net.hidme.mahjong.core.calc;
 
 import net.hidme.mahjong.core.data.*;
-import net.hidme.mahjong.core.util.NumberUtils;
-
-import java.util.*;
-import java.util.concurrent.atomic.AtomicReference;
-import java.util.function.BiFunction;
-import java.util.function.BiPredicate;
-import java.util.function.Function;
-import java.util.function.Predicate;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
-
-import static net.hidme.mahjong.core.data.Claim.Type.CHOW;
-import static net.hidme.mahjong.core.data.Claim.Type.KNITTED_CHOW;
+
+import static net.hidme.mahjong.core.data.Claim.Type.*;
 import static net.hidme.mahjong.core.data.MCRFan.*;
 import static net.hidme.mahjong.core.data.Tile.wind;
-import static net.hidme.mahjong.core.util.CollectionUtils.minus;
-import static net.hidme.mahjong.core.util.CollectionUtils.setOf;
 
 /**
  * Calculator for Fans of sets.
  * Such Fans consume sets during the calculation.
+ * An instance is bound to a single structure and result, and must not be shared between threads.
+ * <p>
+ *     Sets are encoded as small ints (see {@link #encode(Claim)}) and kept in fixed-size arrays,
+ *     so matching sets against Fans allocates nothing.
+ *     Unused sets are kept in the order of the structure, and a matched set is appended to used sets;
+ *     these orders decide which sets are consumed when several choices are possible.
+ * </p>
  */
 public class MCRSetFanCalc {
 
@@ -29,24 +23,44 @@ public class MCRSetFanCalc {
         this.hand = hand;
         this.structure = structure;
         this.result = result;
-        usedClaims = new ArrayList<>();
         if (structure instanceof NormalHandStructure normalStruct) {
-            unusedClaims = new ArrayList<>(Stream.of(normalStruct.claims)
-                    .map(c -> new SuppressedClaim(c, new HashSet<>()))
-                    .toList());
+            for (Claim claim : normalStruct.claims) {
+                unused[unusedCount] = unusedCount;
+                sets[unusedCount++] = encode(claim);
+            }
             pair = normalStruct.pair;
         } else {
-            unusedClaims = new ArrayList<>();
             pair = null;
         }
     }
 
+    /**
+     * Copy the state of a calculator after {@link #calculateComposedSetFans()},
+     * so that single-set Fans can be calculated for another hand with the same structure.
+     * The state of {@code calc} is not changed by the copy.
+     */
+    MCRSetFanCalc(MCRSetFanCalc calc, MCRHand hand, MCRResult result) {
+        this.hand = hand;
+        this.structure = calc.structure;
+        this.result = result;
+        pair = calc.pair;
+        System.arraycopy(calc.sets, 0, sets, 0, sets.length);
+        System.arraycopy(calc.suppressed, 0, suppressed, 0, suppressed.length);
+        System.arraycopy(calc.unused, 0, unused, 0, unused.length);
+        System.arraycopy(calc.used, 0, used, 0, used.length);
+        unusedCount = calc.unusedCount;
+        usedCount = calc.usedCount;
+    }
+
     public void calculate() {
         calculateComposedSetFans();
         calculateSingleSetFans();
     }
 
-    private void calculateComposedSetFans() {
+    /**
+     * Calculate Fans of several sets, which only depend on the structure, and consume all sets.
+     */
+    void calculateComposedSetFans() {
         // 88
         checkBigFourWinds();
         checkBigThreeDragons();
@@ -80,12 +94,15 @@ public class MCRSetFanCalc {
         checkDoublePung();
         // 1
         checkTwoChowFans();
-        // mark all claims as used
-        usedClaims.addAll(unusedClaims);
-        unusedClaims.clear();
+        // mark all sets as used
+        consume((1 << unusedCount) - 1, 0);
     }
 
-    private void calculateSingleSetFans() {
+    /**
+     * Calculate Fans of single sets after {@link #calculateComposedSetFans()},
+     * some of which depend on the winds of the hand.
+     */
+    void calculateSingleSetFans() {
         // 2
         checkDragonPung();
         checkPrevalentWind();
@@ -94,195 +111,102 @@ public class MCRSetFanCalc {
         checkPungOfTerminalsOrHonors();
     }
 
-    // Some claims do not count some Fans
-    // e.g. Wind pungs in small four winds do not count honor pungs
-    private record SuppressedClaim(Claim claim, Set<MCRFan> suppress) {
-
-        private Claim.Type type() {
-            return claim.type();
-        }
-
-        private Tile start() {
-            return claim.start();
-        }
-
-        private int claimedFrom() {
-            return claim.claimedFrom();
-        }
-
-    }
-
     private final MCRHand hand;
     private final HandStructure structure;
     private final MCRResult result;
-    private final List<SuppressedClaim> usedClaims;
-    private final List<SuppressedClaim> unusedClaims;
     private final Tile pair;
+    // encoded sets of the structure
+    private final int[] sets = new int[4];
+    // Fans not counted for each set, as a mask of *_BIT
+    // e.g. wind pungs in small four winds do not count honor pungs
+    private final int[] suppressed = new int[4];
+    // indices of unused and used sets
+    private final int[] unused = new int[4], used = new int[4];
+    private int unusedCount, usedCount;
+
+    // bits of Fans that may be suppressed
+    private static final int PUNG_OF_TERMINALS_OR_HONORS_BIT = 1;
+    private static final int DRAGON_PUNG_BIT = 1 << 1;
+    private static final int PREVALENT_WIND_BIT = 1 << 2;
+    private static final int SEAT_WIND_BIT = 1 << 3;
 
     // 1
 
     private void checkTwoChowFans() {
-        checkAddOneSetWithUsedSetOrTwoSets(
-                (c1, c2) -> {
-                    if (c1.type() == CHOW && c2.type() == CHOW) {
-                        final Tile t1 = c1.start(), t2 = c2.start();
-                        if (t1.suit == t2.suit && t1.number == t2.number)
-                            return PURE_DOUBLE_CHOW;
-                        if (t1.suit != t2.suit && t1.number == t2.number)
-                            return MIXED_DOUBLE_CHOW;
-                        if (t1.suit == t2.suit && Math.abs(t1.number - t2.number) == 3)
-                            return SHORT_STRAIGHT;
-                        if (t1.suit == t2.suit && (t1.number == 1 && t2.number == 7 || t1.number == 7 && t2.number == 1))
-                            return TWO_TERMINAL_CHOWS;
-                    }
-                    return null;
-                }
-        );
+        checkTwoSetFans(CHOW_PAIR_FANS);
     }
 
     private void checkPungOfTerminalsOrHonors() {
-        checkSingleSetFan(claim ->
-                claim.type().isPung() && claim.start().isOrphan(),
-                PUNG_OF_TERMINALS_OR_HONORS);
+        for (int i = 0; i < usedCount; i++) {
+            final int index = used[i];
+            if (isPung(sets[index]) && tileOf(sets[index]).isOrphan())
+                addSingleSetFan(index, PUNG_OF_TERMINALS_OR_HONORS, PUNG_OF_TERMINALS_OR_HONORS_BIT, 0);
+        }
     }
 
     // 2
 
     private void checkDragonPung() {
-        checkSingleSetFan(claim -> claim.start().isDragon(), DRAGON_PUNG, PUNG_OF_TERMINALS_OR_HONORS);
+        checkSingleSetFan(TileCounts.DRAGON_MASK, DRAGON_PUNG, DRAGON_PUNG_BIT);
     }
 
     private void checkPrevalentWind() {
-        checkSingleSetFan(claim -> claim.start() == wind(hand.prevalentWind), PREVALENT_WIND, PUNG_OF_TERMINALS_OR_HONORS);
+        checkSingleSetFan(TileCounts.maskOf(wind(hand.prevalentWind)), PREVALENT_WIND, PREVALENT_WIND_BIT);
     }
 
     private void checkSeatWind() {
-        checkSingleSetFan(claim -> claim.start() == wind(hand.seatWind), SEAT_WIND, PUNG_OF_TERMINALS_OR_HONORS);
+        checkSingleSetFan(TileCounts.maskOf(wind(hand.seatWind)), SEAT_WIND, SEAT_WIND_BIT);
     }
 
     private void checkDoublePung() {
-        checkAddOneSetWithUsedSetOrTwoSets(
-                (c1, c2) -> {
-                    if (c1.type().isPung() && c2.type().isPung()) {
-                        final Tile t1 = c1.start(), t2 = c2.start();
-                        if (!t1.isNumber() || !t2.isNumber()) return false;
-                        return t1.number == t2.number;
-                    }
-                    return false;
-                },
-                DOUBLE_PUNG
-        );
+        checkTwoSetFans(PUNG_PAIR_FANS);
     }
 
     // 6
 
     private void checkMixedShiftedChows() {
-        checkAddThreeSets(
-                claims -> {
-                    if (claims.stream().anyMatch(c -> c.type() != CHOW))
-                        return null;
-                    if (claims.stream().map(c -> c.start().suit)
-                            .collect(Collectors.toSet())
-                            .size() != 3)
-                        return null;
-                    final List<Integer> numberSeq = claims.stream().map(c -> c.start().number).toList();
-                    if (NumberUtils.isUnorderedArithSeq(numberSeq, 1))
-                        return claims;
-                    return null;
-                },
-                MIXED_SHIFTED_CHOWS
-        );
+        checkThreeSets(MIXED_SHIFTED_CHOWS);
     }
 
     private void checkTwoDragonPungs() {
-        checkAddSuppress(
-                claims -> {
-                    final List<SuppressedClaim> target = claims.stream()
-                            .filter(c -> c.start().isDragon()).toList();
-                    if (target.size() == 2) return target;
-                    return null;
-                },
-                TWO_DRAGON_PUNGS,
-                setOf(DRAGON_PUNG, PUNG_OF_TERMINALS_OR_HONORS)
-        );
+        checkHonorSets(TileCounts.DRAGON_MASK, 2, TWO_DRAGON_PUNGS,
+                DRAGON_PUNG_BIT | PUNG_OF_TERMINALS_OR_HONORS_BIT);
     }
 
     // 8
 
     private void checkMixedStraight() {
-        checkAddThreeSets(
-                claims -> {
-                    if (claims.stream().map(c -> c.start().suit)
-                            .collect(Collectors.toSet())
-                            .size() != 3)
-                        return null;
-                    if (claims.stream().anyMatch(c -> c.type() != CHOW))
-                        return null;
-                    final Set<Integer> starts = claims.stream()
-                            .map(c -> c.start().number).collect(Collectors.toSet());
-                    if (starts.equals(Set.of(1, 4, 7))) return claims;
-                    return null;
-                },
-                MIXED_STRAIGHT
-        );
+        checkThreeSets(MIXED_STRAIGHT);
     }
 
     private void checkMixedTripleChow() {
-        checkAddThreeSets(
-                claims -> {
-                    if (claims.stream().map(c -> c.start().suit)
-                            .collect(Collectors.toSet())
-                            .size() != 3)
-                        return null;
-                    final int start = claims.getFirst().start().number;
-                    if (claims.stream().allMatch(c -> c.type() == CHOW && c.start().number == start))
-                        return claims;
-                    return null;
-                },
-                MIXED_TRIPLE_CHOW
-        );
+        checkThreeSets(MIXED_TRIPLE_CHOW);
     }
 
     private void checkMixedShiftedPungs() {
-        checkAddThreeSets(
-                claims -> {
-                    if (claims.stream().anyMatch(c -> !c.type().isPung()))
-                        return null;
-                    // only number pungs are considered
-                    if (!isOfNumberSuits(claims))
-                        return null;
-                    if (claims.stream().map(c -> c.start().suit)
-                            .collect(Collectors.toSet())
-                            .size() != 3)
-                        return null;
-                    final List<Integer> numberSeq = claims.stream().map(c -> c.start().number).toList();
-                    if (NumberUtils.isUnorderedArithSeq(numberSeq, 1))
-                        return claims;
-                    return null;
-                },
-                MIXED_SHIFTED_PUNGS
-        );
+        checkThreeSets(MIXED_SHIFTED_PUNGS);
     }
 
     // 12
 
     private void checkKnittedStraight() {
-        checkAdd(
-                claims -> {
-                    final List<SuppressedClaim> target = claims.stream()
-                            .filter(c -> c.type() == KNITTED_CHOW).toList();
-                    if (target.size() != 3) return null;
-                    final Set<Integer> starts = target.stream()
-                            .map(c -> c.start().number)
-                            .collect(Collectors.toSet());
-                    final Set<Character> suits = target.stream()
-                            .map(c -> c.start().suit)
-                            .collect(Collectors.toSet());
-                    if (starts.size() == 3 && suits.size() == 3) return target;
-                    return null;
-                },
-                KNITTED_STRAIGHT
-        );
+        boolean matched;
+        do {
+            int selection = 0, count = 0, numbers = 0, suits = 0;
+            for (int i = 0; i < unusedCount; i++) {
+                final int set = sets[unused[i]];
+                if (typeOf(set) != KNITTED_CHOW) continue;
+                selection |= 1 << i;
+                count++;
+                numbers |= 1 << tileOf(set).number;
+                suits |= 1 << suitIndexOf(set);
+            }
+            matched = count == 3 && Integer.bitCount(numbers) == 3 && Integer.bitCount(suits) == 3;
+            if (matched) {
+                consume(selection, 0);
+                result.addFan(KNITTED_STRAIGHT);
+            }
+        } while (matched);
         if (structure instanceof HonorKnittedHandStructure knittedStruct) {
             if (knittedStruct.knittedTiles.length == 9)
                 result.addFan(KNITTED_STRAIGHT);
@@ -290,364 +214,312 @@ public class MCRSetFanCalc {
     }
 
     private void checkBigThreeWinds() {
-        checkAddSuppress(
-                claims -> {
-                    final List<SuppressedClaim> target = claims.stream()
-                            .filter(c -> c.start().isWind()).toList();
-                    if (target.size() == 3) return target;
-                    return null;
-                },
-                BIG_THREE_WINDS,
-                setOf(PUNG_OF_TERMINALS_OR_HONORS)
-        );
+        checkHonorSets(TileCounts.WIND_MASK, 3, BIG_THREE_WINDS, PUNG_OF_TERMINALS_OR_HONORS_BIT);
     }
 
     // 16
 
     private void checkPureStraight() {
-        checkAddThreeSets(
-                claims -> {
-                    if (claims.stream().anyMatch(c -> c.type() != CHOW))
-                        return null;
-                    if (!isOfPureNumberSuit(claims)) return null;
-                    final Set<Integer> starts = claims.stream()
-                            .map(c -> c.start().number).collect(Collectors.toSet());
-                    if (starts.equals(Set.of(1, 4, 7))) return claims;
-                    return null;
-                },
-                PURE_STRAIGHT
-        );
+        checkThreeSets(PURE_STRAIGHT);
     }
 
     private void checkPureShiftedChows() {
-        checkAddThreeSets(
-                claims -> {
-                    if (claims.stream().anyMatch(c -> c.type() != CHOW))
-                        return null;
-                    if (!isOfPureNumberSuit(claims)) return null;
-                    final List<Integer> numberSeq = claims.stream().map(c -> c.start().number).toList();
-                    if (NumberUtils.isUnorderedArithSeq(numberSeq, 1)
-                            || NumberUtils.isUnorderedArithSeq(numberSeq, 2))
-                        return claims;
-                    return null;
-                },
-                PURE_SHIFTED_CHOWS
-        );
+        checkThreeSets(PURE_SHIFTED_CHOWS);
     }
 
     private void checkTriplePung() {
-        checkAddThreeSets(
-                claims -> {
-                    // only number pungs are considered
-                    if (!isOfNumberSuits(claims))
-                        return null;
-                    final int start = claims.getFirst().start().number;
-                    if (claims.stream().allMatch(c -> c.type().isPung() && c.start().number == start))
-                        return claims;
-                    return null;
-                },
-                TRIPLE_PUNG
-        );
+        checkThreeSets(TRIPLE_PUNG);
     }
 
     // 24
 
     private void checkPureTripleChow() {
-        checkAddThreeSets(
-                claims -> {
-                    final Tile start = claims.getFirst().start();
-                    if (claims.stream().allMatch(c -> c.type() == CHOW && c.start() == start))
-                        return claims;
-                    return null;
-                },
-                PURE_TRIPLE_CHOW
-        );
+        checkThreeSets(PURE_TRIPLE_CHOW);
     }
 
     private void checkPureShiftedPungs() {
-        checkAddThreeSets(
-                claims -> {
-                    if (claims.stream().anyMatch(c -> !c.type().isPung()))
-                        return null;
-                    if (!isOfPureNumberSuit(claims)) return null;
-                    final List<Integer> numberSeq = claims.stream().map(c -> c.start().number).toList();
-                    if (NumberUtils.isUnorderedArithSeq(numberSeq, 1))
-                        return claims;
-                    return null;
-                },
-                PURE_SHIFTED_PUNGS
-        );
+        checkThreeSets(PURE_SHIFTED_PUNGS);
     }
 
     // 32
 
     private void checkFourPureShiftedChows() {
-        checkAdd(
-                claims -> {
-                    if (claims.size() != 4) return null;
-                    if (claims.stream().anyMatch(c -> c.type() != CHOW))
-                        return null;
-                    if (!isOfPureNumberSuit(claims)) return null;
-                    final List<Integer> numberSeq = claims.stream().map(c -> c.start().number).toList();
-                    if (NumberUtils.isUnorderedArithSeq(numberSeq, 1)
-                            || NumberUtils.isUnorderedArithSeq(numberSeq, 2))
-                        return claims;
-                    return null;
-                },
-                FOUR_PURE_SHIFTED_CHOWS
-        );
+        checkFourSets(FOUR_PURE_SHIFTED_CHOWS, 0);
     }
 
     // 48
 
     private void checkQuadrupleChow() {
-        checkAdd(
-                claims -> {
-                    if (claims.size() != 4) return null;
-                    final Tile start = claims.getFirst().start();
-                    if (claims.stream().allMatch(c -> c.type() == CHOW && c.start() == start))
-                        return claims;
-                    return null;
-                },
-                QUADRUPLE_CHOW
-        );
+        checkFourSets(QUADRUPLE_CHOW, 0);
     }
 
     private void checkFourPureShiftedPungs() {
-        checkAdd(
-                claims -> {
-                    if (claims.size() != 4) return null;
-                    if (claims.stream().anyMatch(c -> !c.type().isPung()))
-                        return null;
-                    if (!isOfPureNumberSuit(claims)) return null;
-                    final List<Integer> numberSeq = claims.stream().map(c -> c.start().number).toList();
-                    if (NumberUtils.isUnorderedArithSeq(numberSeq, 1))
-                        return claims;
-                    return null;
-                },
-                FOUR_PURE_SHIFTED_PUNGS
-        );
+        checkFourSets(FOUR_PURE_SHIFTED_PUNGS, 0);
     }
 
     // 64
 
     private void checkLittleFourWinds() {
-        checkAddSuppress(
-                claims -> {
-                    if (pair == null || !pair.isWind()) return null;
-                    final List<SuppressedClaim> target = claims.stream()
-                            .filter(c -> c.start().isWind()).toList();
-                    if (target.size() == 3) return target;
-                    return null;
-                },
-                LITTLE_FOUR_WINDS,
-                setOf(PUNG_OF_TERMINALS_OR_HONORS)
-        );
+        if (pair == null || !pair.isWind()) return;
+        checkHonorSets(TileCounts.WIND_MASK, 3, LITTLE_FOUR_WINDS, PUNG_OF_TERMINALS_OR_HONORS_BIT);
     }
 
     private void checkLittleThreeDragons() {
-        checkAddSuppress(
-                claims -> {
-                    if (pair == null || !pair.isDragon()) return null;
-                    final List<SuppressedClaim> target = claims.stream()
-                            .filter(c -> c.start().isDragon()).toList();
-                    if (target.size() == 2) return target;
-                    return null;
-                },
-                LITTLE_THREE_DRAGONS,
-                setOf(DRAGON_PUNG, PUNG_OF_TERMINALS_OR_HONORS)
-        );
+        if (pair == null || !pair.isDragon()) return;
+        checkHonorSets(TileCounts.DRAGON_MASK, 2, LITTLE_THREE_DRAGONS,
+                DRAGON_PUNG_BIT | PUNG_OF_TERMINALS_OR_HONORS_BIT);
     }
 
     // 88
 
     private void checkBigFourWinds() {
-        checkAddSuppress(
-                claims -> {
-                    if (claims.size() != 4) return null;
-                    if (claims.stream().allMatch(c -> c.start().isWind()))
-                        return claims;
-                    else return null;
-                },
-                BIG_FOUR_WINDS,
-                setOf(PREVALENT_WIND, SEAT_WIND, PUNG_OF_TERMINALS_OR_HONORS)
-        );
+        checkFourSets(BIG_FOUR_WINDS, PREVALENT_WIND_BIT | SEAT_WIND_BIT | PUNG_OF_TERMINALS_OR_HONORS_BIT);
     }
 
     private void checkBigThreeDragons() {
-        checkAddSuppress(
-                claims -> {
-                    final List<SuppressedClaim> target = claims.stream()
-                            .filter(c -> c.start().isDragon()).toList();
-                    if (target.size() == 3) return target;
-                    return null;
-                },
-                BIG_THREE_DRAGONS,
-                setOf(DRAGON_PUNG, PUNG_OF_TERMINALS_OR_HONORS)
-        );
+        checkHonorSets(TileCounts.DRAGON_MASK, 3, BIG_THREE_DRAGONS,
+                DRAGON_PUNG_BIT | PUNG_OF_TERMINALS_OR_HONORS_BIT);
     }
 
-    // utilities
+    // set encoding
 
-    private static boolean isOfPureNumberSuit(List<SuppressedClaim> claims) {
-        return Claim.isOfPureNumberSuit(claims.stream().map(SuppressedClaim::claim).toList());
+    /**
+     * Encode a set into an int in [0, {@link #SET_CODE_COUNT}),
+     * which consists of the type and the start tile.
+     */
+    static int encode(Claim claim) {
+        return claim.type().ordinal() * TileCounts.SIZE + claim.start().ordinal();
     }
 
-    private static boolean isOfNumberSuits(List<SuppressedClaim> claims) {
-        return claims.stream().allMatch(c -> Tile.isNumberSuit(c.start().suit));
+    static final int SET_CODE_COUNT = Claim.Type.values().length * TileCounts.SIZE;
+
+    private static final Claim.Type[] TYPES = Claim.Type.values();
+
+    private static Claim.Type typeOf(int set) {
+        return TYPES[set / TileCounts.SIZE];
     }
 
-    private void checkSingleSetFan(Predicate<SuppressedClaim> target, MCRFan fan) {
-        checkSingleSetFan(target, fan, setOf());
+    private static Tile tileOf(int set) {
+        return TileCounts.tileAt(set % TileCounts.SIZE);
     }
 
-    private void checkSingleSetFan(Predicate<SuppressedClaim> target, MCRFan fan, MCRFan suppress) {
-        checkSingleSetFan(target, fan, setOf(suppress));
+    private static boolean isChow(int set) {
+        return set < TileCounts.SIZE;
     }
 
-    // check single-set Fan (excluding suppress) after all sets are consumed
-    // suppress a set if the set satisfies the Fan
-    private void checkSingleSetFan(Predicate<SuppressedClaim> target, MCRFan fan, Set<MCRFan> suppress) {
-        for (SuppressedClaim suppressedClaim : usedClaims) {
-            if (suppressedClaim.suppress.contains(fan)) continue;
-            if (target.test(suppressedClaim)) {
-                result.addFan(fan);
-                suppressedClaim.suppress.addAll(suppress);
+    private static boolean isPung(int set) {
+        return typeOf(set).isPung();
+    }
+
+    // whether the start tile of a set is in tileMask
+    private static boolean isOf(int set, long tileMask) {
+        return (tileMask & 1L << set % TileCounts.SIZE) != 0;
+    }
+
+    // 0-2 for number suits, 3 for winds and 4 for dragons
+    private static int suitIndexOf(int set) {
+        final int index = set % TileCounts.SIZE;
+        return index < 27 ? index / 9 : index < 31 ? 3 : 4;
+    }
+
+    // relations of two sets
+
+    // the 2-set Fan of two chows (or null) indexed by codes of both
+    private static final MCRFan[] CHOW_PAIR_FANS = new MCRFan[SET_CODE_COUNT * SET_CODE_COUNT];
+    // the 2-set Fan of two pungs (or null) indexed by codes of both
+    private static final MCRFan[] PUNG_PAIR_FANS = new MCRFan[SET_CODE_COUNT * SET_CODE_COUNT];
+
+    static {
+        for (int s1 = 0; s1 < SET_CODE_COUNT; s1++) {
+            for (int s2 = 0; s2 < SET_CODE_COUNT; s2++) {
+                final Tile t1 = tileOf(s1), t2 = tileOf(s2);
+                final int index = s1 * SET_CODE_COUNT + s2;
+                if (isChow(s1) && isChow(s2)) {
+                    if (t1.suit == t2.suit && t1.number == t2.number)
+                        CHOW_PAIR_FANS[index] = PURE_DOUBLE_CHOW;
+                    else if (t1.suit != t2.suit && t1.number == t2.number)
+                        CHOW_PAIR_FANS[index] = MIXED_DOUBLE_CHOW;
+                    else if (t1.suit == t2.suit && Math.abs(t1.number - t2.number) == 3)
+                        CHOW_PAIR_FANS[index] = SHORT_STRAIGHT;
+                    else if (t1.suit == t2.suit && Math.abs(t1.number - t2.number) == 6)
+                        CHOW_PAIR_FANS[index] = TWO_TERMINAL_CHOWS;
+                }
+                if (isPung(s1) && isPung(s2) && t1.isNumber() && t2.isNumber() && t1.number == t2.number)
+                    PUNG_PAIR_FANS[index] = DOUBLE_PUNG;
             }
         }
     }
 
-    /**
-     * Check whether there is a used set and an unused set (or two unused sets) that match a 2-set Fan.
-     * If so, add this Fan and consume the unused set(s) until the Fan is not met.
-     * You may assume that the input of "target" must be 2 sets.
-     */
-    private void checkAddOneSetWithUsedSetOrTwoSets(BiPredicate<SuppressedClaim, SuppressedClaim> target,
-                                                    MCRFan fan) {
-        checkAddOneSetWithUsedSetOrTwoSets((c1, c2) -> target.test(c1, c2) ? fan : null);
+    // relations of three or four sets
+
+    private static boolean matchesThreeSets(MCRFan fan, int s1, int s2, int s3) {
+        final Tile t1 = tileOf(s1), t2 = tileOf(s2), t3 = tileOf(s3);
+        final boolean chows = isChow(s1) && isChow(s2) && isChow(s3);
+        final boolean pungs = isPung(s1) && isPung(s2) && isPung(s3);
+        final boolean numberSuits = t1.isNumber() && t2.isNumber() && t3.isNumber();
+        final boolean sameSuit = t1.suit == t2.suit && t2.suit == t3.suit;
+        final boolean distinctSuits = t1.suit != t2.suit && t2.suit != t3.suit && t1.suit != t3.suit;
+        final boolean sameNumber = t1.number == t2.number && t2.number == t3.number;
+        final int numbers = (1 << t1.number) | (1 << t2.number) | (1 << t3.number);
+        return switch (fan) {
+            case PURE_TRIPLE_CHOW -> chows && s1 == s2 && s2 == s3;
+            case PURE_SHIFTED_PUNGS -> pungs && numberSuits && sameSuit && isShifted(numbers, 3, 1);
+            case PURE_STRAIGHT -> chows && sameSuit && numbers == STRAIGHT_NUMBERS;
+            case PURE_SHIFTED_CHOWS -> chows && sameSuit && (isShifted(numbers, 3, 1) || isShifted(numbers, 3, 2));
+            case TRIPLE_PUNG -> pungs && numberSuits && sameNumber;
+            case MIXED_STRAIGHT -> chows && distinctSuits && numbers == STRAIGHT_NUMBERS;
+            case MIXED_TRIPLE_CHOW -> chows && distinctSuits && sameNumber;
+            case MIXED_SHIFTED_CHOWS -> chows && distinctSuits && isShifted(numbers, 3, 1);
+            case MIXED_SHIFTED_PUNGS -> pungs && numberSuits && distinctSuits && isShifted(numbers, 3, 1);
+            default -> throw new IllegalArgumentException(fan + " is not a 3-set Fan");
+        };
+    }
+
+    private static boolean matchesFourSets(MCRFan fan, int s1, int s2, int s3, int s4) {
+        final Tile t1 = tileOf(s1), t2 = tileOf(s2), t3 = tileOf(s3), t4 = tileOf(s4);
+        final boolean chows = isChow(s1) && isChow(s2) && isChow(s3) && isChow(s4);
+        final boolean pungs = isPung(s1) && isPung(s2) && isPung(s3) && isPung(s4);
+        final boolean sameNumberSuit = t1.isNumber() && t1.suit == t2.suit && t2.suit == t3.suit && t3.suit == t4.suit;
+        final int numbers = (1 << t1.number) | (1 << t2.number) | (1 << t3.number) | (1 << t4.number);
+        return switch (fan) {
+            case BIG_FOUR_WINDS -> t1.isWind() && t2.isWind() && t3.isWind() && t4.isWind();
+            case QUADRUPLE_CHOW -> chows && s1 == s2 && s2 == s3 && s3 == s4;
+            case FOUR_PURE_SHIFTED_PUNGS -> pungs && sameNumberSuit && isShifted(numbers, 4, 1);
+            case FOUR_PURE_SHIFTED_CHOWS -> chows && sameNumberSuit
+                    && (isShifted(numbers, 4, 1) || isShifted(numbers, 4, 2));
+            default -> throw new IllegalArgumentException(fan + " is not a 4-set Fan");
+        };
+    }
+
+    // the mask of numbers 1, 4 and 7
+    private static final int STRAIGHT_NUMBERS = (1 << 1) | (1 << 4) | (1 << 7);
+
+    // whether a mask of count numbers forms an arithmetic sequence with a positive diff
+    private static boolean isShifted(int numbers, int count, int diff) {
+        if (Integer.bitCount(numbers) != count) return false;
+        final int first = Integer.numberOfTrailingZeros(numbers);
+        int expected = 0;
+        for (int i = 0; i < count; i++) {
+            expected |= 1 << (first + i * diff);
+        }
+        return numbers == expected;
+    }
+
+    // matching and consuming
+
+    // check single-set Fan after all sets are consumed
+    // a set of tiles in tileMask counts the Fan unless suppressed,
+    // and then it does not count PUNG_OF_TERMINALS_OR_HONORS
+    private void checkSingleSetFan(long tileMask, MCRFan fan, int fanBit) {
+        for (int i = 0; i < usedCount; i++) {
+            final int index = used[i];
+            if (isOf(sets[index], tileMask))
+                addSingleSetFan(index, fan, fanBit, PUNG_OF_TERMINALS_OR_HONORS_BIT);
+        }
+    }
+
+    private void addSingleSetFan(int index, MCRFan fan, int fanBit, int suppress) {
+        if ((suppressed[index] & fanBit) != 0) return;
+        result.addFan(fan);
+        suppressed[index] |= suppress;
     }
 
     /**
-     * Check whether there is a used set and an unused set (or two unused sets) that match some 2-set Fan specified by "target".
-     * If given a pair of sets as mentioned, "target" returns a non-null Fan,
-     * then add this Fan and consume the unused set(s), keep finding such a pair until "target" returns null for all pairs.
+     * Check whether there is a used set and an unused set (or two unused sets) that match some 2-set Fan in pairFans.
+     * If so, add this Fan and consume the unused set(s), keep finding such a pair until there is no such pair.
      * "One used set + one unused set" is considered prior to "two unused sets".
-     * You may assume that the input of "target" must be 2 sets.
      */
-    private void checkAddOneSetWithUsedSetOrTwoSets(BiFunction<SuppressedClaim, SuppressedClaim, MCRFan> target) {
-        final AtomicReference<MCRFan> fanRef = new AtomicReference<>();
+    private void checkTwoSetFans(MCRFan[] pairFans) {
         boolean matched;
         do {
-            // try to match and consume unused claims
-            matched = consumeUnusedClaims(claims -> {
-                // try "one used set + one unused set" first
-                List<SuppressedClaim> result = oneSetWithUsedSetFuncWrapper(target, claims, fanRef);
-                if (result != null) return result;
-                // then try "two unused sets"
-                result = twoSetFuncWrapper(target, claims, fanRef);
-                return result;
-            }, claim -> setOf());
-            if (matched) result.addFan(fanRef.get());
-        } while (matched);
-    }
-
-    // given unused claims
-    // this method checks each pair of used and unused claim
-    // returns the unused set to consume
-    // and sets fanRef to the Fan to add
-    private List<SuppressedClaim> oneSetWithUsedSetFuncWrapper(BiFunction<SuppressedClaim, SuppressedClaim, MCRFan> target,
-                                                               List<SuppressedClaim> claims, AtomicReference<MCRFan> fanRef) {
-        for (SuppressedClaim unusedClaim : claims) {
-            for (SuppressedClaim usedClaim : usedClaims) {
-                final MCRFan fan = target.apply(unusedClaim, usedClaim);
-                if (fan != null) {
-                    fanRef.set(fan);
-                    return new ArrayList<>(List.of(unusedClaim));
+            matched = false;
+            // try "one used set + one unused set" first
+            for (int i = 0; i < unusedCount && !matched; i++) {
+                for (int j = 0; j < usedCount && !matched; j++) {
+                    final MCRFan fan = pairFans[sets[unused[i]] * SET_CODE_COUNT + sets[used[j]]];
+                    if (fan != null) {
+                        consume(1 << i, 0);
+                        result.addFan(fan);
+                        matched = true;
+                    }
                 }
             }
-        }
-        return null;
-    }
-
-    private List<SuppressedClaim> twoSetFuncWrapper(BiFunction<SuppressedClaim, SuppressedClaim, MCRFan> target,
-                                                    List<SuppressedClaim> claims, AtomicReference<MCRFan> fanRef) {
-        if (claims.size() <= 1) return null;
-        for (int i = 0, bound = claims.size() - 1; i < bound; i++) {
-            for (int j = i + 1, bound1 = claims.size(); j < bound1; j++) {
-                final MCRFan fan = target.apply(claims.get(i), claims.get(j));
-                if (fan != null) {
-                    fanRef.set(fan);
-                    return new ArrayList<>(List.of(claims.get(i), claims.get(j)));
+            // then try "two unused sets"
+            for (int i = 0; i < unusedCount - 1 && !matched; i++) {
+                for (int j = i + 1; j < unusedCount && !matched; j++) {
+                    final MCRFan fan = pairFans[sets[unused[i]] * SET_CODE_COUNT + sets[unused[j]]];
+                    if (fan != null) {
+                        consume(1 << i | 1 << j, 0);
+                        result.addFan(fan);
+                        matched = true;
+                    }
                 }
             }
-        }
-        return null;
+        } while (matched);
     }
 
     /**
-     * Check whether the required sets of a 3-set Fan exist.
-     * If so, add this Fan and consume involved sets.
-     * You may assume that the input of target must be 3 sets.
+     * Check whether three unused sets match a 3-set Fan.
+     * If so, add this Fan and consume these sets.
+     * With 4 unused sets, the first matching triple (leaving out the first set, then the second, etc.) is consumed.
      */
-    private void checkAddThreeSets(Function<List<SuppressedClaim>, List<SuppressedClaim>> target,
-                                   MCRFan fan) {
-        checkAdd(
-                claims -> {
-                    if (claims.size() == 4) {
-                        for (int i = 0; i < 4; i++) {
-                            final List<SuppressedClaim> threeSets = minus(claims, i);
-                            final List<SuppressedClaim> ret = target.apply(threeSets);
-                            if (ret != null) return ret;
-                        }
-                    } else if (claims.size() == 3) {
-                        return target.apply(claims);
-                    }
-                    return null;
-                },
-                fan
-        );
-    }
-
-    private void checkAdd(Function<List<SuppressedClaim>, List<SuppressedClaim>> target,
-                          MCRFan fan) {
-        checkAddSuppress(target, fan, claim -> setOf());
-    }
-
-    private void checkAddSuppress(Function<List<SuppressedClaim>, List<SuppressedClaim>> target,
-                                  MCRFan fan,
-                                  MCRFan suppress) {
-        checkAddSuppress(target, fan, claim -> setOf(suppress));
-    }
-
-    private void checkAddSuppress(Function<List<SuppressedClaim>, List<SuppressedClaim>> target,
-                                  MCRFan fan,
-                                  Set<MCRFan> suppress) {
-        checkAddSuppress(target, fan, claim -> suppress);
+    private void checkThreeSets(MCRFan fan) {
+        if (unusedCount == 3) {
+            if (matchesThreeSets(fan, sets[unused[0]], sets[unused[1]], sets[unused[2]])) {
+                consume(0b111, 0);
+                result.addFan(fan);
+            }
+        } else if (unusedCount == 4) {
+            for (int left = 0; left < 4; left++) {
+                final int selection = 0b1111 & ~(1 << left);
+                // the three sets except the left one, in order
+                final int s1 = sets[unused[left == 0 ? 1 : 0]];
+                final int s2 = sets[unused[left <= 1 ? 2 : 1]];
+                final int s3 = sets[unused[left <= 2 ? 3 : 2]];
+                if (matchesThreeSets(fan, s1, s2, s3)) {
+                    consume(selection, 0);
+                    result.addFan(fan);
+                    return;
+                }
+            }
+        }
     }
 
-    // check whether the required sets of a Fan exist
-    // if so, add this Fan (maybe duplicable), consume involved sets,
-    // and suppress Fans for each consumed set (specified by suppressor)
-    private void checkAddSuppress(Function<List<SuppressedClaim>, List<SuppressedClaim>> target,
-                                  MCRFan fan,
-                                  Function<SuppressedClaim, Set<MCRFan>> suppressor) {
-        while (consumeUnusedClaims(target, suppressor))
+    // check whether all four sets are unused and match a 4-set Fan
+    private void checkFourSets(MCRFan fan, int suppress) {
+        if (unusedCount != 4) return;
+        if (matchesFourSets(fan, sets[unused[0]], sets[unused[1]], sets[unused[2]], sets[unused[3]])) {
+            consume(0b1111, suppress);
             result.addFan(fan);
+        }
     }
 
-    // consume a subset of unused claims and apply suppress
-    private boolean consumeUnusedClaims(Function<List<SuppressedClaim>, List<SuppressedClaim>> target,
-                                        Function<SuppressedClaim, Set<MCRFan>> suppressor) {
-        final List<SuppressedClaim> result = target.apply(unusedClaims);
-        if (result == null) return false;
-        final List<SuppressedClaim> toConsume = new ArrayList<>(result);
-        for (SuppressedClaim claim : toConsume) {
-            unusedClaims.remove(claim);
-            final Set<MCRFan> suppress = suppressor.apply(claim);
-            claim.suppress.addAll(suppress);
-            usedClaims.add(claim);
+    // check whether there are exactly count unused sets of tiles in tileMask
+    // if so, add the Fan, consume these sets and suppress Fans for them
+    private void checkHonorSets(long tileMask, int count, MCRFan fan, int suppress) {
+        int selection = 0;
+        for (int i = 0; i < unusedCount; i++) {
+            if (isOf(sets[unused[i]], tileMask))
+                selection |= 1 << i;
+        }
+        if (Integer.bitCount(selection) != count) return;
+        consume(selection, suppress);
+        result.addFan(fan);
+    }
+
+    // consume unused sets at positions in selection (in order) and suppress Fans for them
+    private void consume(int selection, int suppress) {
+        int remaining = 0;
+        for (int i = 0; i < unusedCount; i++) {
+            final int index = unused[i];
+            if ((selection & 1 << i) != 0) {
+                suppressed[index] |= suppress;
+                used[usedCount++] = index;
+            } else {
+                unused[remaining++] = index;
+            }
         }
-        return true;
+        unusedCount = remaining;
     }
 
 }
@@ -0,0 +1,446 @@
+package net.hidme.mahjong.core.calc;
+
+import net.hidme.mahjong.core.data.Claim;
+import net.hidme.mahjong.core.data.Tile;
+import net.hidme.mahjong.core.data.TileCounts;
+
+/**
+ * The shanten calculator for MCR.
+ * Shanten is the number of tiles to replace before a hand is ready (i.e. waiting for a winning tile):
+ * 0 for a ready 13-tile hand, and -1 for a winning 14-tile hand.
+ * The following shapes are considered:
+ * <ul>
+ *     <li>normal hands (4 sets and a pair)</li>
+ *     <li>normal hands with a knitted straight</li>
+ *     <li>seven pairs (4 identical tiles count as 2 pairs)</li>
+ *     <li>thirteen orphans</li>
+ *     <li>honors and knitted tiles</li>
+ * </ul>
+ * <p>
+ *     Number suits are evaluated through a shared table, which is filled lazily.
+ *     Methods on count arrays do not allocate memory.
+ *     This class is stateless and safe for concurrent use.
+ * </p>
+ */
+public class MCRShantenCalculator {
+
+    /**
+     * Calculate the minimum shanten over all shapes.
+     * @param claims claims of the hand
+     * @param tiles hand tiles (possibly including a declared tile); there should be 13 or 14 effective tiles
+     */
+    public int calculate(Claim[] claims, Tile[] tiles) {
+        return calculate(TileCounts.of(tiles).toArray(), claims.length);
+    }
+
+    /**
+     * Calculate the minimum shanten over all shapes.
+     * @param counts counts of hand tiles (excluding claims) indexed like {@link TileCounts};
+     *               it is left unchanged
+     * @param claimCount the number of claims (each claim counts as 3 effective tiles)
+     */
+    public int calculate(byte[] counts, int claimCount) {
+        checkArguments(counts, claimCount);
+        int shanten = getNormalShanten(counts, claimCount);
+        shanten = getKnittedStraightShanten(counts, claimCount, shanten);
+        if (claimCount == 0) {
+            shanten = Math.min(shanten, getSevenPairsShanten(counts));
+            shanten = Math.min(shanten, getThirteenOrphansShanten(counts));
+            shanten = Math.min(shanten, getHonorsAndKnittedShanten(counts));
+        }
+        return shanten;
+    }
+
+    /**
+     * Calculate the shanten of normal hands (4 sets and a pair) without knitted straights.
+     */
+    public int calculateNormal(byte[] counts, int claimCount) {
+        checkArguments(counts, claimCount);
+        return getNormalShanten(counts, claimCount);
+    }
+
+    /**
+     * Calculate the shanten of normal hands with a knitted straight.
+     * It is {@link #NOT_APPLICABLE} if there is more than 1 claim.
+     */
+    public int calculateKnittedStraight(byte[] counts, int claimCount) {
+        checkArguments(counts, claimCount);
+        return getKnittedStraightShanten(counts, claimCount, NOT_APPLICABLE);
+    }
+
+    /**
+     * Calculate the shanten of seven pairs.
+     * It is {@link #NOT_APPLICABLE} if there is any claim.
+     */
+    public int calculateSevenPairs(byte[] counts, int claimCount) {
+        checkArguments(counts, claimCount);
+        return claimCount == 0 ? getSevenPairsShanten(counts) : NOT_APPLICABLE;
+    }
+
+    /**
+     * Calculate the shanten of thirteen orphans.
+     * It is {@link #NOT_APPLICABLE} if there is any claim.
+     */
+    public int calculateThirteenOrphans(byte[] counts, int claimCount) {
+        checkArguments(counts, claimCount);
+        return claimCount == 0 ? getThirteenOrphansShanten(counts) : NOT_APPLICABLE;
+    }
+
+    /**
+     * Calculate the shanten of honors and knitted tiles.
+     * It is {@link #NOT_APPLICABLE} if there is any claim.
+     */
+    public int calculateHonorsAndKnitted(byte[] counts, int claimCount) {
+        checkArguments(counts, claimCount);
+        return claimCount == 0 ? getHonorsAndKnittedShanten(counts) : NOT_APPLICABLE;
+    }
+
+    /**
+     * The shanten of a shape that cannot be formed with the given claims.
+     */
+    public static final int NOT_APPLICABLE = Integer.MAX_VALUE;
+
+    private static void checkArguments(byte[] counts, int claimCount) {
+        if (counts.length != TileCounts.SIZE)
+            throw new IllegalArgumentException("counts must be of length " + TileCounts.SIZE);
+        if (claimCount < 0 || claimCount > 4)
+            throw new IllegalArgumentException("invalid claim count " + claimCount);
+        int size = claimCount * 3;
+        for (byte count : counts) {
+            if (count < 0) throw new IllegalArgumentException("negative tile count");
+            size += count;
+        }
+        if (size != 13 && size != 14)
+            throw new IllegalArgumentException("not 13 or 14 effective tiles");
+    }
+
+    // normal hands
+
+    private int getNormalShanten(byte[] counts, int claimCount) {
+        return getNormalShanten(evaluateAllSuits(counts), 4 - claimCount);
+    }
+
+    // setCount: the number of sets required in hand tiles
+    private static int getNormalShanten(int value, int setCount) {
+        int shanten = NOT_APPLICABLE;
+        for (int pair = 0; pair <= 1; pair++) {
+            for (int sets = 0; sets <= setCount; sets++) {
+                final int slot = getSlot(value, pair, sets);
+                if (slot == 0) continue;
+                // partial sets (incl. pairs other than the eye) beyond the required sets are useless
+                final int partialSets = Math.min(slot - 1, setCount - sets);
+                shanten = Math.min(shanten, 2 * setCount - 2 * sets - partialSets - pair);
+            }
+        }
+        return shanten;
+    }
+
+    private static int evaluateAllSuits(byte[] counts) {
+        int value = evaluateNumberSuit(counts, 0);
+        value = combine(value, evaluateNumberSuit(counts, 9));
+        value = combine(value, evaluateNumberSuit(counts, 18));
+        return combine(value, evaluateHonors(counts));
+    }
+
+    // knitted straight
+
+    // bit i is set iff the tile at i is in the knitted straight
+    // characters, dots and bamboos of 147/258/369 in each permutation
+    private static final int[] KNITTED_STRAIGHT_MASKS = {
+            getKnittedStraightMask(0, 1, 2), getKnittedStraightMask(0, 2, 1),
+            getKnittedStraightMask(1, 0, 2), getKnittedStraightMask(1, 2, 0),
+            getKnittedStraightMask(2, 0, 1), getKnittedStraightMask(2, 1, 0)
+    };
+
+    private static int getKnittedStraightMask(int... firstNumbers) {
+        int mask = 0;
+        for (int suitIndex = 0; suitIndex < 3; suitIndex++) {
+            for (int number = firstNumbers[suitIndex]; number < 9; number += 3) {
+                mask |= 1 << (suitIndex * 9 + number);
+            }
+        }
+        return mask;
+    }
+
+    // bit i is set iff the number tile at i is present
+    private static int getNumberPresence(byte[] counts) {
+        int presence = 0;
+        for (int i = 0; i < 27; i++) {
+            if (counts[i] > 0) presence |= 1 << i;
+        }
+        return presence;
+    }
+
+    // the min of the shanten and upperBound
+    private int getKnittedStraightShanten(byte[] counts, int claimCount, int upperBound) {
+        if (claimCount > 1) return upperBound;
+        final int presence = getNumberPresence(counts);
+        // honor tiles are not affected by the knitted straight
+        final int honorValue = evaluateHonors(counts);
+        int shanten = upperBound;
+        // permutations with more present tiles are tried first
+        int visited = 0;
+        for (int round = 0; round < KNITTED_STRAIGHT_MASKS.length; round++) {
+            int p = -1, presentCount = -1;
+            for (int q = 0; q < KNITTED_STRAIGHT_MASKS.length; q++) {
+                if ((visited & (1 << q)) != 0) continue;
+                final int count = Integer.bitCount(presence & KNITTED_STRAIGHT_MASKS[q]);
+                if (count > presentCount) {
+                    p = q;
+                    presentCount = count;
+                }
+            }
+            visited |= 1 << p;
+            final int missing = 9 - presentCount;
+            // the rest is at least -1 shanten, and other permutations miss more tiles
+            if (missing - 1 >= shanten) break;
+            // take out present tiles of the knitted straight
+            final int present = presence & KNITTED_STRAIGHT_MASKS[p];
+            for (int bits = present; bits != 0; bits &= bits - 1) {
+                counts[Integer.numberOfTrailingZeros(bits)]--;
+            }
+            int value = evaluateNumberSuit(counts, 0);
+            value = combine(value, evaluateNumberSuit(counts, 9));
+            value = combine(value, evaluateNumberSuit(counts, 18));
+            value = combine(value, honorValue);
+            shanten = Math.min(shanten, missing + getNormalShanten(value, 1 - claimCount));
+            // put them back
+            for (int bits = present; bits != 0; bits &= bits - 1) {
+                counts[Integer.numberOfTrailingZeros(bits)]++;
+            }
+        }
+        return shanten;
+    }
+
+    // other shapes
+
+    private static int getSevenPairsShanten(byte[] counts) {
+        int pairs = 0;
+        for (byte count : counts) {
+            pairs += count / 2;
+        }
+        return 6 - Math.min(7, pairs);
+    }
+
+    private static final int[] ORPHAN_INDICES = {0, 8, 9, 17, 18, 26, 27, 28, 29, 30, 31, 32, 33};
+
+    private static int getThirteenOrphansShanten(byte[] counts) {
+        int kinds = 0;
+        boolean hasPair = false;
+        for (int index : ORPHAN_INDICES) {
+            if (counts[index] > 0) kinds++;
+            if (counts[index] > 1) hasPair = true;
+        }
+        return 13 - kinds - (hasPair ? 1 : 0);
+    }
+
+    private static int getHonorsAndKnittedShanten(byte[] counts) {
+        int honors = 0;
+        for (int i = 27; i < TileCounts.SIZE; i++) {
+            if (counts[i] > 0) honors++;
+        }
+        final int presence = getNumberPresence(counts);
+        int knitted = 0;
+        for (int mask : KNITTED_STRAIGHT_MASKS) {
+            knitted = Math.max(knitted, Integer.bitCount(presence & mask));
+        }
+        return 13 - Math.min(14, honors + knitted);
+    }
+
+    // suit evaluation
+    // The evaluation of some tiles is packed into an int.
+    // For each number of pairs used as the eye (0/1) and each number of sets (0-4),
+    // a 3-bit slot stores 1 + the max number of partial sets (pairs, or chows with 1 missing tile),
+    // or 0 if impossible.
+    // The number of partial sets is capped at 4 since no more than 4 of them are useful.
+
+    private static final int MAX_SETS = 4;
+    private static final int MAX_PARTIAL_SETS = 4;
+    private static final int KNOWN = 1 << 30;
+    // no tile: no eye, no set, and no partial set
+    private static final int EMPTY_VALUE = 1;
+    // a single set, the eye or a partial set
+    private static final int SET_VALUE = 1 << 3;
+    private static final int EYE_VALUE = 1 << 15;
+    private static final int PARTIAL_SET_VALUE = 2;
+    private static final int[] HONOR_VALUES;
+    // 5^9
+    private static final int KEY_BOUND = 1953125;
+
+    // 5^7
+    private static final int HONOR_KEY_BOUND = 78125;
+
+    // the table is only allocated when a number suit is evaluated for the first time
+    private static final class SuitTable {
+        // entries may be written by several threads at the same time, but always with the same value
+        private static final int[] VALUES = new int[KEY_BOUND];
+    }
+
+    // evaluations of all honor tiles, which are independent of each other
+    private static final int[] HONOR_TABLE_VALUES = new int[HONOR_KEY_BOUND];
+
+    static {
+        HONOR_VALUES = new int[15];
+        final byte[] counts = new byte[1];
+        for (int count = 0; count < HONOR_VALUES.length; count++) {
+            counts[0] = (byte) count;
+            HONOR_VALUES[count] = evaluateRecursive(counts, 0, 1, false);
+        }
+    }
+
+    private static int getSlot(int value, int pair, int sets) {
+        return (value >>> (3 * (pair * 5 + sets))) & 7;
+    }
+
+    private static int withSlot(int value, int pair, int sets, int slot) {
+        final int shift = 3 * (pair * 5 + sets);
+        return (value & ~(7 << shift)) | (slot << shift);
+    }
+
+    // slot-wise max
+    private static int merge(int value1, int value2) {
+        int value = 0;
+        for (int pair = 0; pair <= 1; pair++) {
+            for (int sets = 0; sets <= MAX_SETS; sets++) {
+                final int slot = Math.max(getSlot(value1, pair, sets), getSlot(value2, pair, sets));
+                value = withSlot(value, pair, sets, slot);
+            }
+        }
+        return value;
+    }
+
+    // the lowest bit of each slot
+    private static final int SLOT_LOW_BITS = 0b001_001_001_001_001_001_001_001_001_001;
+
+    // the lowest bits of non-empty slots
+    private static int getNonEmptySlots(int value) {
+        return (value | value >>> 1 | value >>> 2) & SLOT_LOW_BITS;
+    }
+
+    // the evaluation of the union of disjoint tiles
+    private static int combine(int value1, int value2) {
+        int value = 0;
+        for (int slots1 = getNonEmptySlots(value1); slots1 != 0; slots1 &= slots1 - 1) {
+            final int shift1 = Integer.numberOfTrailingZeros(slots1);
+            final int slot1 = (value1 >>> shift1) & 7;
+            final int pair1 = shift1 / 15, sets1 = shift1 / 3 % 5;
+            for (int slots2 = getNonEmptySlots(value2); slots2 != 0; slots2 &= slots2 - 1) {
+                final int shift2 = Integer.numberOfTrailingZeros(slots2);
+                final int pair2 = shift2 / 15, sets2 = shift2 / 3 % 5;
+                if (pair1 + pair2 > 1 || sets1 + sets2 > MAX_SETS) continue;
+                final int slot = Math.min(MAX_PARTIAL_SETS, slot1 - 1 + ((value2 >>> shift2) & 7) - 1) + 1;
+                if (slot > getSlot(value, pair1 + pair2, sets1 + sets2))
+                    value = withSlot(value, pair1 + pair2, sets1 + sets2, slot);
+            }
+        }
+        return value;
+    }
+
+    private static int evaluateHonors(byte[] counts) {
+        int key = 0;
+        for (int i = TileCounts.SIZE - 1; i >= 27; i--) {
+            final int count = counts[i];
+            // invalid tile sets are evaluated without the table
+            if (count > 4) return combineHonors(counts);
+            key = key * 5 + count;
+        }
+        final int known = HONOR_TABLE_VALUES[key];
+        if (known != 0) return known & ~KNOWN;
+        final int value = combineHonors(counts);
+        HONOR_TABLE_VALUES[key] = value | KNOWN;
+        return value;
+    }
+
+    private static int combineHonors(byte[] counts) {
+        int value = EMPTY_VALUE;
+        for (int i = 27; i < TileCounts.SIZE; i++) {
+            value = combine(value, HONOR_VALUES[counts[i]]);
+        }
+        return value;
+    }
+
+    private static int evaluateNumberSuit(byte[] counts, int start) {
+        int key = 0;
+        for (int i = start + 8; i >= start; i--) {
+            final int count = counts[i];
+            if (count > 4) {
+                // invalid tile sets are evaluated without the table
+                return evaluateRecursive(counts, start, start + 9, true);
+            }
+            key = key * 5 + count;
+        }
+        final int[] table = SuitTable.VALUES;
+        final int known = table[key];
+        if (known != 0) return known & ~KNOWN;
+        final int value = evaluateRecursive(counts, start, start + 9, true);
+        table[key] = value | KNOWN;
+        return value;
+    }
+
+    // the evaluation of tiles in [from, bound), where tiles before from are absent
+    // chows: whether tiles form chows (i.e. a number suit)
+    // the evaluation of the remaining tiles of a number suit is looked up in the table
+    // counts is restored before returning
+    private static int evaluateRecursive(byte[] counts, int from, int bound, boolean chows) {
+        while (from < bound && counts[from] == 0) from++;
+        if (from == bound) return EMPTY_VALUE;
+        int value = 0;
+        final int count = counts[from];
+        // the position within the suit, which limits chows
+        final int position = from - bound + 9;
+        if (count >= 3) {
+            // pung
+            counts[from] -= 3;
+            value = merge(value, combine(evaluateRest(counts, from, bound, chows), SET_VALUE));
+            counts[from] += 3;
+        }
+        if (count >= 2) {
+            counts[from] -= 2;
+            final int rest = evaluateRest(counts, from, bound, chows);
+            // the eye, or a partial pung
+            value = merge(value, combine(rest, EYE_VALUE));
+            value = merge(value, combine(rest, PARTIAL_SET_VALUE));
+            counts[from] += 2;
+        }
+        if (chows) {
+            final boolean hasNext = position < 8 && counts[from + 1] > 0;
+            final boolean hasNextNext = position < 7 && counts[from + 2] > 0;
+            if (hasNext && hasNextNext) {
+                // chow
+                counts[from]--;
+                counts[from + 1]--;
+                counts[from + 2]--;
+                value = merge(value, combine(evaluateRest(counts, from, bound, true), SET_VALUE));
+                counts[from]++;
+                counts[from + 1]++;
+                counts[from + 2]++;
+            }
+            if (hasNext) {
+                // two adjacent tiles
+                counts[from]--;
+                counts[from + 1]--;
+                value = merge(value, combine(evaluateRest(counts, from, bound, true), PARTIAL_SET_VALUE));
+                counts[from]++;
+                counts[from + 1]++;
+            }
+            if (hasNextNext) {
+                // two tiles with a gap
+                counts[from]--;
+                counts[from + 2]--;
+                value = merge(value, combine(evaluateRest(counts, from, bound, true), PARTIAL_SET_VALUE));
+                counts[from]++;
+                counts[from + 2]++;
+            }
+        }
+        // an isolated tile
+        counts[from]--;
+        value = merge(value, evaluateRest(counts, from, bound, chows));
+        counts[from]++;
+        return value;
+    }
+
+    private static int evaluateRest(byte[] counts, int from, int bound, boolean chows) {
+        return chows ? evaluateNumberSuit(counts, bound - 9) : evaluateRecursive(counts, from, bound, false);
+    }
+
+}
@@ -1,27 +1,57 @@
 package net.hidme.mahjong.core.calc;
 
-import com.google.common.collect.*;
 import net.hidme.mahjong.core.data.Claim;
 import net.hidme.mahjong.core.data.MCRHand;
 import net.hidme.mahjong.core.data.Tile;
+import net.hidme.mahjong.core.data.TileCounts;
 
 import java.util.*;
 
 import static net.hidme.mahjong.core.data.Claim.CLAIMED_FROM_OTHER;
 import static net.hidme.mahjong.core.data.Claim.CLAIMED_FROM_SELF;
 
+/**
+ * The analyzer of hand structures in MCR.
+ * It is stateless and safe for concurrent use.
+ */
 public class MCRStructureAnalyzer {
 
     public List<HandStructure> getPossibleStructures(MCRHand hand) {
         final List<HandStructure> structures = new LinkedList<>();
-        addNormalStructure(hand, structures);
-        addPairStructure(hand, structures);
-        addOrphanStructure(hand, structures);
-        addHonorKnittedStructure(hand, structures);
+        final byte[] counts = hand.getHandTileCounts().toArray();
+        addNormalStructure(hand, counts, structures);
+        if (!hand.hasClaim()) {
+            addPairStructure(counts, structures);
+            addOrphanStructure(counts, structures);
+            addHonorKnittedStructure(counts, structures);
+        }
         setDeclaredClaim(structures, hand.declaredTile, hand.selfDrawn);
         return structures;
     }
 
+    /**
+     * Check whether a hand is a winning hand (i.e. it has some structure).
+     * It is equivalent to {@code !getPossibleStructures(hand).isEmpty()} but enumerates no structure.
+     */
+    public boolean isWinning(MCRHand hand) {
+        return isWinning(hand.getHandTileCounts().toArray(), hand.hasClaim());
+    }
+
+    /**
+     * Check whether hand tiles form a winning hand together with claims.
+     * The check stops at the first valid decomposition.
+     * @param counts counts of hand tiles (including the declared tile, excluding claims) indexed like
+     *               {@link TileCounts}; it is left unchanged
+     * @param hasClaim whether there is any claim, which rules out seven pairs, thirteen orphans,
+     *                 and honors and knitted tiles
+     */
+    public boolean isWinning(byte[] counts, boolean hasClaim) {
+        if (isNormalWithoutKnittedStraight(counts)) return true;
+        if (isNormalWithKnittedStraight(counts)) return true;
+        if (hasClaim) return false;
+        return isSevenPairs(counts) || isThirteenOrphans(counts) || isHonorsAndKnitted(counts);
+    }
+
     // assign attributes of the declared claim
     private void setDeclaredClaim(List<HandStructure> structures, Tile declaredTile, boolean selfDrawn) {
         final List<HandStructure> oldStructures = new ArrayList<>(structures);
@@ -52,12 +82,12 @@ public class MCRStructureAnalyzer {
         }
     }
 
-    private void addNormalStructure(MCRHand hand, List<HandStructure> structures) {
+    private void addNormalStructure(MCRHand hand, byte[] counts, List<HandStructure> structures) {
         final List<NormalHandStructure> normalStructs = new ArrayList<>();
         // check possible knitted straights
-        addNormalStructureWithKnittedStraight(hand.getHandTiles(), normalStructs);
+        addNormalStructureWithKnittedStraight(counts, normalStructs);
         // ignore knitted straight
-        addNormalStructureWithoutKnittedStraight(hand.getHandTiles(), normalStructs);
+        addNormalStructureWithoutKnittedStraight(counts, normalStructs);
         // add fixed claims
         normalStructs.replaceAll(s -> new NormalHandStructure(
                 new NormalHandStructure(hand.claims, null),
@@ -66,15 +96,16 @@ public class MCRStructureAnalyzer {
         structures.addAll(normalStructs);
     }
 
-    private void addNormalStructureWithKnittedStraight(SortedMultiset<Tile> tiles, List<NormalHandStructure> normalStructs) {
-        final SortedMultiset<Tile> newTilesMultiset = TreeMultiset.create(tiles);
-        final List<NormalHandStructure> knittedStraights = getKnittedStraights(newTilesMultiset);
+    // counts is restored before returning
+    private void addNormalStructureWithKnittedStraight(byte[] counts, List<NormalHandStructure> normalStructs) {
+        final List<NormalHandStructure> knittedStraights = getKnittedStraights(counts);
         for (NormalHandStructure knittedStraight : knittedStraights) {
             // remove the knitted straight
-            final SortedMultiset<Tile> remainingTiles = removeTiles(newTilesMultiset, knittedStraight);
+            addClaims(counts, knittedStraight, -1);
             // get possible structures of the rest of tiles
             final List<NormalHandStructure> structsWOKnittedStraight = new ArrayList<>();
-            addNormalStructureWithoutKnittedStraight(remainingTiles, structsWOKnittedStraight);
+            addNormalStructureWithoutKnittedStraight(counts, structsWOKnittedStraight);
+            addClaims(counts, knittedStraight, 1);
             // combine knitted straight with those structures
             for (NormalHandStructure struct : structsWOKnittedStraight) {
                 normalStructs.add(new NormalHandStructure(knittedStraight, struct));
@@ -82,31 +113,36 @@ public class MCRStructureAnalyzer {
         }
     }
 
-    // remove tiles in structure from tiles; the removal is not in-place
-    private SortedMultiset<Tile> removeTiles(SortedMultiset<Tile> tiles, NormalHandStructure structure) {
-        final SortedMultiset<Tile> ret = TreeMultiset.create(tiles);
+    // add (sign = 1) or remove (sign = -1) tiles in structure; the update is in-place
+    private void addClaims(byte[] counts, NormalHandStructure structure, int sign) {
         for (Claim claim : structure.claims) {
-            removeClaim(ret, claim);
+            for (Tile tile : claim.getTiles()) {
+                counts[tile.ordinal()] += (byte) sign;
+            }
         }
-        return ret;
     }
 
-    private void removeClaim(SortedMultiset<Tile> tiles, Claim claim) {
-        for (Tile tile : claim.getTiles()) {
-            tiles.remove(tile);
+    // counts is restored before returning
+    private boolean isNormalWithKnittedStraight(byte[] counts) {
+        for (NormalHandStructure knittedStraight : getKnittedStraights(counts)) {
+            addClaims(counts, knittedStraight, -1);
+            final boolean isNormal = isNormalWithoutKnittedStraight(counts);
+            addClaims(counts, knittedStraight, 1);
+            if (isNormal) return true;
         }
+        return false;
     }
 
-    private List<NormalHandStructure> getKnittedStraights(SortedMultiset<Tile> tiles) {
+    private List<NormalHandStructure> getKnittedStraights(byte[] counts) {
         final List<NormalHandStructure> structures = new ArrayList<>();
-        getKnittedStraightsRecursive(tiles, 1, new LinkedHashSet<>(), structures);
+        getKnittedStraightsRecursive(counts, 1, new LinkedHashSet<>(), structures);
         return structures;
     }
 
     // start: 3 for 369, 1 for 147, 2 for 258
     // suits: the suits to which a knitted chow has been assigned
     // structures: the possible structure of the removed knitted straight
-    private void getKnittedStraightsRecursive(SortedMultiset<Tile> tiles, int start, LinkedHashSet<Character> suits, List<NormalHandStructure> structures) {
+    private void getKnittedStraightsRecursive(byte[] counts, int start, LinkedHashSet<Character> suits, List<NormalHandStructure> structures) {
         if (start == 4) {
             final Claim[] claims = new Claim[3];
             int i = 0;
@@ -117,35 +153,30 @@ public class MCRStructureAnalyzer {
             structures.add(new NormalHandStructure(claims, null));
             return;
         }
-        for (char suit : new char[]{'m', 'p', 's'}) {
-            if (!suits.contains(suit) && containsKnittedChowOfSuit(tiles, start, suit)) {
+        for (char suit : NUMBER_SUITS) {
+            if (!suits.contains(suit) && containsKnittedChowOfSuit(counts, start, suit)) {
                 suits.add(suit);
-                getKnittedStraightsRecursive(tiles, start + 1, suits, structures);
+                getKnittedStraightsRecursive(counts, start + 1, suits, structures);
                 suits.remove(suit);
             }
         }
     }
 
-    private boolean containsKnittedChowOfSuit(SortedMultiset<Tile> tiles, int start, char suit) {
-        return tiles.contains(Tile.getInstance(start, suit))
-                && tiles.contains(Tile.getInstance(start + 3, suit))
-                && tiles.contains(Tile.getInstance(start + 6, suit));
+    private boolean containsKnittedChowOfSuit(byte[] counts, int start, char suit) {
+        final int index = TileCounts.suitStart(suit) + start - 1;
+        return counts[index] > 0 && counts[index + 3] > 0 && counts[index + 6] > 0;
     }
 
-    private void addNormalStructureWithoutKnittedStraight(SortedMultiset<Tile> tiles, List<NormalHandStructure> structures) {
-        final Map<Character, SortedMultiset<Tile>> suitsTiles = new HashMap<>();
-        for (char suit : new char[]{'m', 'p', 's', 'w', 'd'}) {
-            suitsTiles.put(suit, Tile.getTilesOfSuit(tiles, suit));
-        }
+    private void addNormalStructureWithoutKnittedStraight(byte[] counts, List<NormalHandStructure> structures) {
         // there should be only one pair
-        char suitWithPair = getSuitWithPair(suitsTiles);
+        char suitWithPair = getSuitWithPair(counts);
         if (suitWithPair == 0) return;
         // search for chows/pungs in hand tiles
         // claims are fixed
         List<NormalHandStructure> previousStructs = List.of(new NormalHandStructure());
-        for (char suit : new char[]{'w', 'd', 'm', 'p', 's'}) {
+        for (char suit : COMBINATION_SUITS) {
             // get possible structures of a suit
-            final List<NormalHandStructure> structs = getSuitStructure(suit, suitsTiles.get(suit), suitWithPair == suit);
+            final List<NormalHandStructure> structs = getSuitStructure(suit, counts, suitWithPair == suit);
             if (structs.isEmpty()) return;  // shortcut: no possible structure
             // combine possible structures of the suit with previous structures (Cartesian product)
             final List<NormalHandStructure> combinedStructs = new ArrayList<>();
@@ -159,15 +190,31 @@ public class MCRStructureAnalyzer {
         structures.addAll(previousStructs);
     }
 
+    private boolean isNormalWithoutKnittedStraight(byte[] counts) {
+        final char suitWithPair = getSuitWithPair(counts);
+        if (suitWithPair == 0) return false;
+        for (char suit : HONOR_SUITS) {
+            if (!isHonorSuitDecomposable(suit, counts, suitWithPair == suit)) return false;
+        }
+        for (char suit : NUMBER_SUITS) {
+            if (!MCRSuitDecompositionTable.isDecomposable(counts, TileCounts.suitStart(suit))) return false;
+        }
+        return true;
+    }
+
     // in which suit is the only pair
     // 0 for "invalid"
-    private char getSuitWithPair(Map<Character, SortedMultiset<Tile>> suitsTiles) {
+    private char getSuitWithPair(byte[] counts) {
         char suitWithPair = 0;
-        for (Map.Entry<Character, SortedMultiset<Tile>> entry : suitsTiles.entrySet()) {
-            final int sizeMod3 = entry.getValue().size() % 3;
+        for (char suit : COMBINATION_SUITS) {
+            int size = 0;
+            for (int i = TileCounts.suitStart(suit), bound = i + TileCounts.suitSize(suit); i < bound; i++) {
+                size += counts[i];
+            }
+            final int sizeMod3 = size % 3;
             if (sizeMod3 == 2) {
                 // a pair is included in the suit
-                if (suitWithPair == 0) suitWithPair = entry.getKey();
+                if (suitWithPair == 0) suitWithPair = suit;
                 else return 0;  // there should be no more than 1 pair
             } else if (sizeMod3 != 0) {
                 // not a normal structure within the suit
@@ -177,137 +224,131 @@ public class MCRStructureAnalyzer {
         return suitWithPair;
     }
 
-    // tiles should all be within the same suit
-    private List<NormalHandStructure> getSuitStructure(char suit, SortedMultiset<Tile> tiles, boolean allowsPair) {
+    // only tiles of the suit are considered
+    private List<NormalHandStructure> getSuitStructure(char suit, byte[] counts, boolean allowsPair) {
         // honor pungs/pair are fixed
         if (suit == 'w' || suit == 'd') {
-            final NormalHandStructure structure = getHonorSuitStructure(tiles, allowsPair);
+            final NormalHandStructure structure = getHonorSuitStructure(suit, counts, allowsPair);
             if (structure != null) return List.of(structure);
             return List.of();
         }
         // search for number chows/pungs/pair
-        return getNumberSuitStructure(tiles, allowsPair);
+        return getNumberSuitStructure(suit, counts);
     }
 
-    private List<NormalHandStructure> getNumberSuitStructure(SortedMultiset<Tile> tiles, boolean allowsPair) {
-        final List<NormalHandStructure> structures = new ArrayList<>();
-        getNumberSuitStructureRecursive(tiles, allowsPair, new ArrayList<>(), null, structures);
-        return structures;
+    // decompositions are looked up in the table, where the pair is implied by the suit size
+    private List<NormalHandStructure> getNumberSuitStructure(char suit, byte[] counts) {
+        return MCRSuitDecompositionTable.getDecompositions(counts, TileCounts.suitStart(suit));
     }
 
-    private void getNumberSuitStructureRecursive(SortedMultiset<Tile> tiles, boolean allowsPair, List<Claim> claims, Tile pair, List<NormalHandStructure> structures) {
-        if (tiles.isEmpty()) {
-            structures.add(new NormalHandStructure(claims.toArray(new Claim[0]), pair));
-            return;
-        }
-        final Multiset.Entry<Tile> firstEntry = tiles.firstEntry();
-        assert firstEntry != null;
-        final Tile firstTile = firstEntry.getElement();
-        final int firstCount = firstEntry.getCount();
-        if (firstCount >= 3) {
-            // try pung
-            claims.add(Claim.create(Claim.Type.PUNG, firstTile, 0, CLAIMED_FROM_SELF));
-            tiles.remove(firstTile, 3);
-            getNumberSuitStructureRecursive(tiles, allowsPair, claims, pair, structures);
-            claims.removeLast();
-            tiles.add(firstTile, 3);
-        }
-        if (firstCount >= 2 && allowsPair) {
-            // try pair
-            tiles.remove(firstTile, 2);
-            getNumberSuitStructureRecursive(tiles, false, claims, firstTile, structures);
-            tiles.add(firstTile, 2);
-        }
-        // the first tiles are all used in chows
-        if (firstTile.number > 7)
-            // chows must begin at 1-7
-            return;
-        int chowCount = firstCount;
-        chowCount = Math.min(chowCount, tiles.count(firstTile.next()));
-        chowCount = Math.min(chowCount, tiles.count(firstTile.shift(2)));
-        if (chowCount < firstCount) return;
-        // all the first tiles can form chows
-        for (int i = 0; i < chowCount; i++) {
-            claims.add(Claim.create(Claim.Type.CHOW, firstTile, 0, CLAIMED_FROM_SELF));
+    private boolean isHonorSuitDecomposable(char suit, byte[] counts, boolean allowsPair) {
+        boolean hasPair = false;
+        for (int i = TileCounts.suitStart(suit), bound = i + TileCounts.suitSize(suit); i < bound; i++) {
+            final int count = counts[i];
+            if (count == 0 || count == 3) continue;
+            if (count == 2 && allowsPair && !hasPair) hasPair = true;
+            else return false;
         }
-        tiles.remove(firstTile, chowCount);
-        tiles.remove(firstTile.next(), chowCount);
-        tiles.remove(firstTile.shift(2), chowCount);
-        getNumberSuitStructureRecursive(tiles, allowsPair, claims, pair, structures);
-        for (int i = 0; i < chowCount; i++) {
-            claims.removeLast();
-        }
-        tiles.add(firstTile, chowCount);
-        tiles.add(firstTile.next(), chowCount);
-        tiles.add(firstTile.shift(2), chowCount);
+        return true;
     }
 
-    private NormalHandStructure getHonorSuitStructure(SortedMultiset<Tile> tiles, boolean allowsPair) {
+    private NormalHandStructure getHonorSuitStructure(char suit, byte[] counts, boolean allowsPair) {
         final List<Claim> claims = new ArrayList<>();
         Tile pair = null;
-        for (Multiset.Entry<Tile> entry : tiles.entrySet()) {
-            final int count = entry.getCount();
+        for (int i = TileCounts.suitStart(suit), bound = i + TileCounts.suitSize(suit); i < bound; i++) {
+            final int count = counts[i];
+            if (count == 0) continue;
             if (count == 3) {
-                claims.add(Claim.create(Claim.Type.PUNG, entry.getElement(), 0, CLAIMED_FROM_SELF));
+                claims.add(Claim.create(Claim.Type.PUNG, TileCounts.tileAt(i), 0, CLAIMED_FROM_SELF));
             } else if (count == 2 && allowsPair && pair == null) {
-                pair = entry.getElement();
+                pair = TileCounts.tileAt(i);
             } else return null;
         }
         return new NormalHandStructure(claims.toArray(new Claim[0]), pair);
     }
 
-    private void addPairStructure(MCRHand hand, List<HandStructure> structures) {
-        if (hand.hasClaim()) return;
-        final Multiset<Tile> tiles = hand.getHandTiles();
-        if (tiles.entrySet().stream().allMatch(e -> e.getCount() % 2 == 0)) {
-            final List<Tile> pairs = new ArrayList<>();
-            for (Multiset.Entry<Tile> entry : tiles.entrySet()) {
-                if (entry.getCount() >= 2) pairs.add(entry.getElement());
-                if (entry.getCount() == 4) pairs.add(entry.getElement());
-            }
-            structures.add(new PairHandStructure(pairs.toArray(new Tile[0])));
+    private void addPairStructure(byte[] counts, List<HandStructure> structures) {
+        if (!isSevenPairs(counts)) return;
+        final List<Tile> pairs = new ArrayList<>();
+        for (int i = 0; i < TileCounts.SIZE; i++) {
+            if (counts[i] >= 2) pairs.add(TileCounts.tileAt(i));
+            if (counts[i] == 4) pairs.add(TileCounts.tileAt(i));
+        }
+        structures.add(new PairHandStructure(pairs.toArray(new Tile[0])));
+    }
+
+    private boolean isSevenPairs(byte[] counts) {
+        for (byte count : counts) {
+            if (count % 2 != 0) return false;
         }
+        return true;
     }
 
-    private void addOrphanStructure(MCRHand hand, List<HandStructure> structures) {
-        if (hand.hasClaim()) return;
-        final Multiset<Tile> tiles = hand.getHandTiles();
-        if (tiles.entrySet().size() != 13) return;
+    private void addOrphanStructure(byte[] counts, List<HandStructure> structures) {
+        if (!isThirteenOrphans(counts)) return;
         Tile doubleTile = null;
-        for (Multiset.Entry<Tile> entry : tiles.entrySet()) {
-            if (!entry.getElement().isOrphan()) return;
-            if (entry.getCount() == 2)
-                doubleTile = entry.getElement();
+        for (int i = 0; i < TileCounts.SIZE; i++) {
+            if (counts[i] == 2)
+                doubleTile = TileCounts.tileAt(i);
         }
         structures.add(new OrphanHandStructure(doubleTile));
     }
 
-    private void addHonorKnittedStructure(MCRHand hand, List<HandStructure> structures) {
-        if (hand.hasClaim()) return;
-        final Multiset<Tile> tiles = hand.getHandTiles();
-        if (tiles.entrySet().size() != 14) return;
+    private boolean isThirteenOrphans(byte[] counts) {
+        int distinct = 0;
+        for (int i = 0; i < TileCounts.SIZE; i++) {
+            if (counts[i] == 0) continue;
+            if (!TileCounts.tileAt(i).isOrphan()) return false;
+            distinct++;
+        }
+        return distinct == 13;
+    }
+
+    private void addHonorKnittedStructure(byte[] counts, List<HandStructure> structures) {
+        if (!isHonorsAndKnitted(counts)) return;
         final List<Tile> honors = new ArrayList<>(), knittedTiles = new ArrayList<>();
-        // 369<->suit1, 147<->suit2, 258<->suit3
-        final BiMap<Integer, Character> knittedSuits = HashBiMap.create();
-        for (Tile tile : tiles.elementSet()) {
-            // add honor tile
+        for (int i = 0; i < TileCounts.SIZE; i++) {
+            if (counts[i] == 0) continue;
+            final Tile tile = TileCounts.tileAt(i);
             if (tile.isHonor()) honors.add(tile);
-            // add knitted tile
-            else if (tile.isNumber()) {
-                knittedTiles.add(tile);
-                final char suit = tile.suit;
-                final int start = tile.number % 3;
-                final Character assignedSuit = knittedSuits.get(start);
-                if (assignedSuit == null && knittedSuits.inverse().get(suit) == null) {
+            else knittedTiles.add(tile);
+        }
+        structures.add(new HonorKnittedHandStructure(honors.toArray(new Tile[0]), knittedTiles.toArray(new Tile[0])));
+    }
+
+    private boolean isHonorsAndKnitted(byte[] counts) {
+        // 14 distinct tiles
+        int distinct = 0;
+        for (byte count : counts) {
+            if (count > 0) distinct++;
+        }
+        if (distinct != 14) return false;
+        // 369<->suit1, 147<->suit2, 258<->suit3
+        // knittedSuits[start] is the index of the suit assigned to the knitted chow (-1 for none)
+        final int[] knittedSuits = {-1, -1, -1};
+        for (int suitIndex = 0; suitIndex < 3; suitIndex++) {
+            for (int number = 1; number <= 9; number++) {
+                if (counts[suitIndex * 9 + number - 1] == 0) continue;
+                final int start = number % 3;
+                if (knittedSuits[start] == -1) {
+                    // the suit must not have been assigned to another knitted chow
+                    for (int assignedSuit : knittedSuits) {
+                        if (assignedSuit == suitIndex) return false;
+                    }
                     // new knitted-chow-suit mapping
-                    knittedSuits.put(start, suit);
-                } else if (assignedSuit == null || assignedSuit != suit) {
+                    knittedSuits[start] = suitIndex;
+                } else if (knittedSuits[start] != suitIndex) {
                     // the suit and knitted chow does not match
-                    return;
+                    return false;
                 }
             }
         }
-        structures.add(new HonorKnittedHandStructure(honors.toArray(new Tile[0]), knittedTiles.toArray(new Tile[0])));
+        return true;
     }
 
+    private static final char[] HONOR_SUITS = {'w', 'd'};
+    private static final char[] NUMBER_SUITS = {'m', 'p', 's'};
+    // the order in which suit structures are combined
+    private static final char[] COMBINATION_SUITS = {'w', 'd', 'm', 'p', 's'};
+
 }
@@ -0,0 +1,176 @@
+package net.hidme.mahjong.core.calc;
+
+import net.hidme.mahjong.core.data.Claim;
+import net.hidme.mahjong.core.data.Tile;
+import net.hidme.mahjong.core.data.TileCounts;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static net.hidme.mahjong.core.data.Claim.CLAIMED_FROM_SELF;
+
+/**
+ * A lookup table of chow/pung/pair decompositions of a number suit.
+ * The 9 tile counts of a suit (each 0-4) are packed into a base-5 key, so there are at most 5^9 keys per suit.
+ * The table is filled lazily and is bounded; once it is full, decompositions are calculated without being stored.
+ * Counts above 4 (only possible in invalid tile sets) are never stored.
+ * <p>
+ *     Returned structures are shared and must not be modified.
+ *     The table is safe for concurrent use.
+ * </p>
+ */
+final class MCRSuitDecompositionTable {
+
+    private MCRSuitDecompositionTable() {
+    }
+
+    /**
+     * Get all decompositions of the number suit whose first tile is at {@code start} in {@code counts}.
+     * A pair is included iff the number of tiles in the suit is 2 modulo 3.
+     * {@code counts} is left unchanged.
+     */
+    static List<NormalHandStructure> getDecompositions(byte[] counts, int start) {
+        final int key = pack(counts, start);
+        if (key < 0) return decompose(counts, start);
+        final int suitKey = (start / 9) * KEY_BOUND + key;
+        final List<NormalHandStructure> cached = TABLE.get(suitKey);
+        if (cached != null) return cached;
+        final List<NormalHandStructure> structures = decompose(counts, start);
+        if (TABLE.size() < MAX_SIZE)
+            TABLE.putIfAbsent(suitKey, structures);
+        return structures;
+    }
+
+    /**
+     * Check whether the number suit whose first tile is at {@code start} in {@code counts} can be decomposed.
+     * It is equivalent to {@code !getDecompositions(counts, start).isEmpty()} but builds no structure.
+     * {@code counts} is left unchanged.
+     */
+    static boolean isDecomposable(byte[] counts, int start) {
+        final int size = getSize(counts, start);
+        if (size % 3 == 1) return false;
+        final int key = pack(counts, start);
+        if (key < 0) return isDecomposableRecursive(counts, start, start + 9, size % 3 == 2);
+        final byte known = DECOMPOSABLE[key];
+        if (known != UNKNOWN) return known == YES;
+        final boolean decomposable = isDecomposableRecursive(counts, start, start + 9, size % 3 == 2);
+        DECOMPOSABLE[key] = decomposable ? YES : NO;
+        return decomposable;
+    }
+
+    // 5^9
+    private static final int KEY_BOUND = 1953125;
+    private static final int MAX_SIZE = 1 << 17;
+    private static final Map<Integer, List<NormalHandStructure>> TABLE = new ConcurrentHashMap<>();
+    // whether each key is decomposable; the key does not depend on the suit
+    // entries may be written by several threads at the same time, but always with the same value
+    private static final byte UNKNOWN = 0, YES = 1, NO = 2;
+    private static final byte[] DECOMPOSABLE = new byte[KEY_BOUND];
+
+    private static int getSize(byte[] counts, int start) {
+        int size = 0;
+        for (int i = start; i < start + 9; i++) {
+            size += counts[i];
+        }
+        return size;
+    }
+
+    // -1 if some count is out of range
+    private static int pack(byte[] counts, int start) {
+        int key = 0;
+        for (int i = start + 8; i >= start; i--) {
+            final int count = counts[i];
+            if (count > 4) return -1;
+            key = key * 5 + count;
+        }
+        return key;
+    }
+
+    private static List<NormalHandStructure> decompose(byte[] counts, int start) {
+        final int size = getSize(counts, start);
+        final List<NormalHandStructure> structures = new ArrayList<>();
+        decomposeRecursive(counts, start, start + 9, size % 3 == 2, new ArrayList<>(), null, structures);
+        return structures.isEmpty() ? List.of() : List.copyOf(structures);
+    }
+
+    // the same search as decomposeRecursive, which stops at the first decomposition
+    private static boolean isDecomposableRecursive(byte[] counts, int from, int bound, boolean needsPair) {
+        while (from < bound && counts[from] == 0) from++;
+        if (from == bound) return !needsPair;
+        final byte firstCount = counts[from];
+        boolean decomposable = false;
+        if (firstCount >= 3) {
+            // try pung
+            counts[from] -= 3;
+            decomposable = isDecomposableRecursive(counts, from, bound, needsPair);
+            counts[from] += 3;
+        }
+        if (!decomposable && firstCount >= 2 && needsPair) {
+            // try pair
+            counts[from] -= 2;
+            decomposable = isDecomposableRecursive(counts, from, bound, false);
+            counts[from] += 2;
+        }
+        if (decomposable) return true;
+        // the first tiles are all used in chows, which must begin at 1-7
+        if (TileCounts.tileAt(from).number > 7) return false;
+        if (counts[from + 1] < firstCount || counts[from + 2] < firstCount) return false;
+        counts[from] -= firstCount;
+        counts[from + 1] -= firstCount;
+        counts[from + 2] -= firstCount;
+        decomposable = isDecomposableRecursive(counts, from, bound, needsPair);
+        counts[from] += firstCount;
+        counts[from + 1] += firstCount;
+        counts[from + 2] += firstCount;
+        return decomposable;
+    }
+
+    // from: the first index which may be non-zero
+    // bound: the end index of the suit (exclusive)
+    private static void decomposeRecursive(byte[] counts, int from, int bound, boolean allowsPair, List<Claim> claims, Tile pair, List<NormalHandStructure> structures) {
+        while (from < bound && counts[from] == 0) from++;
+        if (from == bound) {
+            structures.add(new NormalHandStructure(claims.toArray(new Claim[0]), pair));
+            return;
+        }
+        final Tile firstTile = TileCounts.tileAt(from);
+        final int firstCount = counts[from];
+        if (firstCount >= 3) {
+            // try pung
+            claims.add(Claim.create(Claim.Type.PUNG, firstTile, 0, CLAIMED_FROM_SELF));
+            counts[from] -= 3;
+            decomposeRecursive(counts, from, bound, allowsPair, claims, pair, structures);
+            claims.removeLast();
+            counts[from] += 3;
+        }
+        if (firstCount >= 2 && allowsPair) {
+            // try pair
+            counts[from] -= 2;
+            decomposeRecursive(counts, from, bound, false, claims, firstTile, structures);
+            counts[from] += 2;
+        }
+        // the first tiles are all used in chows
+        if (firstTile.number > 7)
+            // chows must begin at 1-7
+            return;
+        final byte chowCount = (byte) Math.min(firstCount, Math.min(counts[from + 1], counts[from + 2]));
+        if (chowCount < firstCount) return;
+        // all the first tiles can form chows
+        for (int i = 0; i < chowCount; i++) {
+            claims.add(Claim.create(Claim.Type.CHOW, firstTile, 0, CLAIMED_FROM_SELF));
+        }
+        counts[from] -= chowCount;
+        counts[from + 1] -= chowCount;
+        counts[from + 2] -= chowCount;
+        decomposeRecursive(counts, from, bound, allowsPair, claims, pair, structures);
+        for (int i = 0; i < chowCount; i++) {
+            claims.removeLast();
+        }
+        counts[from] += chowCount;
+        counts[from + 1] += chowCount;
+        counts[from + 2] += chowCount;
+    }
+
+}
@@ -0,0 +1,141 @@
+package net.hidme.mahjong.core.calc;
+
+import net.hidme.mahjong.core.data.Claim;
+import net.hidme.mahjong.core.data.MCRHand;
+import net.hidme.mahjong.core.data.MCRResult;
+import net.hidme.mahjong.core.data.TileCounts;
+
+import java.util.List;
+
+/**
+ * The tile-dependent phase of a calculation for MCR, which is shared by hands with the same tiles,
+ * declared tile and claims, and only different in flowers and options.
+ * Structures, Fans of several sets, Fans of tiles and the wait are analyzed once,
+ * and each hand only adds Fans of its situation (e.g. self-drawn, last tile, kong and winds) on top of them,
+ * so rescoring a hand with other options is much cheaper than a calculation from scratch.
+ * <p>
+ *     Self-drawn decides whether the set of the declared tile is concealed, so structures are analyzed
+ *     separately for self-drawn hands and other hands, each on first use.
+ *     An analysis is safe for concurrent use.
+ * </p>
+ * @see MCRCalculator#analyze(MCRHand)
+ */
+public class MCRTileAnalysis {
+
+    MCRTileAnalysis(MCRStructureAnalyzer analyzer, MCRHand hand) {
+        this.analyzer = analyzer;
+        this.hand = hand;
+        key = keyOf(hand);
+    }
+
+    /**
+     * Get the key of the tiles, the declared tile and claims of a hand,
+     * which is the same for all hands that can be calculated by the same analysis.
+     * Hand tiles are sorted, so hands only different in the order of hand tiles have the same key.
+     */
+    public static String keyOf(MCRHand hand) {
+        final StringBuilder builder = new StringBuilder(32);
+        appendKey(builder, hand);
+        return builder.toString();
+    }
+
+    // encode tiles, the declared tile and claims into small chars
+    static void appendKey(StringBuilder builder, MCRHand hand) {
+        final byte[] counts = TileCounts.of(hand.tiles).toArray();
+        for (int i = 0; i < counts.length; i++) {
+            for (int j = 0; j < counts[i]; j++) {
+                builder.append((char) i);
+            }
+        }
+        // separate tiles from the rest
+        builder.append((char) TileCounts.SIZE);
+        builder.append((char) hand.declaredTile.ordinal());
+        for (Claim claim : hand.claims) {
+            builder.append((char) claim.type().ordinal())
+                    .append((char) claim.start().ordinal())
+                    .append((char) claim.claimedIndex())
+                    .append((char) claim.claimedFrom())
+                    .append(claim.isDeclared() ? '\1' : '\0');
+        }
+    }
+
+    /**
+     * Check whether a hand has the same tiles, declared tile and claims as the analyzed hand.
+     */
+    public boolean isApplicable(MCRHand hand) {
+        return key.equals(keyOf(hand));
+    }
+
+    /**
+     * Calculate the Fan for a hand with the same tiles, declared tile and claims as the analyzed hand.
+     * The result is the same as that of {@link MCRCalculator#calculate(net.hidme.mahjong.core.data.Hand)}.
+     * @throws IllegalArgumentException if the analysis is not applicable to the hand
+     */
+    public MCRResult calculate(MCRHand hand) {
+        if (!isApplicable(hand))
+            throw new IllegalArgumentException("The analysis is not applicable to " + hand);
+        final Phase phase = getPhase(hand.selfDrawn);
+        final MCRCalculationContext context = new MCRCalculationContext(hand);
+        MCRResult result = new MCRResult();
+        for (int i = 0; i < phase.structures.size(); i++) {
+            final HandStructure structure = phase.structures.get(i);
+            final MCRResult tmpResult = new MCRResult(phase.results[i]);
+            new MCRSetFanCalc(phase.setFanCalcs[i], hand, tmpResult).calculateSingleSetFans();
+            new MCRTotalFanCalc(context, structure, tmpResult).calculateSituationFans();
+            MCRCalculator.resolve(hand, tmpResult);
+            // the earliest structure is selected among those with the largest Fan
+            if (i == 0 || tmpResult.getFanTotal() > result.getFanTotal())
+                result = tmpResult;
+        }
+        return result;
+    }
+
+    private final MCRStructureAnalyzer analyzer;
+    // the analyzed hand, whose options other than self-drawn are irrelevant
+    private final MCRHand hand;
+    private final String key;
+    // phases of hands that are self-drawn or not, each of which is computed on first use
+    // a phase may be computed by several threads at the same time, which is harmless
+    private volatile Phase selfDrawnPhase, otherPhase;
+
+    private Phase getPhase(boolean selfDrawn) {
+        Phase phase = selfDrawn ? selfDrawnPhase : otherPhase;
+        if (phase == null) {
+            phase = new Phase(selfDrawn);
+            if (selfDrawn) selfDrawnPhase = phase;
+            else otherPhase = phase;
+        }
+        return phase;
+    }
+
+    // structures of the hand and Fans that do not depend on the situation, which are never modified once built
+    private class Phase {
+
+        Phase(boolean selfDrawn) {
+            final MCRHand phaseHand = hand.selfDrawn == selfDrawn ? hand
+                    : new MCRHand(hand.flowers, hand.claims, hand.tiles, hand.declaredTile, true, true,
+                    selfDrawn, false, false, false, hand.prevalentWind, hand.seatWind);
+            structures = List.copyOf(analyzer.getPossibleStructures(phaseHand));
+            final MCRCalculationContext context = new MCRCalculationContext(phaseHand);
+            setFanCalcs = new MCRSetFanCalc[structures.size()];
+            results = new MCRResult[structures.size()];
+            for (int i = 0; i < structures.size(); i++) {
+                final HandStructure structure = structures.get(i);
+                results[i] = new MCRResult();
+                setFanCalcs[i] = new MCRSetFanCalc(phaseHand, structure, results[i]);
+                setFanCalcs[i].calculateComposedSetFans();
+                final MCRTotalFanCalc totalFanCalc = new MCRTotalFanCalc(context, structure, results[i]);
+                totalFanCalc.calculateTileFans();
+                totalFanCalc.calculateStructureFans();
+            }
+        }
+
+        private final List<HandStructure> structures;
+        // set Fan calculators after Fans of several sets are calculated
+        private final MCRSetFanCalc[] setFanCalcs;
+        // Fans except those of single sets and the situation, before conflicts are resolved
+        private final MCRResult[] results;
+
+    }
+
+}
@@ -1,12 +1,9 @@
 package net.hidme.mahjong.core.calc;
 
-import com.google.common.collect.Multiset;
 import com.google.common.collect.SortedMultiset;
-import com.google.common.collect.TreeMultiset;
 import net.hidme.mahjong.core.data.*;
 
 import java.util.*;
-import java.util.function.Predicate;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -17,80 +14,171 @@ import static net.hidme.mahjong.core.data.Tile.*;
 /**
  * Calculator for Fans of total properties.
  * Such Fans do not consume sets during the calculation.
+ * An instance is bound to a single structure and result, and must not be shared between threads.
  */
 public class MCRTotalFanCalc {
 
     public MCRTotalFanCalc(MCRHand hand, HandStructure structure, MCRResult result) {
-        this.hand = hand;
+        this(new MCRCalculationContext(hand), structure, result);
+    }
+
+    /**
+     * Initialize the calculator with a context shared among structures of the same hand.
+     */
+    public MCRTotalFanCalc(MCRCalculationContext context, HandStructure structure, MCRResult result) {
+        this.context = context;
+        this.hand = context.getHand();
         this.structure = structure;
         this.result = result;
     }
 
     public void calculate() {
+        calculateHandFans();
+        calculateStructureFans();
+    }
+
+    /**
+     * Calculate Fans that only depend on the hand and the kind of the structure,
+     * which are the same for all normal structures of a hand.
+     */
+    void calculateHandFans() {
+        calculateTileFans();
+        calculateSituationFans();
+    }
+
+    /**
+     * Calculate Fans of {@link #calculateHandFans()} that only depend on tiles and claims of the hand.
+     */
+    void calculateTileFans() {
         // 88
         checkAllGreen();
         checkNineGates();
-        checkFourKongs();
         checkSevenShiftedPairs();
         checkThirteenOrphans();
         // 64
         checkAllTerminals();
         checkAllHonors();
-        checkFourConcealedPungs();
-        checkPureTerminalChows();
         // 32
-        checkThreeKongs();
         checkAllTerminalsAndHonors();
         // 24
         checkSevenPairs();
         checkGreaterHonorsAndKnittedTiles();
-        checkAllEvenPungs();
         checkFullFlush();
         checkUpperTiles();
         checkMiddleTiles();
         checkLowerTiles();
-        // 16
-        checkThreeSuitedTerminalChows();
-        checkAllFive();
-        checkThreeConcealedPungs();
         // 12
         checkLesserHonorsAndKnittedTiles();
         checkUpperFour();
         checkLowerFour();
         // 8
         checkReversibleTiles();
+        // 6
+        checkHalfFlush();
+        checkAllTypes();
+        // 2
+        checkConcealedHand();
+        checkTileHog();
+        checkAllSimples();
+        // 1
+        checkOneVoidedSuit();
+        checkNoHonors();
+    }
+
+    /**
+     * Calculate Fans of {@link #calculateHandFans()} that depend on the situation of winning,
+     * i.e. self-drawn, last tile, last draw or claim and kong.
+     */
+    void calculateSituationFans() {
+        // 8
         checkLastTileDraw();
         checkLastTileClaim();
         checkOutWithReplacementTile();
         checkRobbingTheKong();
         // 6
-        checkAllPungs();
-        checkHalfFlush();
-        checkAllTypes();
         checkMeldedHand();
+        // 4
+        checkFullyConcealedHand();
+        checkLastTile();
+        // 1
+        checkSelfDrawn();
+    }
+
+    /**
+     * Calculate Fans that depend on sets of a normal structure.
+     * Keep {@link #getStructureFanBound(NormalHandStructure)} in line with these checks.
+     */
+    void calculateStructureFans() {
+        // 88
+        checkFourKongs();
+        // 64
+        checkFourConcealedPungs();
+        checkPureTerminalChows();
+        // 32
+        checkThreeKongs();
+        // 24
+        checkAllEvenPungs();
+        // 16
+        checkThreeSuitedTerminalChows();
+        checkAllFive();
+        checkThreeConcealedPungs();
+        // 6
+        checkAllPungs();
         checkTwoConcealedKongs();
         // 5
         checkConcealedAndMeldedKongs();
         // 4
         checkOutsideHand();
-        checkFullyConcealedHand();
         checkTwoMeldedKongs();
-        checkLastTile();
         // 2
-        checkConcealedHand();
         checkAllChows();
-        checkTileHog();
         checkTwoConcealedPungs();
         checkConcealedKong();
-        checkAllSimples();
         // 1
         checkMeldedKong();
-        checkOneVoidedSuit();
-        checkNoHonors();
         checkUniqueWait();
-        checkSelfDrawn();
     }
 
+    /**
+     * Get an upper bound of the total of Fans added by {@link #calculateStructureFans()} for a normal structure.
+     * It only depends on the composition of sets and the pair, so it is much cheaper than the calculation.
+     */
+    static int getStructureFanBound(NormalHandStructure structure) {
+        final int setCount = structure.claims.length;
+        int chows = 0, knittedChows = 0, pungs = 0, concealedPungs = 0, kongs = 0, concealedKongs = 0;
+        for (Claim claim : structure.claims) {
+            switch (claim.type()) {
+                case CHOW -> chows++;
+                case KNITTED_CHOW -> knittedChows++;
+                case PUNG, KONG -> {
+                    pungs++;
+                    if (claim.isConcealed()) concealedPungs++;
+                    if (claim.type() == KONG) {
+                        kongs++;
+                        if (claim.isConcealed()) concealedKongs++;
+                    }
+                }
+            }
+        }
+        final Tile pair = structure.pair;
+        // unique wait
+        int bound = SINGLE_WAIT.score;
+        // the Fans of kongs and concealed pungs are exact
+        if (kongs == 1) bound += FAN_ONE_KONG[concealedKongs].score;
+        else if (kongs == 2) bound += FAN_TWO_KONGS[concealedKongs].score;
+        else if (kongs >= 3) bound += FAN_KONGS[kongs].score;
+        if (concealedPungs >= 2) bound += FAN_CONCEALED_PUNGS[concealedPungs].score;
+        if (pungs == setCount) bound += ALL_PUNGS.score + ALL_EVEN_PUNGS.score;
+        if (chows + knittedChows == setCount && !pair.isHonor()) bound += ALL_CHOWS.score;
+        final boolean pairOfFive = pair.isNumber() && pair.number == 5;
+        if (pairOfFive) bound += ALL_FIVE.score;
+        if (pairOfFive && chows == setCount)
+            bound += PURE_TERMINAL_CHOWS.score + THREE_SUITED_TERMINAL_CHOWS.score;
+        if (pair.isOrphan()) bound += OUTSIDE_HAND.score;
+        return bound;
+    }
+
+    private final MCRCalculationContext context;
     private final MCRHand hand;
     private final HandStructure structure;
     private final MCRResult result;
@@ -102,21 +190,18 @@ public class MCRTotalFanCalc {
     }
 
     private void checkOneVoidedSuit() {
-        final Set<Character> suits = getSuitSet(hand.getHandTilesWithClaims());
-        suits.removeAll(List.of('w', 'd'));
-        if (suits.size() == 2)
+        if (getNumberSuitCount() == 2)
             result.addFan(ONE_VOIDED_SUIT);
     }
 
     private void checkNoHonors() {
-        if (hand.getHandTilesWithClaims().stream().noneMatch(Tile::isHonor))
+        if (!hasHonors())
             result.addFan(NO_HONORS);
     }
 
     private void checkUniqueWait() {
         if (!(structure instanceof NormalHandStructure normalStruct)) return;
-        final MCRDeclaredTileCalculator declaredTileCalculator = new MCRDeclaredTileCalculator(hand.claims, hand.tiles);
-        final Set<Tile> declaredTiles = declaredTileCalculator.calculate(true);
+        final Set<Tile> declaredTiles = context.getDeclaredTiles();
         assert declaredTiles.contains(hand.declaredTile);
         if (declaredTiles.size() != 1) return;
         final Tile declaredTile = hand.declaredTile;
@@ -163,8 +248,9 @@ public class MCRTotalFanCalc {
                 .filter(c -> c.type() == KONG)
                 .map(Claim::start)
                 .collect(Collectors.toSet());
-        for (Multiset.Entry<Tile> entry : hand.getHandTilesWithClaims().entrySet()) {
-            if (entry.getCount() == 4 && !kongTiles.contains(entry.getElement()))
+        final TileCounts counts = hand.getTileCountsWithClaims();
+        for (int i = 0; i < TileCounts.SIZE; i++) {
+            if (counts.count(i) == 4 && !kongTiles.contains(TileCounts.tileAt(i)))
                 result.addFan(TILE_HOG);
         }
     }
@@ -178,7 +264,7 @@ public class MCRTotalFanCalc {
     }
 
     private void checkAllSimples() {
-        if (hand.getHandTilesWithClaims().stream().noneMatch(Tile::isOrphan))
+        if (!hand.getTileCountsWithClaims().containsAny(ORPHAN_MASK))
             result.addFan(ALL_SIMPLES);
     }
 
@@ -221,15 +307,14 @@ public class MCRTotalFanCalc {
     }
 
     private void checkHalfFlush() {
-        final Set<Character> suits = getSuitSet(hand.getHandTilesWithClaims());
-        if (!suits.contains('w') && !suits.contains('d')) return;
-        suits.removeAll(List.of('w', 'd'));
-        if (suits.size() == 1)
+        if (hasHonors() && getNumberSuitCount() == 1)
             result.addFan(HALF_FLUSH);
     }
 
     private void checkAllTypes() {
-        if (getSuits(hand.getHandTilesWithClaims()).length == 5)
+        final TileCounts counts = hand.getTileCountsWithClaims();
+        if (getNumberSuitCount() == 3
+                && counts.containsAny(TileCounts.WIND_MASK) && counts.containsAny(TileCounts.DRAGON_MASK))
             result.addFan(ALL_TYPES);
     }
 
@@ -248,12 +333,12 @@ public class MCRTotalFanCalc {
 
     // 8
 
-    private static final Set<Tile> REVERSIBLE_TILE_SET = Set.of(
+    private static final long REVERSIBLE_MASK = TileCounts.maskOf(
             P1, P2, P3, P4, P5, P8, P9, S2, S4, S5, S6, S8, S9, P
     );
 
     private void checkReversibleTiles() {
-        if (REVERSIBLE_TILE_SET.containsAll(hand.getHandTilesWithClaims()))
+        if (hand.getTileCountsWithClaims().containsOnly(REVERSIBLE_MASK))
             result.addFan(REVERSIBLE_TILES);
     }
 
@@ -286,11 +371,11 @@ public class MCRTotalFanCalc {
     }
 
     private void checkUpperFour() {
-        checkNumberHand(i -> i >= 6, UPPER_FOUR);
+        checkNumberHand(UPPER_FOUR_MASK, UPPER_FOUR);
     }
 
     private void checkLowerFour() {
-        checkNumberHand(i -> i <= 4, LOWER_FOUR);
+        checkNumberHand(LOWER_FOUR_MASK, LOWER_FOUR);
     }
 
     // 16
@@ -345,7 +430,7 @@ public class MCRTotalFanCalc {
         for (Claim claim : normalStruct.claims) {
             if (!claim.type().isPung()) return;
         }
-        checkNumberHand(i -> i % 2 == 0, ALL_EVEN_PUNGS);
+        checkNumberHand(EVEN_MASK, ALL_EVEN_PUNGS);
     }
 
     private void checkFullFlush() {
@@ -355,15 +440,15 @@ public class MCRTotalFanCalc {
     }
 
     private void checkUpperTiles() {
-        checkNumberHand(i -> i >= 7, UPPER_TILES);
+        checkNumberHand(UPPER_TILES_MASK, UPPER_TILES);
     }
 
     private void checkMiddleTiles() {
-        checkNumberHand(i -> i >= 4 && i <= 6, MIDDLE_TILES);
+        checkNumberHand(MIDDLE_TILES_MASK, MIDDLE_TILES);
     }
 
     private void checkLowerTiles() {
-        checkNumberHand(i -> i <= 3, LOWER_TILES);
+        checkNumberHand(LOWER_TILES_MASK, LOWER_TILES);
     }
 
     // 32
@@ -373,7 +458,7 @@ public class MCRTotalFanCalc {
     }
 
     private void checkAllTerminalsAndHonors() {
-        if (hand.getHandTilesWithClaims().stream().allMatch(Tile::isOrphan)) {
+        if (hand.getTileCountsWithClaims().containsOnly(ORPHAN_MASK)) {
             result.addFan(ALL_TERMINALS_AND_HONORS);
         }
     }
@@ -381,13 +466,13 @@ public class MCRTotalFanCalc {
     // 64
 
     private void checkAllTerminals() {
-        if (hand.getHandTilesWithClaims().stream().allMatch(Tile::isTerminal)) {
+        if (hand.getTileCountsWithClaims().containsOnly(TERMINAL_MASK)) {
             result.addFan(ALL_TERMINALS);
         }
     }
 
     private void checkAllHonors() {
-        if (hand.getHandTilesWithClaims().stream().allMatch(Tile::isHonor)) {
+        if (hand.getTileCountsWithClaims().containsOnly(TileCounts.HONOR_MASK)) {
             result.addFan(ALL_HONORS);
         }
     }
@@ -409,26 +494,26 @@ public class MCRTotalFanCalc {
 
     // 88
 
-    private static final Set<Tile> GREEN_TILES = Set.of(S2, S3, S4, S6, S8, F);
+    private static final long GREEN_MASK = TileCounts.maskOf(S2, S3, S4, S6, S8, F);
 
     private void checkAllGreen() {
-        if (GREEN_TILES.containsAll(hand.getHandTilesWithClaims())) {
+        if (hand.getTileCountsWithClaims().containsOnly(GREEN_MASK)) {
             result.addFan(ALL_GREEN);
         }
     }
 
-    private static final int[] NINE_GATE_NUMBERS = {1, 1, 1, 2, 3, 4, 5, 6, 7, 8, 9, 9, 9};
+    private static final int[] NINE_GATE_COUNTS = {3, 1, 1, 1, 1, 1, 1, 1, 3};
 
     private void checkNineGates() {
         if (!(structure instanceof NormalHandStructure)) return;
         if (hand.hasClaim()) return;
         // all tiles should be of one number suit
         if (!hand.isOfPureNumberSuit()) return;
-        // check tile pattern
-        final SortedMultiset<Tile> tiles = TreeMultiset.create(List.of(hand.tiles));
-        int i = 0;
-        for (Tile tile : tiles) {
-            if (tile.number != NINE_GATE_NUMBERS[i++]) return;
+        // check tile pattern (the declared tile is excluded)
+        final TileCounts counts = hand.getConcealedTileCounts();
+        final int start = TileCounts.suitStart(hand.declaredTile.suit);
+        for (int i = 0; i < 9; i++) {
+            if (counts.count(start + i) != NINE_GATE_COUNTS[i]) return;
         }
         result.addFan(NINE_GATES);
     }
@@ -493,13 +578,37 @@ public class MCRTotalFanCalc {
         }
     }
 
-    private void checkNumberHand(Predicate<Integer> numberRequirement, MCRFan fan) {
-        if (!hand.isOfNumberSuits()) return;
-        if (hand.getHandTilesWithClaims().stream().allMatch(t -> numberRequirement.test(t.number))) {
+    // numberMask contains only number tiles, so honors are excluded as well
+    private void checkNumberHand(long numberMask, MCRFan fan) {
+        if (hand.getTileCountsWithClaims().containsOnly(numberMask)) {
             result.addFan(fan);
         }
     }
 
+    private boolean hasHonors() {
+        return hand.getTileCountsWithClaims().containsAny(TileCounts.HONOR_MASK);
+    }
+
+    // the number of number suits in the hand
+    private int getNumberSuitCount() {
+        return TileCounts.numberSuitCount(hand.getTileCountsWithClaims().presenceMask());
+    }
+
+    // masks of whole-hand properties, tested against the presence mask of a hand
+    private static final long ORPHAN_MASK = TileCounts.maskOf(Tile::isOrphan);
+    private static final long TERMINAL_MASK = TileCounts.maskOf(Tile::isTerminal);
+    private static final long UPPER_FOUR_MASK = numberMask(6, 9);
+    private static final long LOWER_FOUR_MASK = numberMask(1, 4);
+    private static final long UPPER_TILES_MASK = numberMask(7, 9);
+    private static final long MIDDLE_TILES_MASK = numberMask(4, 6);
+    private static final long LOWER_TILES_MASK = numberMask(1, 3);
+    private static final long EVEN_MASK = TileCounts.maskOf(t -> t.isNumber() && t.number % 2 == 0);
+
+    // the mask of number tiles whose numbers are in [from, to]
+    private static long numberMask(int from, int to) {
+        return TileCounts.maskOf(t -> t.isNumber() && t.number >= from && t.number <= to);
+    }
+
     private static final MCRFan[] FAN_CONCEALED_PUNGS = {null, null, TWO_CONCEALED_PUNGS, THREE_CONCEALED_PUNGS, FOUR_CONCEALED_PUNGS};
     private static final MCRFan[] FAN_KONGS = {null, null, null, THREE_KONGS, FOUR_KONGS};
 
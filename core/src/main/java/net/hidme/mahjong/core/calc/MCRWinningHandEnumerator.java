@@ -0,0 +1,389 @@
+package net.hidme.mahjong.core.calc;
+
+import net.hidme.mahjong.core.data.TileCounts;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * The enumerator of all concealed winning hands in MCR, as counts of 14 tiles.
+ * Each tile multiset is enumerated exactly once even if it has several structures.
+ * <p>
+ *     The enumeration is split into units, which are enumerated independently in a fixed order,
+ *     so that a long job may be resumed from some unit.
+ *     Units of normal hands come first, one for each compatible pair of count patterns of characters and dots;
+ *     then units of seven pairs (which are not normal hands), one for each pair of count patterns of characters and dots;
+ *     and then a single unit of thirteen orphans, honors and knitted tiles, and knitted straights.
+ * </p>
+ * <p>
+ *     Normal hands are combined from complete count patterns of each suit,
+ *     i.e. patterns made of chows and pungs plus at most one pair.
+ *     An enumerator holds immutable tables only, so it is safe for concurrent use.
+ * </p>
+ */
+public class MCRWinningHandEnumerator {
+
+    public MCRWinningHandEnumerator() {
+        // number suits
+        final List<byte[]> numberPatterns = new ArrayList<>();
+        final boolean[] visited = new boolean[NUMBER_KEY_BOUND];
+        collectNumberPatterns(new byte[9], 0, false, visited, numberPatterns);
+        numberPatterns.sort(Arrays::compare);
+        this.numberPatterns = numberPatterns.toArray(new byte[0][]);
+        numberPatternsBySize = groupBySize(this.numberPatterns);
+        // honors
+        final List<byte[]> honorPatterns = new ArrayList<>();
+        collectHonorPatterns(new byte[7], 0, honorPatterns);
+        honorPatternsBySize = groupBySize(honorPatterns.toArray(new byte[0][]));
+        // seven pairs
+        final List<byte[]> pairPatterns = new ArrayList<>();
+        collectPairPatterns(new byte[9], 0, 0, pairPatterns);
+        this.pairPatterns = pairPatterns.toArray(new byte[0][]);
+        completeNumberKeys = new boolean[NUMBER_KEY_BOUND];
+        for (byte[] pattern : this.numberPatterns) {
+            completeNumberKeys[key(pattern, 0, 9)] = true;
+        }
+        completeHonorKeys = new boolean[HONOR_KEY_BOUND];
+        for (byte[] pattern : honorPatterns) {
+            completeHonorKeys[key(pattern, 0, 7)] = true;
+        }
+        normalUnits = pairUp(this.numberPatterns, true);
+        sevenPairsUnits = pairUp(this.pairPatterns, false);
+    }
+
+    /**
+     * Get the number of units.
+     */
+    public int getUnitCount() {
+        return normalUnits.length + sevenPairsUnits.length + 1;
+    }
+
+    /**
+     * Get the number of units of normal hands, which are the first units.
+     */
+    public int getNormalUnitCount() {
+        return normalUnits.length;
+    }
+
+    /**
+     * Enumerate winning hands of a unit.
+     * @param consumer accepts counts of each hand indexed like {@link TileCounts};
+     *                 the array is reused, so it must be copied if kept
+     */
+    public void enumerate(int unit, Consumer<byte[]> consumer) {
+        final byte[] counts = new byte[TileCounts.SIZE];
+        if (unit < 0 || unit >= getUnitCount())
+            throw new IndexOutOfBoundsException("Invalid unit " + unit);
+        if (unit < normalUnits.length) {
+            final int size = fillUnit(counts, numberPatterns, normalUnits[unit]);
+            enumerateNormal(counts, 2, size, consumer);
+        } else if (unit < normalUnits.length + sevenPairsUnits.length) {
+            final int size = fillUnit(counts, pairPatterns, sevenPairsUnits[unit - normalUnits.length]);
+            enumerateSevenPairs(counts, 18, size, consumer);
+        } else {
+            enumerateThirteenOrphans(counts, consumer);
+            enumerateHonorsAndKnitted(counts, consumer);
+            enumerateKnittedStraight(counts, consumer);
+        }
+    }
+
+    /**
+     * Check whether counts of 14 tiles form a normal hand without knitted straight.
+     */
+    public boolean isNormal(byte[] counts) {
+        int pairCount = 0;
+        for (int start = 0; start < 27; start += 9) {
+            final int key = key(counts, start, 9);
+            if (key < 0 || !completeNumberKeys[key]) return false;
+            if (size(counts, start, 9) % 3 == 2) pairCount++;
+        }
+        final int key = key(counts, 27, 7);
+        if (key < 0 || !completeHonorKeys[key]) return false;
+        if (size(counts, 27, 7) % 3 == 2) pairCount++;
+        return pairCount == 1;
+    }
+
+    // the number of tiles in a winning hand
+    private static final int HAND_SIZE = 14;
+    // 5^9 and 5^7
+    private static final int NUMBER_KEY_BOUND = 1953125;
+    private static final int HONOR_KEY_BOUND = 78125;
+
+    // complete patterns of a number suit, sorted
+    private final byte[][] numberPatterns;
+    // complete patterns of a number suit / honors indexed by the number of tiles
+    private final byte[][][] numberPatternsBySize, honorPatternsBySize;
+    // patterns of characters in seven pairs
+    private final byte[][] pairPatterns;
+    // whether a pattern is complete indexed by the base-5 key
+    private final boolean[] completeNumberKeys, completeHonorKeys;
+    // pattern indices of characters and dots of each unit, packed as characters * pattern count + dots
+    private final int[] normalUnits, sevenPairsUnits;
+
+    // pairs of patterns with at most 14 tiles, and with at most one pair if the patterns are complete
+    private static int[] pairUp(byte[][] patterns, boolean complete) {
+        final int[] sizes = new int[patterns.length];
+        for (int i = 0; i < patterns.length; i++) {
+            sizes[i] = size(patterns[i]);
+        }
+        final List<Integer> units = new ArrayList<>();
+        for (int characters = 0; characters < patterns.length; characters++) {
+            final int size = sizes[characters];
+            for (int dots = 0; dots < patterns.length; dots++) {
+                final int dotSize = sizes[dots];
+                if (size + dotSize > HAND_SIZE) continue;
+                if (complete && size % 3 == 2 && dotSize % 3 == 2) continue;
+                units.add(characters * patterns.length + dots);
+            }
+        }
+        return units.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    // fill characters and dots of a unit and return their number of tiles
+    private static int fillUnit(byte[] counts, byte[][] patterns, int unit) {
+        final byte[] characters = patterns[unit / patterns.length];
+        final byte[] dots = patterns[unit % patterns.length];
+        System.arraycopy(characters, 0, counts, 0, 9);
+        System.arraycopy(dots, 0, counts, 9, 9);
+        return size(characters) + size(dots);
+    }
+
+    // normal hands
+
+    // fill suits from suitIndex (1 for dots, 2 for bamboos, 3 for honors) given the size of previous suits
+    private void enumerateNormal(byte[] counts, int suitIndex, int size, Consumer<byte[]> consumer) {
+        if (suitIndex == 3) {
+            final int rest = HAND_SIZE - size;
+            if (rest < 0) return;
+            for (byte[] honors : honorPatternsBySize[rest]) {
+                System.arraycopy(honors, 0, counts, 27, 7);
+                if (hasOnePair(counts)) consumer.accept(counts);
+            }
+            Arrays.fill(counts, 27, 34, (byte) 0);
+            return;
+        }
+        for (int suitSize = 0; size + suitSize <= HAND_SIZE; suitSize++) {
+            for (byte[] pattern : numberPatternsBySize[suitSize]) {
+                System.arraycopy(pattern, 0, counts, suitIndex * 9, 9);
+                enumerateNormal(counts, suitIndex + 1, size + suitSize, consumer);
+            }
+        }
+        Arrays.fill(counts, suitIndex * 9, suitIndex * 9 + 9, (byte) 0);
+    }
+
+    // whether exactly one suit contains the pair
+    private static boolean hasOnePair(byte[] counts) {
+        int pairCount = 0;
+        for (int start = 0; start < 27; start += 9) {
+            if (size(counts, start, 9) % 3 == 2) pairCount++;
+        }
+        if (size(counts, 27, 7) % 3 == 2) pairCount++;
+        return pairCount == 1;
+    }
+
+    // add chows, pungs and at most one pair to a number suit
+    private static void collectNumberPatterns(byte[] pattern, int setCount, boolean hasPair,
+                                              boolean[] visited, List<byte[]> patterns) {
+        final int key = key(pattern, 0, 9);
+        if (visited[key]) return;
+        visited[key] = true;
+        patterns.add(pattern.clone());
+        for (int i = 0; i < 9; i++) {
+            if (setCount < 4 && pattern[i] <= 1) {
+                pattern[i] += 3;
+                collectNumberPatterns(pattern, setCount + 1, hasPair, visited, patterns);
+                pattern[i] -= 3;
+            }
+            if (setCount < 4 && i <= 6 && pattern[i] < 4 && pattern[i + 1] < 4 && pattern[i + 2] < 4) {
+                pattern[i]++;
+                pattern[i + 1]++;
+                pattern[i + 2]++;
+                collectNumberPatterns(pattern, setCount + 1, hasPair, visited, patterns);
+                pattern[i]--;
+                pattern[i + 1]--;
+                pattern[i + 2]--;
+            }
+            if (!hasPair && pattern[i] <= 2) {
+                pattern[i] += 2;
+                collectNumberPatterns(pattern, setCount, true, visited, patterns);
+                pattern[i] -= 2;
+            }
+        }
+    }
+
+    // each honor is absent, a pair or a pung, with at most one pair and 4 pungs
+    private static void collectHonorPatterns(byte[] pattern, int index, List<byte[]> patterns) {
+        if (index == 7) {
+            int pairCount = 0, pungCount = 0;
+            for (byte count : pattern) {
+                if (count == 2) pairCount++;
+                else if (count == 3) pungCount++;
+            }
+            if (pairCount <= 1 && pungCount <= 4) patterns.add(pattern.clone());
+            return;
+        }
+        for (byte count : new byte[]{0, 2, 3}) {
+            pattern[index] = count;
+            collectHonorPatterns(pattern, index + 1, patterns);
+        }
+        pattern[index] = 0;
+    }
+
+    // seven pairs
+
+    // fill tiles from index with pairs given the number of tiles so far
+    private void enumerateSevenPairs(byte[] counts, int index, int size, Consumer<byte[]> consumer) {
+        if (size == HAND_SIZE) {
+            // a hand of both shapes is enumerated as a normal hand
+            if (!isNormal(counts)) consumer.accept(counts);
+            return;
+        }
+        if (index == TileCounts.SIZE) return;
+        for (int count = 0; count <= 4 && size + count <= HAND_SIZE; count += 2) {
+            counts[index] = (byte) count;
+            enumerateSevenPairs(counts, index + 1, size + count, consumer);
+        }
+        counts[index] = 0;
+    }
+
+    private static void collectPairPatterns(byte[] pattern, int index, int size, List<byte[]> patterns) {
+        if (index == 9) {
+            patterns.add(pattern.clone());
+            return;
+        }
+        for (int count = 0; count <= 4 && size + count <= HAND_SIZE; count += 2) {
+            pattern[index] = (byte) count;
+            collectPairPatterns(pattern, index + 1, size + count, patterns);
+        }
+        pattern[index] = 0;
+    }
+
+    // special hands, none of which is a normal hand without knitted straight or seven pairs
+
+    private static final int[] ORPHAN_INDICES = {0, 8, 9, 17, 18, 26, 27, 28, 29, 30, 31, 32, 33};
+
+    private void enumerateThirteenOrphans(byte[] counts, Consumer<byte[]> consumer) {
+        for (int doubled : ORPHAN_INDICES) {
+            for (int index : ORPHAN_INDICES) {
+                counts[index] = 1;
+            }
+            counts[doubled] = 2;
+            consumer.accept(counts);
+        }
+        Arrays.fill(counts, (byte) 0);
+    }
+
+    // suits of the knitted chows starting at 1, 2 and 3 for each permutation
+    private static final int[][] KNITTED_SUITS = {
+            {0, 1, 2}, {0, 2, 1}, {1, 0, 2}, {1, 2, 0}, {2, 0, 1}, {2, 1, 0}
+    };
+
+    // indices of 9 knitted tiles followed by 7 honors
+    private static int[] getKnittedAndHonorIndices(int[] suits) {
+        final int[] indices = new int[16];
+        int size = 0;
+        for (int start = 0; start < 3; start++) {
+            for (int number = start; number < 9; number += 3) {
+                indices[size++] = suits[start] * 9 + number;
+            }
+        }
+        for (int index = 27; index < TileCounts.SIZE; index++) {
+            indices[size++] = index;
+        }
+        return indices;
+    }
+
+    private void enumerateHonorsAndKnitted(byte[] counts, Consumer<byte[]> consumer) {
+        for (int[] suits : KNITTED_SUITS) {
+            final int[] indices = getKnittedAndHonorIndices(suits);
+            // leave out 2 of the 16 tiles
+            for (int i = 0; i < 16; i++) {
+                for (int j = i + 1; j < 16; j++) {
+                    for (int index : indices) {
+                        counts[index] = 1;
+                    }
+                    counts[indices[i]] = 0;
+                    counts[indices[j]] = 0;
+                    consumer.accept(counts);
+                    Arrays.fill(counts, (byte) 0);
+                }
+            }
+        }
+    }
+
+    private void enumerateKnittedStraight(byte[] counts, Consumer<byte[]> consumer) {
+        for (int[] suits : KNITTED_SUITS) {
+            final int[] indices = getKnittedAndHonorIndices(suits);
+            // a chow (0-20 for starts in number suits) or a pung (21-54 for each tile), then a pair
+            for (int set = 0; set < 21 + TileCounts.SIZE; set++) {
+                for (int pair = 0; pair < TileCounts.SIZE; pair++) {
+                    Arrays.fill(counts, (byte) 0);
+                    for (int i = 0; i < 9; i++) {
+                        counts[indices[i]] = 1;
+                    }
+                    if (set < 21) {
+                        final int start = set / 7 * 9 + set % 7;
+                        counts[start]++;
+                        counts[start + 1]++;
+                        counts[start + 2]++;
+                    } else {
+                        counts[set - 21] += 3;
+                    }
+                    counts[pair] += 2;
+                    if (isValid(counts) && !isNormal(counts)) consumer.accept(counts);
+                }
+            }
+        }
+        Arrays.fill(counts, (byte) 0);
+    }
+
+    private static boolean isValid(byte[] counts) {
+        for (byte count : counts) {
+            if (count > 4) return false;
+        }
+        return true;
+    }
+
+    // utilities
+
+    private static byte[][][] groupBySize(byte[][] patterns) {
+        final List<List<byte[]>> groups = new ArrayList<>();
+        for (int size = 0; size <= HAND_SIZE; size++) {
+            groups.add(new ArrayList<>());
+        }
+        for (byte[] pattern : patterns) {
+            final int size = size(pattern);
+            if (size <= HAND_SIZE) groups.get(size).add(pattern);
+        }
+        final byte[][][] ret = new byte[groups.size()][][];
+        for (int size = 0; size < ret.length; size++) {
+            ret[size] = groups.get(size).toArray(new byte[0][]);
+        }
+        return ret;
+    }
+
+    private static int size(byte[] pattern) {
+        return size(pattern, 0, pattern.length);
+    }
+
+    private static int size(byte[] counts, int start, int length) {
+        int size = 0;
+        for (int i = start; i < start + length; i++) {
+            size += counts[i];
+        }
+        return size;
+    }
+
+    // base-5 key of counts[start, start + length), or -1 if some count is out of range
+    private static int key(byte[] counts, int start, int length) {
+        int key = 0;
+        for (int i = start + length - 1; i >= start; i--) {
+            if (counts[i] > 4) return -1;
+            key = key * 5 + counts[i];
+        }
+        return key;
+    }
+
+}
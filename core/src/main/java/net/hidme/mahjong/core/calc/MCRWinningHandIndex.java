@@ -0,0 +1,381 @@
+package net.hidme.mahjong.core.calc;
+
+import net.hidme.mahjong.core.data.*;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * A precomputed on-disk index of results of concealed winning hands,
+ * built from the hands enumerated by {@link MCRWinningHandEnumerator}.
+ * An {@link MCRCalculator} with an index looks covered hands up instead of calculating them,
+ * and calculates hands not in the index as usual, so an index built from some units only is still valid.
+ * <p>
+ *     A hand is covered iff it has no claims and none of the options self-drawn, last tile,
+ *     last draw or claim and kong, which makes its result depend on its tiles only.
+ *     Results are built with East as both winds, so a hand with a pung of winds is covered only if
+ *     both winds are East.
+ *     Flowers are not part of the key; {@link MCRFan#FLOWER_TILE} is added on lookup.
+ * </p>
+ * <p>
+ *     The file is an open-addressing hash table with linear probing, followed by distinct Fan combinations.
+ *     Each slot of the table has 16 bytes: the counts of tiles 0-20 (3 bits each) in the first long,
+ *     and the counts of tiles 21-33, the rank of the declared tile among distinct tiles
+ *     and the index of the Fan combination plus one in the second long, which is 0 for an empty slot.
+ *     The table is memory-mapped in segments of at most {@value #SEGMENT_SLOTS} slots.
+ * </p>
+ * <p>
+ *     The file is opened and mapped on the first lookup rather than by {@link #open(Path)}.
+ *     An index is safe for concurrent use.
+ * </p>
+ */
+public final class MCRWinningHandIndex {
+
+    private MCRWinningHandIndex(Path path) {
+        this.path = path;
+    }
+
+    /**
+     * Get an index of a file, which is opened on the first lookup.
+     */
+    public static MCRWinningHandIndex open(Path path) {
+        return new MCRWinningHandIndex(path);
+    }
+
+    /**
+     * Check whether the result of a hand only depends on what the index is keyed by.
+     */
+    public static boolean isCovered(MCRHand hand) {
+        if (hand.claims.length > 0 || hand.selfDrawn || hand.lastTile || hand.lastDrawOrClaim || hand.kong)
+            return false;
+        if (hand.prevalentWind == Wind.EAST && hand.seatWind == Wind.EAST) return true;
+        final TileCounts counts = hand.getHandTileCounts();
+        for (int index = WIND_START; index < WIND_START + 4; index++) {
+            if (counts.count(index) >= 3) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Look up the result of a hand.
+     * @return a new result, or {@code null} if the hand is not covered or not in the index
+     * @throws UncheckedIOException if the index cannot be opened
+     */
+    public MCRResult lookup(MCRHand hand) {
+        if (!isCovered(hand)) return null;
+        final byte[] counts = hand.getHandTileCounts().toArray();
+        final long low = packLow(counts);
+        final long high = packHigh(counts, hand.declaredTile.ordinal());
+        if (low < 0 || high < 0) return null;
+        final Mapping mapping = getMapping();
+        for (long slot = mapping.slotOf(low, high); ; slot = (slot + 1) & mapping.slotMask) {
+            final long slotHigh = mapping.getHigh(slot);
+            if (slotHigh == 0) return null;
+            if ((slotHigh & KEY_HIGH_MASK) == high && mapping.getLow(slot) == low) {
+                final MCRResult result = new MCRResult(mapping.combinations[(int) (slotHigh >>> COMBINATION_SHIFT) - 1]);
+                result.addFan(MCRFan.FLOWER_TILE, hand.flowers.length);
+                return result;
+            }
+        }
+    }
+
+    /**
+     * Get the number of hands in the index.
+     * @throws UncheckedIOException if the index cannot be opened
+     */
+    public long size() {
+        return getMapping().size;
+    }
+
+    /**
+     * Build an index of all hands of units {@code [fromUnit, toUnit)} of {@link MCRWinningHandEnumerator}.
+     * Each multiset is indexed once for each distinct tile as the declared tile.
+     * An existing file is overwritten.
+     * @param pool the pool which calculates hands
+     */
+    public static void build(Path path, int fromUnit, int toUnit, ForkJoinPool pool) throws IOException {
+        new Builder(path, pool).build(fromUnit, toUnit);
+    }
+
+    /**
+     * Build a full index.
+     * Usage: {@code MCRWinningHandIndex <index-file> [--threads N]}
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1 && !(args.length == 3 && args[1].equals("--threads"))) {
+            System.err.println("Usage: MCRWinningHandIndex <index-file> [--threads N]");
+            System.exit(2);
+        }
+        final int threads = args.length == 3 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+        final ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            build(Path.of(args[0]), 0, new MCRWinningHandEnumerator().getUnitCount(), pool);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static final int MAGIC = 0x4D435249;
+    private static final int VERSION = 1;
+    // magic, version, slot bits, reserved, size and the offset of Fan combinations
+    private static final int HEADER_SIZE = 32;
+    private static final int SLOT_SIZE = 16;
+    private static final int SEGMENT_BITS = 26;
+    private static final long SEGMENT_SLOTS = 1L << SEGMENT_BITS;
+    private static final int WIND_START = Tile.E.ordinal();
+    // tiles packed in the first long
+    private static final int LOW_TILES = 21;
+    // 13 counts of tiles and the rank of the declared tile in 4 bits
+    private static final int COMBINATION_SHIFT = (TileCounts.SIZE - LOW_TILES) * 3 + 4;
+    private static final long KEY_HIGH_MASK = (1L << COMBINATION_SHIFT) - 1;
+    // the maximum number of distinct Fan combinations
+    private static final int MAX_COMBINATIONS = (1 << (63 - COMBINATION_SHIFT)) - 1;
+    private static final MCRFan[] FANS = MCRFan.values();
+
+    private final Path path;
+    private volatile Mapping mapping;
+
+    private Mapping getMapping() {
+        Mapping mapping = this.mapping;
+        if (mapping == null) {
+            synchronized (this) {
+                mapping = this.mapping;
+                if (mapping == null) {
+                    try {
+                        this.mapping = mapping = new Mapping(path);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException("Cannot open index " + path, e);
+                    }
+                }
+            }
+        }
+        return mapping;
+    }
+
+    // the opened file, whose buffers are only read
+    private static class Mapping {
+
+        Mapping(Path path) throws IOException {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                final ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+                if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION)
+                    throw new IOException("Not an index of version " + VERSION);
+                final int slotBits = header.getInt(8);
+                size = header.getLong(16);
+                final long combinationOffset = header.getLong(24);
+                slotMask = (1L << slotBits) - 1;
+                segments = mapSlots(channel, FileChannel.MapMode.READ_ONLY, slotBits);
+                final ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY,
+                        combinationOffset, channel.size() - combinationOffset);
+                combinations = new MCRResult[buffer.getInt()];
+                for (int i = 0; i < combinations.length; i++) {
+                    final MCRResult result = new MCRResult();
+                    for (int fanCount = buffer.get(); fanCount > 0; fanCount--) {
+                        result.addFan(FANS[buffer.get()], buffer.get());
+                    }
+                    combinations[i] = result;
+                }
+            }
+        }
+
+        final long size;
+        final long slotMask;
+        final MappedByteBuffer[] segments;
+        final MCRResult[] combinations;
+
+        long slotOf(long low, long high) {
+            return hash(low, high) & slotMask;
+        }
+
+        long getLow(long slot) {
+            return segments[(int) (slot >>> SEGMENT_BITS)].getLong((int) (slot & (SEGMENT_SLOTS - 1)) * SLOT_SIZE);
+        }
+
+        long getHigh(long slot) {
+            return segments[(int) (slot >>> SEGMENT_BITS)].getLong((int) (slot & (SEGMENT_SLOTS - 1)) * SLOT_SIZE + 8);
+        }
+
+    }
+
+    // map the table of 2^slotBits slots, extending the file if it is writable
+    private static MappedByteBuffer[] mapSlots(FileChannel channel, FileChannel.MapMode mode, int slotBits)
+            throws IOException {
+        final long slotCount = 1L << slotBits;
+        final MappedByteBuffer[] segments = new MappedByteBuffer[(int) ((slotCount + SEGMENT_SLOTS - 1) / SEGMENT_SLOTS)];
+        for (int i = 0; i < segments.length; i++) {
+            final long slots = Math.min(SEGMENT_SLOTS, slotCount - i * SEGMENT_SLOTS);
+            segments[i] = channel.map(mode, HEADER_SIZE + i * SEGMENT_SLOTS * SLOT_SIZE, slots * SLOT_SIZE);
+        }
+        return segments;
+    }
+
+    private static class Builder {
+
+        Builder(Path path, ForkJoinPool pool) {
+            this.path = path;
+            this.pool = pool;
+        }
+
+        void build(int fromUnit, int toUnit) throws IOException {
+            // count hands first to size the table at a load factor of at most 0.7
+            final long[] size = {0};
+            for (int unit = fromUnit; unit < toUnit; unit++) {
+                enumerator.enumerate(unit, counts -> size[0] += distinctSize(counts));
+            }
+            final int slotBits = Math.max(4, 64 - Long.numberOfLeadingZeros(size[0] * 10 / 7));
+            slotMask = (1L << slotBits) - 1;
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                segments = mapSlots(channel, FileChannel.MapMode.READ_WRITE, slotBits);
+                for (int unit = fromUnit; unit < toUnit; unit++) {
+                    enumerator.enumerate(unit, this::addHands);
+                }
+                flush();
+                for (MappedByteBuffer segment : segments) {
+                    segment.force();
+                }
+                // Fan combinations follow the table
+                final long combinationOffset = HEADER_SIZE + (slotMask + 1) * SLOT_SIZE;
+                final ByteBuffer buffer = ByteBuffer.allocate(4 + combinations.size() * (1 + 2 * FANS.length));
+                buffer.putInt(combinations.size());
+                for (Map<MCRFan, Integer> combination : combinations) {
+                    buffer.put((byte) combination.size());
+                    combination.forEach((fan, multiplicity) -> {
+                        buffer.put((byte) fan.ordinal());
+                        buffer.put(multiplicity.byteValue());
+                    });
+                }
+                writeFully(channel, buffer.flip(), combinationOffset);
+                // the header is written last, so an incomplete file is never opened
+                final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE)
+                        .putInt(MAGIC).putInt(VERSION).putInt(slotBits).putInt(0)
+                        .putLong(size[0]).putLong(combinationOffset);
+                writeFully(channel, header.flip(), 0);
+                channel.force(true);
+            }
+        }
+
+        // the number of hands calculated in a single call
+        private static final int BATCH_SIZE = 1 << 16;
+
+        private final Path path;
+        private final ForkJoinPool pool;
+        private final MCRWinningHandEnumerator enumerator = new MCRWinningHandEnumerator();
+        private final MCRCalculator calculator = new MCRCalculator();
+        private final List<MCRHand> batch = new ArrayList<>();
+        private final List<long[]> keys = new ArrayList<>();
+        private final Map<Map<MCRFan, Integer>, Integer> combinationIndices = new HashMap<>();
+        private final List<Map<MCRFan, Integer>> combinations = new ArrayList<>();
+        private long slotMask;
+        private MappedByteBuffer[] segments;
+
+        private void addHands(byte[] counts) {
+            final Tile[] winningTiles = new Tile[14];
+            int size = 0;
+            for (int i = 0; i < counts.length; i++) {
+                for (int j = 0; j < counts[i]; j++) {
+                    winningTiles[size++] = TileCounts.tileAt(i);
+                }
+            }
+            final long low = packLow(counts);
+            for (int i = 0; i < winningTiles.length; i++) {
+                if (i > 0 && winningTiles[i] == winningTiles[i - 1]) continue;
+                final Tile[] tiles = new Tile[13];
+                System.arraycopy(winningTiles, 0, tiles, 0, i);
+                System.arraycopy(winningTiles, i + 1, tiles, i, 13 - i);
+                batch.add(new MCRHand(new Tile[0], new Claim[0], tiles, winningTiles[i],
+                        false, false, false, false, Wind.EAST, Wind.EAST));
+                keys.add(new long[]{low, packHigh(counts, winningTiles[i].ordinal())});
+            }
+            if (batch.size() >= BATCH_SIZE) flush();
+        }
+
+        private void flush() {
+            final List<MCRResult> results = calculator.calculateAll(batch, pool);
+            for (int i = 0; i < results.size(); i++) {
+                final Map<MCRFan, Integer> combination = results.get(i).getFanCombination();
+                Integer index = combinationIndices.get(combination);
+                if (index == null) {
+                    if (combinations.size() == MAX_COMBINATIONS)
+                        throw new IllegalStateException("Too many Fan combinations");
+                    index = combinations.size();
+                    combinationIndices.put(combination, index);
+                    combinations.add(combination);
+                }
+                put(keys.get(i)[0], keys.get(i)[1], index);
+            }
+            batch.clear();
+            keys.clear();
+        }
+
+        private void put(long low, long high, int combination) {
+            long slot = hash(low, high) & slotMask;
+            while (getHigh(slot) != 0) {
+                slot = (slot + 1) & slotMask;
+            }
+            final MappedByteBuffer segment = segments[(int) (slot >>> SEGMENT_BITS)];
+            final int offset = (int) (slot & (SEGMENT_SLOTS - 1)) * SLOT_SIZE;
+            segment.putLong(offset, low);
+            segment.putLong(offset + 8, high | (long) (combination + 1) << COMBINATION_SHIFT);
+        }
+
+        private long getHigh(long slot) {
+            return segments[(int) (slot >>> SEGMENT_BITS)].getLong((int) (slot & (SEGMENT_SLOTS - 1)) * SLOT_SIZE + 8);
+        }
+
+        private static int distinctSize(byte[] counts) {
+            int size = 0;
+            for (byte count : counts) {
+                if (count > 0) size++;
+            }
+            return size;
+        }
+
+        private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+            while (buffer.hasRemaining()) {
+                position += channel.write(buffer, position);
+            }
+        }
+
+    }
+
+    // counts of tiles 0-20, or -1 if some count does not fit
+    private static long packLow(byte[] counts) {
+        long key = 0;
+        for (int i = LOW_TILES - 1; i >= 0; i--) {
+            if (counts[i] > 4) return -1;
+            key = key << 3 | counts[i];
+        }
+        return key;
+    }
+
+    // counts of tiles 21-33 and the rank of the declared tile among distinct tiles, or -1 if some count does not fit
+    private static long packHigh(byte[] counts, int declaredIndex) {
+        long key = 0;
+        for (int i = TileCounts.SIZE - 1; i >= LOW_TILES; i--) {
+            if (counts[i] > 4) return -1;
+            key = key << 3 | counts[i];
+        }
+        int rank = 0;
+        for (int i = 0; i < declaredIndex; i++) {
+            if (counts[i] > 0) rank++;
+        }
+        if (rank > 15) return -1;
+        return key | (long) rank << (COMBINATION_SHIFT - 4);
+    }
+
+    private static long hash(long low, long high) {
+        long hash = low * 0x9E3779B97F4A7C15L + high;
+        hash ^= hash >>> 31;
+        hash *= 0xBF58476D1CE4E5B9L;
+        return hash ^ hash >>> 29;
+    }
+
+}
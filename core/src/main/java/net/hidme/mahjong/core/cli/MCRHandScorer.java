@@ -0,0 +1,257 @@
+package net.hidme.mahjong.core.cli;
+
+import net.hidme.mahjong.core.calc.MCRCalculator;
+import net.hidme.mahjong.core.calc.MCRWinningHandIndex;
+import net.hidme.mahjong.core.data.*;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+
+/**
+ * A streaming scorer of hand files in MCR.
+ * Hands are read either in the format of {@link MCRHandParser}, one per line (blank lines are skipped),
+ * or in {@link MCRHandBinaryFormat}, and one line is written for each hand in the input order:
+ * the total Fan and the Fan combination separated by a tab, like {@code 35\tPURE_STRAIGHT:1,FLOWER_TILE:2},
+ * or {@code ERROR} and a message separated by a tab if the hand cannot be read or scored.
+ * <p>
+ *     A reader thread reads hands in chunks and submits each chunk to a pool of workers,
+ *     which parse and score hands, and the calling thread writes the results of chunks in order.
+ *     At most a fixed number of chunks are in flight, so memory is bounded regardless of the input size.
+ * </p>
+ */
+public class MCRHandScorer {
+
+    /**
+     * @param calculator the calculator of hands
+     * @param threads the number of workers
+     * @param binary whether hands are in {@link MCRHandBinaryFormat}
+     * @param reportInterval the number of records between throughput reports, or 0 for no reports
+     * @param log the stream of throughput reports
+     */
+    public MCRHandScorer(MCRCalculator calculator, int threads, boolean binary, long reportInterval, PrintStream log) {
+        if (threads < 1)
+            throw new IllegalArgumentException("At least 1 thread is required");
+        this.calculator = calculator;
+        this.threads = threads;
+        this.binary = binary;
+        this.reportInterval = reportInterval;
+        this.log = log;
+    }
+
+    /**
+     * Score all hands of {@code in} and write results to {@code out}, which is flushed but not closed.
+     * @return the number of records
+     * @throws IOException if the input cannot be read (e.g. a truncated binary record) or the output cannot be written;
+     *                     results before the failure are written
+     */
+    public long score(InputStream in, Writer out) throws IOException, InterruptedException {
+        final ExecutorService workers = Executors.newFixedThreadPool(threads);
+        final BlockingQueue<Future<List<String>>> chunks = new ArrayBlockingQueue<>(threads * CHUNKS_PER_THREAD);
+        final Exception[] readFailure = new Exception[1];
+        final Thread reader = Thread.ofPlatform().name("hand-reader").daemon().start(() -> {
+            try {
+                final ChunkReader chunkReader = binary ? new BinaryChunkReader(in) : new TextChunkReader(in);
+                for (Callable<List<String>> chunk; (chunk = chunkReader.next()) != null; ) {
+                    chunks.put(workers.submit(chunk));
+                }
+            } catch (IOException | RuntimeException e) {
+                readFailure[0] = e;
+            } catch (InterruptedException e) {
+                return;
+            }
+            try {
+                chunks.put(END);
+            } catch (InterruptedException ignored) {
+            }
+        });
+        final long start = System.nanoTime();
+        long count = 0;
+        try {
+            for (Future<List<String>> chunk; (chunk = chunks.take()) != END; ) {
+                for (String line : chunk.get()) {
+                    out.write(line);
+                    out.write('\n');
+                    count++;
+                    if (reportInterval > 0 && count % reportInterval == 0) report(count, start);
+                }
+            }
+            reader.join();
+            if (readFailure[0] instanceof IOException e) throw e;
+            if (readFailure[0] instanceof RuntimeException e) throw e;
+        } catch (ExecutionException e) {
+            // results are caught per hand, so only errors get here
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            reader.interrupt();
+            workers.shutdownNow();
+            out.flush();
+        }
+        if (reportInterval > 0) report(count, start);
+        return count;
+    }
+
+    /**
+     * Score a hand file.
+     * Usage: {@code MCRHandScorer [--binary] [--threads N] [--report N] [--index FILE] [--output FILE] [INPUT]},
+     * where hands are read from stdin if INPUT is absent or "-", and results are written to stdout by default.
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        boolean binary = false;
+        int threads = Runtime.getRuntime().availableProcessors();
+        long reportInterval = 1_000_000;
+        Path index = null, output = null, input = null;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--binary" -> binary = true;
+                    case "--threads" -> threads = Integer.parseInt(args[++i]);
+                    case "--report" -> reportInterval = Long.parseLong(args[++i]);
+                    case "--index" -> index = Path.of(args[++i]);
+                    case "--output" -> output = Path.of(args[++i]);
+                    default -> {
+                        if (input != null || args[i].startsWith("--")) throw new IllegalArgumentException(args[i]);
+                        if (!args[i].equals("-")) input = Path.of(args[i]);
+                    }
+                }
+            }
+        } catch (RuntimeException e) {
+            System.err.println(USAGE);
+            System.exit(2);
+            return;
+        }
+        final MCRCalculator calculator = index == null ? new MCRCalculator()
+                : new MCRCalculator(MCRWinningHandIndex.open(index));
+        final MCRHandScorer scorer = new MCRHandScorer(calculator, threads, binary, reportInterval, System.err);
+        try (InputStream in = input == null ? System.in : Files.newInputStream(input);
+             Writer out = new BufferedWriter(new OutputStreamWriter(
+                     output == null ? System.out : Files.newOutputStream(output), StandardCharsets.UTF_8),
+                     1 << 16)) {
+            scorer.score(new BufferedInputStream(in, 1 << 16), out);
+        }
+    }
+
+    /**
+     * Format a result as an output line without the line separator,
+     * i.e. the total Fan and the Fan combination separated by a tab.
+     */
+    public static String format(MCRResult result) {
+        final StringBuilder builder = new StringBuilder();
+        builder.append(result.getFanTotal()).append('\t');
+        boolean first = true;
+        for (Map.Entry<MCRFan, Integer> entry : result.getFanCombination().entrySet()) {
+            if (!first) builder.append(',');
+            builder.append(entry.getKey()).append(':').append(entry.getValue());
+            first = false;
+        }
+        return builder.toString();
+    }
+
+    private static final String USAGE = "Usage: MCRHandScorer [--binary] [--threads N] [--report N] "
+            + "[--index FILE] [--output FILE] [INPUT]";
+    // the number of hands scored by a single task
+    private static final int CHUNK_SIZE = 1024;
+    // the number of chunks in flight per worker
+    private static final int CHUNKS_PER_THREAD = 4;
+    // marks the end of chunks
+    private static final Future<List<String>> END = CompletableFuture.completedFuture(List.of());
+
+    private final MCRCalculator calculator;
+    private final int threads;
+    private final boolean binary;
+    private final long reportInterval;
+    private final PrintStream log;
+
+    private void report(long count, long start) {
+        final double seconds = (System.nanoTime() - start) / 1e9;
+        log.printf("%d records, %.0f records/s%n", count, count / Math.max(seconds, 1e-9));
+    }
+
+    private String score(MCRHand hand) {
+        return format((MCRResult) calculator.calculate(hand));
+    }
+
+    private static String error(Exception e) {
+        return "ERROR\t" + e.getMessage();
+    }
+
+    // reads the input in chunks, each of which is a task that scores its hands
+    private interface ChunkReader {
+        // return null at the end of the input
+        Callable<List<String>> next() throws IOException;
+    }
+
+    private class TextChunkReader implements ChunkReader {
+
+        TextChunkReader(InputStream in) {
+            reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        }
+
+        @Override
+        public Callable<List<String>> next() throws IOException {
+            final List<String> lines = new ArrayList<>(CHUNK_SIZE);
+            for (String line; lines.size() < CHUNK_SIZE && (line = reader.readLine()) != null; ) {
+                if (!line.isBlank()) lines.add(line.strip());
+            }
+            if (lines.isEmpty()) return null;
+            return () -> {
+                final MCRHandParser parser = new MCRHandParser();
+                final List<String> results = new ArrayList<>(lines.size());
+                for (String line : lines) {
+                    try {
+                        results.add(score(parser.parse(line)));
+                    } catch (Exception e) {
+                        results.add(error(e));
+                    }
+                }
+                return results;
+            };
+        }
+
+        private final BufferedReader reader;
+
+    }
+
+    private class BinaryChunkReader implements ChunkReader {
+
+        BinaryChunkReader(InputStream in) {
+            this.in = in;
+        }
+
+        @Override
+        public Callable<List<String>> next() throws IOException {
+            if (truncated)
+                throw new IOException("Truncated record at the end of the input");
+            final byte[] bytes = in.readNBytes(CHUNK_SIZE * MCRHandBinaryFormat.RECORD_SIZE);
+            if (bytes.length == 0) return null;
+            // complete records before a truncated one are still scored, and the truncation fails the next read
+            final int length = bytes.length - bytes.length % MCRHandBinaryFormat.RECORD_SIZE;
+            truncated = length != bytes.length;
+            if (length == 0)
+                throw new IOException("Truncated record at the end of the input");
+            return () -> {
+                final ByteBuffer buffer = ByteBuffer.wrap(bytes);
+                final List<String> results = new ArrayList<>(length / MCRHandBinaryFormat.RECORD_SIZE);
+                for (int offset = 0; offset < length; offset += MCRHandBinaryFormat.RECORD_SIZE) {
+                    try {
+                        results.add(score(MCRHandBinaryFormat.decode(buffer, offset)));
+                    } catch (Exception e) {
+                        results.add(error(e));
+                    }
+                }
+                return results;
+            };
+        }
+
+        private final InputStream in;
+        private boolean truncated;
+
+    }
+
+}
@@ -5,8 +5,6 @@ import com.google.common.collect.TreeMultiset;
 
 import java.util.*;
 
-import static net.hidme.mahjong.core.data.Tile.isNumberSuit;
-
 /**
  * A claim is a chow/pung/kong.
  */
@@ -45,30 +43,39 @@ public record Claim(Type type,  // chow/pung/kong
     }
 
     public static Type getType(Collection<Tile> tiles) {
+        final Iterator<Tile> iterator = tiles.iterator();
         if (tiles.size() == 3) {
+            final Tile first = iterator.next(), second = iterator.next(), third = iterator.next();
             // pung
-            if (new HashSet<>(tiles).size() == 1) return Type.PUNG;
+            if (first == second && second == third) return Type.PUNG;
             // chow
-            if (tiles.stream().anyMatch(t -> !t.isNumber()))
+            if (!first.isNumber() || !second.isNumber() || !third.isNumber())
                 throw new IllegalArgumentException("A chow must consist of number tiles");
-            int sum = tiles.stream().mapToInt(t -> t.number).sum();  // sum/3 is the center of chow
+            final int sum = first.number + second.number + third.number;  // sum/3 is the center of chow
             // all tiles in a chow must be within [center-1, center+1]
-            if (sum % 3 != 0 || tiles.stream().anyMatch(t -> Math.abs(t.number - (sum / 3)) > 1))
+            final int center = sum / 3;
+            if (sum % 3 != 0 || Math.abs(first.number - center) > 1 || Math.abs(second.number - center) > 1
+                    || Math.abs(third.number - center) > 1)
                 throw new IllegalArgumentException("Not a valid chow");
             return Type.CHOW;
         } else if (tiles.size() == 4) {
             // kong
-            if (new HashSet<>(tiles).size() != 1)
-                throw new IllegalArgumentException("A 4-tile claim must be a kong and contain the same tile");
+            final Tile first = iterator.next();
+            while (iterator.hasNext()) {
+                if (iterator.next() != first)
+                    throw new IllegalArgumentException("A 4-tile claim must be a kong and contain the same tile");
+            }
             return Type.KONG;
         }
         throw new IllegalArgumentException(tiles.size() + " tile(s) must not be a claim");
     }
 
     public static boolean isOfPureNumberSuit(Iterable<Claim> claims) {
-        char[] suits = getSuits(claims);
-        if (suits.length != 1) return false;
-        return isNumberSuit(suits[0]);
+        long mask = 0;
+        for (Claim claim : claims) {
+            mask |= TileCounts.maskOf(claim.getTiles());
+        }
+        return TileCounts.isOfPureNumberSuit(mask);
     }
 
     public static char[] getSuits(Iterable<Claim> claims) {
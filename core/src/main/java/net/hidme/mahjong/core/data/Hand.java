@@ -1,7 +1,5 @@
 package net.hidme.mahjong.core.data;
 
-import com.google.common.collect.HashMultiset;
-import com.google.common.collect.Multiset;
 import com.google.common.collect.SortedMultiset;
 import com.google.common.collect.TreeMultiset;
 
@@ -9,10 +7,10 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
-import static net.hidme.mahjong.core.data.Tile.isNumberSuit;
-
 /**
  * A hand of tiles.
+ * A hand may be read by several threads at the same time, as long as its arrays are not modified
+ * (e.g. by {@link #sort()}) after it is published.
  */
 public abstract class Hand {
 
@@ -30,6 +28,49 @@ public abstract class Hand {
         this.claims = claims;
         this.tiles = tiles;
         this.declaredTile = declaredTile;
+        // count tiles once; the arrays above are not expected to be modified afterward (except sorting)
+        final byte[] concealedCounts = new byte[TileCounts.SIZE];
+        final byte[] handCounts = new byte[TileCounts.SIZE];
+        final byte[] countsWithClaims = new byte[TileCounts.SIZE];
+        // flower tiles are not counted among hand tiles, but like other tiles, at most 4 of each are allowed
+        final byte[] flowerCounts = new byte[8];
+        boolean invalidFlowers = false;
+        for (Tile tile : tiles) {
+            if (tile.isFlower()) {
+                invalidFlowers |= ++flowerCounts[tile.number - 1] > 4;
+                continue;
+            }
+            concealedCounts[tile.ordinal()]++;
+            handCounts[tile.ordinal()]++;
+            countsWithClaims[tile.ordinal()]++;
+        }
+        if (declaredTile != null) {
+            if (declaredTile.isFlower()) {
+                invalidFlowers |= ++flowerCounts[declaredTile.number - 1] > 4;
+            } else {
+                handCounts[declaredTile.ordinal()]++;
+                countsWithClaims[declaredTile.ordinal()]++;
+            }
+        }
+        for (Claim claim : claims) {
+            TileCounts.addClaim(countsWithClaims, claim);
+            if (claim.isConcealed())
+                TileCounts.addClaim(concealedCounts, claim);
+        }
+        // each tile in flowers is unique, and only flower tiles are in the mask
+        long flowerPresence = 0;
+        int flowerMask = 0;
+        for (Tile flower : flowers) {
+            final long bit = 1L << flower.ordinal();
+            if ((flowerPresence & bit) != 0) invalidFlowers = true;
+            flowerPresence |= bit;
+            if (flower.isFlower()) flowerMask |= 1 << (flower.number - 1);
+        }
+        this.concealedTileCounts = new TileCounts(concealedCounts);
+        this.handTileCounts = new TileCounts(handCounts);
+        this.tileCountsWithClaims = new TileCounts(countsWithClaims);
+        this.flowerMask = flowerMask;
+        this.invalidFlowers = invalidFlowers;
         if (!allowsInvalidTileSet && !isValid())
             throw new IllegalArgumentException("invalid hand");
     }
@@ -65,6 +106,36 @@ public abstract class Hand {
         return ret;
     }
 
+    /**
+     * Get counts of hand tiles, including the declared tile.
+     * Claims are not included.
+     * Unlike {@link #getHandTiles()}, the counts are computed only once.
+     */
+    public TileCounts getHandTileCounts() {
+        return handTileCounts;
+    }
+
+    /**
+     * Get counts of hand tiles, including the declared tile and claims.
+     */
+    public TileCounts getTileCountsWithClaims() {
+        return tileCountsWithClaims;
+    }
+
+    /**
+     * Get counts of concealed tiles (excluding the declared tile).
+     */
+    public TileCounts getConcealedTileCounts() {
+        return concealedTileCounts;
+    }
+
+    /**
+     * Get flowers as a bitmask, where bit (n-1) stands for the flower tile with number n.
+     */
+    public int getFlowerMask() {
+        return flowerMask;
+    }
+
     public SortedMultiset<Tile> getHandTilesOfSuit(char suit) {
         return Tile.getTilesOfSuit(getHandTiles(), suit);
     }
@@ -94,17 +165,11 @@ public abstract class Hand {
     }
 
     public boolean isOfPureNumberSuit() {
-        char[] suits = Tile.getSuits(getHandTilesWithClaims());
-        if (suits.length != 1) return false;
-        return isNumberSuit(suits[0]);
+        return TileCounts.isOfPureNumberSuit(tileCountsWithClaims.presenceMask());
     }
 
     public boolean isOfNumberSuits() {
-        char[] suits = Tile.getSuits(getHandTilesWithClaims());
-        for (char suit : suits) {
-            if (!isNumberSuit(suit)) return false;
-        }
-        return true;
+        return tileCountsWithClaims.containsOnly(TileCounts.NUMBER_MASK);
     }
 
     public boolean isConcealed() {
@@ -119,21 +184,19 @@ public abstract class Hand {
         Arrays.sort(tiles);
     }
 
+    private final TileCounts handTileCounts, tileCountsWithClaims, concealedTileCounts;
+    private final int flowerMask;
+    private final boolean invalidFlowers;
+
     // each tile is finite
     private boolean isValid() {
         if (declaredTile == null) return false;
-        final SortedMultiset<Tile> normalTiles = getHandTilesWithClaims();
-        for (Multiset.Entry<Tile> entry : normalTiles.entrySet()) {
-            if (entry.getCount() < 0 || entry.getCount() > 4) {
+        for (int i = 0; i < TileCounts.SIZE; i++) {
+            if (tileCountsWithClaims.count(i) > 4) {
                 return false;
             }
         }
-        for (Multiset.Entry<Tile> entry : HashMultiset.create(List.of(flowers)).entrySet()) {
-            if (entry.getCount() < 0 || entry.getCount() > 1) {
-                return false;
-            }
-        }
-        return true;
+        return !invalidFlowers;
     }
 
 }
@@ -1,7 +1,6 @@
 package net.hidme.mahjong.core.data;
 
 import java.util.Arrays;
-import java.util.List;
 
 /**
  * A hand of tiles along with the ambient situation in MCR.
@@ -54,16 +53,18 @@ public class MCRHand extends Hand {
         if (kong && selfDrawn && claimsOfType(Claim.Type.KONG).isEmpty())
             return "out with replacement tile (kong and selfDrawn) must not occur if there is no kong";
         // robbing the kong
-        if (kong && !selfDrawn && getHandTilesWithClaims().count(declaredTile) > 1)
+        final TileCounts countsWithClaims = getTileCountsWithClaims();
+        if (kong && !selfDrawn && countsWithClaims.count(declaredTile) > 1)
             return "robbing the kong (kong and not selfDrawn) must not occur if the declared tile is not unique in the hand";
         if (!selfDrawn && lastDrawOrClaim && kong)
             return "last claim and robbing the kong cannot occur at the same time";
         if (!selfDrawn && kong && !lastTile)
             return "robbing the kong must indicate last tile";
         // last tile
-        if (!lastTile && Claim.getTiles(List.of(claims)).count(declaredTile) == 3)
+        final int claimedCount = countsWithClaims.count(declaredTile) - getHandTileCounts().count(declaredTile);
+        if (!lastTile && claimedCount == 3)
             return "lastTile must occur if the declared tile is used thrice";
-        if (lastTile && getConcealedTiles().count(declaredTile) > 0)
+        if (lastTile && getConcealedTileCounts().count(declaredTile) > 0)
             return "lastTile must not occur if the declared tile is present in concealed tiles";
         return null;
     }
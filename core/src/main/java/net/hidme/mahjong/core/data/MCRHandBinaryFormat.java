@@ -0,0 +1,135 @@
+package net.hidme.mahjong.core.data;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A fixed-width binary format of hands in MCR, where each hand is a record of {@value #RECORD_SIZE} bytes.
+ * A file of hands is a plain sequence of records without a header, so files can be concatenated and split.
+ * <p>
+ *     The layout of a record is (multibyte values are big-endian):
+ *     <ul>
+ *         <li>byte 0: flowers as a bitmask like {@link Hand#getFlowerMask()}</li>
+ *         <li>
+ *             byte 1: self-drawn (bit 0), last tile (bit 1), last draw or claim (bit 2), kong (bit 3),
+ *             the ordinal of the prevalent wind (bits 4-5) and the ordinal of the seat wind (bits 6-7)
+ *         </li>
+ *         <li>byte 2: the number of claims (bits 0-2) and the number of tiles without the declared tile (bits 3-6)</li>
+ *         <li>
+ *             bytes 3-10: 4 claims of 2 bytes, each of which is the ordinal of the type (bits 6-7)
+ *             and the ordinal of the start tile (bits 0-5), followed by the claimed index (bits 0-1),
+ *             where the claim is from (bits 2-4) and whether it is declared (bit 5); unused claims are 0
+ *         </li>
+ *         <li>
+ *             bytes 11-21: the ordinals of up to 13 tiles followed by the declared tile in 6 bits each,
+ *             10 in the long at byte 11 from bit 0 and 4 in the 3 bytes at byte 19 from bit 0; unused tiles are 0
+ *         </li>
+ *         <li>bytes 22-23: reserved, which are 0</li>
+ *     </ul>
+ *     Flowers are kept as a set, so their order is not preserved, and neither are hands with invalid flowers.
+ * </p>
+ */
+public final class MCRHandBinaryFormat {
+
+    private MCRHandBinaryFormat() {
+    }
+
+    /**
+     * The number of bytes of a record.
+     */
+    public static final int RECORD_SIZE = 24;
+
+    /**
+     * Write a hand as a record at the position of {@code buffer}, which is advanced by {@value #RECORD_SIZE}.
+     * @throws IllegalArgumentException if the hand cannot be encoded,
+     *                                  e.g. it has invalid flowers, more than 4 claims or more than 13 tiles
+     */
+    public static void encode(MCRHand hand, ByteBuffer buffer) {
+        if (hand.claims.length > MAX_CLAIMS || hand.tiles.length > MAX_TILES)
+            throw new IllegalArgumentException("Too many claims or tiles in " + hand);
+        if (Integer.bitCount(hand.getFlowerMask()) != hand.flowers.length)
+            throw new IllegalArgumentException("Invalid flowers in " + hand);
+        final int offset = buffer.position();
+        buffer.put(offset, (byte) hand.getFlowerMask());
+        buffer.put(offset + 1, (byte) ((hand.selfDrawn ? 1 : 0) | (hand.lastTile ? 2 : 0)
+                | (hand.lastDrawOrClaim ? 4 : 0) | (hand.kong ? 8 : 0)
+                | hand.prevalentWind.ordinal() << 4 | hand.seatWind.ordinal() << 6));
+        buffer.put(offset + 2, (byte) (hand.claims.length | hand.tiles.length << 3));
+        for (int i = 0; i < MAX_CLAIMS; i++) {
+            int claimBits = 0;
+            if (i < hand.claims.length) {
+                final Claim claim = hand.claims[i];
+                claimBits = (claim.type().ordinal() << 6 | tileIndex(claim.start())) << 8
+                        | claim.claimedIndex() | claim.claimedFrom() << 2 | (claim.isDeclared() ? 1 << 5 : 0);
+            }
+            buffer.putShort(offset + 3 + 2 * i, (short) claimBits);
+        }
+        long low = 0;
+        int high = 0;
+        for (int i = 0; i <= hand.tiles.length; i++) {
+            final long index = tileIndex(i < hand.tiles.length ? hand.tiles[i] : hand.declaredTile);
+            if (i < LOW_TILES) low |= index << (6 * i);
+            else high |= (int) index << (6 * (i - LOW_TILES));
+        }
+        buffer.putLong(offset + 11, low);
+        buffer.put(offset + 19, (byte) (high >>> 16));
+        buffer.putShort(offset + 20, (short) high);
+        buffer.putShort(offset + 22, (short) 0);
+        buffer.position(offset + RECORD_SIZE);
+    }
+
+    /**
+     * Read the hand of the record at {@code offset} of {@code buffer}, whose position is unchanged.
+     * @throws IllegalArgumentException if the record is not a valid hand
+     */
+    public static MCRHand decode(ByteBuffer buffer, int offset) {
+        final int flowerMask = buffer.get(offset) & 0xFF;
+        final int options = buffer.get(offset + 1) & 0xFF;
+        final int sizes = buffer.get(offset + 2) & 0xFF;
+        final int claimCount = sizes & 7;
+        final int tileCount = sizes >>> 3;
+        if (claimCount > MAX_CLAIMS || tileCount > MAX_TILES || buffer.getShort(offset + 22) != 0)
+            throw new IllegalArgumentException("Invalid record at " + offset);
+        final Tile[] flowers = new Tile[Integer.bitCount(flowerMask)];
+        for (int bits = flowerMask, i = 0; bits != 0; bits &= bits - 1) {
+            flowers[i++] = Tile.getInstance(Integer.numberOfTrailingZeros(bits) + 1, 'f');
+        }
+        final Claim[] claims = new Claim[claimCount];
+        for (int i = 0; i < claimCount; i++) {
+            final int claimBits = buffer.getShort(offset + 3 + 2 * i) & 0xFFFF;
+            claims[i] = Claim.create(CLAIM_TYPES[claimBits >>> 14], tileAt(claimBits >>> 8 & 63),
+                    claimBits & 3, claimBits >>> 2 & 7, (claimBits & 1 << 5) != 0);
+        }
+        final long low = buffer.getLong(offset + 11);
+        final int high = (buffer.get(offset + 19) & 0xFF) << 16 | buffer.getShort(offset + 20) & 0xFFFF;
+        final Tile[] tiles = new Tile[tileCount];
+        Tile declaredTile = null;
+        for (int i = 0; i <= tileCount; i++) {
+            final int index = (int) (i < LOW_TILES ? low >>> (6 * i) : high >>> (6 * (i - LOW_TILES))) & 63;
+            if (i < tileCount) tiles[i] = tileAt(index);
+            else declaredTile = tileAt(index);
+        }
+        return new MCRHand(flowers, claims, tiles, declaredTile,
+                (options & 1) != 0, (options & 2) != 0, (options & 4) != 0, (options & 8) != 0,
+                WINDS[options >>> 4 & 3], WINDS[options >>> 6]);
+    }
+
+    private static final int MAX_CLAIMS = 4;
+    private static final int MAX_TILES = 13;
+    // tiles in the long of the record
+    private static final int LOW_TILES = 10;
+    private static final Claim.Type[] CLAIM_TYPES = Claim.Type.values();
+    private static final Wind[] WINDS = Wind.values();
+
+    private static int tileIndex(Tile tile) {
+        if (tile.isFlower())
+            throw new IllegalArgumentException("Unexpected flower " + tile);
+        return tile.ordinal();
+    }
+
+    private static Tile tileAt(int index) {
+        if (index >= TileCounts.SIZE)
+            throw new IllegalArgumentException("Invalid tile index " + index);
+        return TileCounts.tileAt(index);
+    }
+
+}
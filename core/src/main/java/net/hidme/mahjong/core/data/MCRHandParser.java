@@ -1,7 +1,7 @@
 package net.hidme.mahjong.core.data;
 
 import java.text.ParseException;
-import java.util.*;
+import java.util.Arrays;
 
 /**
  * A parser for a hand of tiles in MCR.
@@ -52,103 +52,186 @@ import java.util.*;
  *         <li>flowers (1) *2
  *     </ul>
  * </p>
+ * <p>
+ *     Hands are parsed in a single pass over a {@link CharSequence}, so a hand can be parsed out of a region
+ *     of a larger buffer without copying.
+ *     The error offset of a {@link ParseException} is the index in the sequence where parsing failed.
+ * </p>
+ * <p>
+ *     A parser is stateless and safe for concurrent use.
+ *     For large numbers of hands, {@link MCRHandBinaryFormat} is more compact and faster to read.
+ * </p>
  */
 public class MCRHandParser {
 
     public MCRHand parse(String string) throws ParseException {
+        return parse(string, 0, string.length());
+    }
+
+    /**
+     * Parse a hand from {@code [start, end)} of {@code chars}.
+     * @throws ParseException if the region is not a valid hand, with the index in {@code chars} as the error offset
+     */
+    public MCRHand parse(CharSequence chars, int start, int end) throws ParseException {
+        // the ends of the flower, claim and tile segments
+        final int flowerEnd = segmentEnd(chars, start, end);
+        final int claimEnd = segmentEnd(chars, flowerEnd + 1, end);
+        final int tileEnd = segmentEnd(chars, claimEnd + 1, end);
+        if (tileEnd == end)
+            throw new ParseException("Missing options", end);
+        final int optionSegmentEnd = segmentEnd(chars, tileEnd + 1, end);
+        if (optionSegmentEnd != end)
+            throw new ParseException("Too many segments", optionSegmentEnd);
+        final Tile[] flowers = parseTiles(chars, start, flowerEnd);
+        final Claim[] claims = parseClaims(chars, flowerEnd + 1, claimEnd);
+        final Tile[] tileList = parseTiles(chars, claimEnd + 1, tileEnd);
+        if (tileList.length == 0)
+            throw new ParseException("No tiles", claimEnd + 1);
+        final Tile[] tiles = Arrays.copyOf(tileList, tileList.length - 1);
+        final Tile declaredTile = tileList[tileList.length - 1];
+        // besides tiles, where option i is [optionStarts[i], optionStarts[i + 1] - 1)
+        final int[] optionStarts = new int[OPTION_COUNT + 1];
+        int index = tileEnd + 1;
+        for (int i = 0; i < OPTION_COUNT; i++) {
+            if (index > end)
+                throw new ParseException("Missing options", end);
+            optionStarts[i] = index;
+            index = optionEnd(chars, index, end) + 1;
+        }
+        if (index <= end)
+            throw new ParseException("Too many options", index - 1);
+        optionStarts[OPTION_COUNT] = index;
+        final Wind prevalentWind = parseWind(chars, optionStarts[0], optionStarts[1] - 1);
+        final Wind seatWind = parseWind(chars, optionStarts[1], optionStarts[2] - 1);
+        final boolean[] flags = new boolean[OPTION_COUNT - 2];
+        for (int i = 0; i < flags.length; i++) {
+            flags[i] = parseBinary(chars, optionStarts[i + 2], optionStarts[i + 3] - 1);
+        }
         try {
-            final String[] segments = string.split(";");
-            final Tile[] flowers = parseTiles(segments[0]).toArray(new Tile[0]);
-            final Claim[] claims = parseClaims(segments[1]).toArray(new Claim[0]);
-            final List<Tile> tileList = parseTiles(segments[2]);
-            final Tile[] tiles = tileList.subList(0, tileList.size() - 1).toArray(new Tile[0]);
-            final Tile declaredTile = tileList.getLast();
-            // besides tiles
-            final String[] options = segments[3].split(",");
-            final Wind prevalentWind = Wind.parse(options[0]);
-            final Wind seatWind = Wind.parse(options[1]);
-            final boolean selfDrawn = parseBinary(options[2]);
-            final boolean lastTile = parseBinary(options[3]);
-            final boolean lastDrawOrClaim = parseBinary(options[4]);
-            final boolean kong = parseBinary(options[5]);
             return new MCRHand(flowers, claims, tiles, declaredTile,
-                    selfDrawn, lastTile, lastDrawOrClaim, kong, prevalentWind, seatWind);
-        } catch (ParseException e) {
-            throw e;
-        } catch (Throwable e) {
-            throw new ParseException(e.getMessage(), -1);
+                    flags[0], flags[1], flags[2], flags[3], prevalentWind, seatWind);
+        } catch (RuntimeException e) {
+            throw new ParseException(e.getMessage(), start);
+        }
+    }
+
+    // the index of the first ';' from start, or end
+    private static int segmentEnd(CharSequence chars, int start, int end) throws ParseException {
+        if (start > end)
+            throw new ParseException("Missing segments", end);
+        for (int i = start; i < end; i++) {
+            if (chars.charAt(i) == ';') return i;
+        }
+        return end;
+    }
+
+    // the index of the first ',' from start, or end
+    private static int optionEnd(CharSequence chars, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (chars.charAt(i) == ',') return i;
         }
+        return end;
     }
 
-    private List<Claim> parseClaims(String string) throws ParseException {
-        final List<Claim> claims = new ArrayList<>();
-        if (string.isEmpty()) return claims;
-        final String[] segments = string.split(",");
-        for (String segment : segments) {
-            claims.add(parseClaim(segment));
+    private Claim[] parseClaims(CharSequence chars, int start, int end) throws ParseException {
+        if (start == end) return new Claim[0];
+        int count = 1;
+        for (int i = start; i < end; i++) {
+            if (chars.charAt(i) == ',') count++;
+        }
+        final Claim[] claims = new Claim[count];
+        for (int i = 0, claimStart = start; i < count; i++) {
+            final int claimEnd = optionEnd(chars, claimStart, end);
+            claims[i] = parseClaim(chars, claimStart, claimEnd);
+            claimStart = claimEnd + 1;
         }
         return claims;
     }
 
-    private Claim parseClaim(String string) throws ParseException {
+    private Claim parseClaim(CharSequence chars, int start, int end) throws ParseException {
+        if (end - start < 2)
+            throw new ParseException("Invalid claim", start);
         // the last char is the index
-        int index = string.charAt(string.length() - 1) - '0';
+        final int index = chars.charAt(end - 1) - '0';
         // the rest are tiles
-        final List<Tile> tiles = parseTiles(string.substring(0, string.length() - 1));
+        final Tile[] tiles = parseTiles(chars, start, end - 1);
         // derive the claim type
-        final Claim.Type type = Claim.getType(tiles);
-        final SortedSet<Tile> sortedTiles = new TreeSet<>(tiles);
-        final Tile startTile = sortedTiles.first();
+        final Claim.Type type;
+        try {
+            type = Claim.getType(Arrays.asList(tiles));
+        } catch (IllegalArgumentException e) {
+            throw new ParseException(e.getMessage(), start);
+        }
+        Tile startTile = tiles[0];
+        for (Tile tile : tiles) {
+            if (tile.compareTo(startTile) < 0) startTile = tile;
+        }
         final int claimedIndex = type == Claim.Type.CHOW ? index : 0;
         final int claimedFrom = type == Claim.Type.CHOW ? 3 : index;
         if (claimedIndex < 0 || claimedIndex > 2 || claimedFrom < 0 || claimedFrom > 3)
-            throw new ParseException("invalid claim", -1);
+            throw new ParseException("Invalid claim", end - 1);
         return Claim.create(type, startTile, claimedIndex, claimedFrom);
     }
 
-    private List<Tile> parseTiles(String string) throws ParseException {
-        final List<Tile> tiles = new ArrayList<>();
-        int index = 0;
-        while(index < string.length()) {
-            index = parseFirstTileGroup(string, index, tiles);
+    // tiles in a row, like 123456pEE
+    private Tile[] parseTiles(CharSequence chars, int start, int end) throws ParseException {
+        Tile[] tiles = new Tile[Math.min(end - start, 16)];
+        int size = 0;
+        int index = start;
+        while (index < end) {
+            final char c = chars.charAt(index);
+            if (c >= '0' && c <= '9') {
+                // a group of numbers followed by the suit
+                int suitIndex = index + 1;
+                while (suitIndex < end && isDigit(chars.charAt(suitIndex))) {
+                    suitIndex++;
+                }
+                if (suitIndex == end)
+                    throw new ParseException("Missing suit", end);
+                final char suit = chars.charAt(suitIndex);
+                if (!Tile.isNumberSuit(suit) && suit != 'f')
+                    throw new ParseException("Invalid suit", suitIndex);
+                final int maxNumber = suit == 'f' ? 8 : 9;
+                for (; index < suitIndex; index++) {
+                    final int number = chars.charAt(index) - '0';
+                    if (number < 1 || number > maxNumber)
+                        throw new ParseException("Invalid number", index);
+                    if (size == tiles.length) tiles = Arrays.copyOf(tiles, size * 2);
+                    tiles[size++] = Tile.getInstance(number, suit);
+                }
+                index = suitIndex + 1;
+            } else {
+                final Tile honor;
+                try {
+                    honor = Tile.parseHonor(c);
+                } catch (ParseException e) {
+                    throw new ParseException("Invalid tile", index);
+                }
+                if (size == tiles.length) tiles = Arrays.copyOf(tiles, size * 2);
+                tiles[size++] = honor;
+                index++;
+            }
         }
-        return tiles;
+        return size == tiles.length ? tiles : Arrays.copyOf(tiles, size);
     }
 
-    // like 123456p or E
-    // return the end location of tile group + 1
-    private int parseFirstTileGroup(String string, int fromIndex, List<Tile> tiles) throws ParseException {
-        // case: the first tile is an honor tile
-        char[] honors = {'E', 'S', 'W', 'N', 'P', 'F', 'C'};
-        for (char honor : honors) {
-            if (string.charAt(fromIndex) == honor) {
-                tiles.add(Tile.parseHonor(honor));
-                return fromIndex + 1;
-            }
-        }
-        // case: the first tile is a number/flower tile
-        char[] suits = {'m', 'p', 's', 'f'};
-        int index = -1;
-        char suit = 0;
-        for (char tmpSuit : suits) {
-            int tmpIndex = string.indexOf(tmpSuit, fromIndex);
-            if (tmpIndex != -1 && (index == -1 || index > tmpIndex)) {
-                index = tmpIndex;
-                suit = tmpSuit;
-            }
-        }
-        if (index != -1) {
-            for (int i = fromIndex; i < index; i++) {
-                int number = string.charAt(i) - '0';
-                tiles.add(Tile.getInstance(number, suit));
-            }
-            return index + 1;
-        }
-        throw new ParseException("No tile group found in " + string, fromIndex);
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
     }
 
-    private boolean parseBinary(String string) {
-        return !"0".equals(string);
+    private Wind parseWind(CharSequence chars, int start, int end) throws ParseException {
+        final Wind wind = end - start == 1 ? Wind.parse(chars.charAt(start)) : null;
+        if (wind == null)
+            throw new ParseException("Invalid wind", start);
+        return wind;
     }
 
+    // anything but "0" is true
+    private boolean parseBinary(CharSequence chars, int start, int end) {
+        return end - start != 1 || chars.charAt(start) != '0';
+    }
+
+    // winds and binary values
+    private static final int OPTION_COUNT = 6;
+
 }
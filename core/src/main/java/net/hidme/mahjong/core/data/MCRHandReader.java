@@ -0,0 +1,128 @@
+package net.hidme.mahjong.core.data;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+import static net.hidme.mahjong.core.data.MCRHandBinaryFormat.RECORD_SIZE;
+
+/**
+ * A random-access reader of hands in {@link MCRHandBinaryFormat} over buffers.
+ * A hand is decoded only when it is read, straight from the buffer.
+ * Files are memory-mapped in segments, so they may be larger than a single buffer.
+ * <p>
+ *     A reader never changes the positions of its buffers, so it is safe for concurrent use.
+ * </p>
+ */
+public class MCRHandReader {
+
+    /**
+     * Read records from {@code buffer}, from its position to its limit.
+     * @throws IllegalArgumentException if the remaining bytes are not whole records
+     */
+    public MCRHandReader(ByteBuffer buffer) {
+        this(new ByteBuffer[]{buffer.slice()}, buffer.remaining() / RECORD_SIZE);
+        if (buffer.remaining() % RECORD_SIZE != 0)
+            throw new IllegalArgumentException("Not a whole number of records");
+    }
+
+    private MCRHandReader(ByteBuffer[] segments, long size) {
+        this.segments = segments;
+        this.size = size;
+    }
+
+    /**
+     * Memory-map a file of records.
+     * The mapping stays valid after this method returns, until the reader is garbage-collected.
+     * @throws IOException if the file cannot be mapped or its size is not a whole number of records
+     */
+    public static MCRHandReader map(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            final long fileSize = channel.size();
+            if (fileSize % RECORD_SIZE != 0)
+                throw new IOException("The size of " + path + " is not a whole number of records");
+            final long size = fileSize / RECORD_SIZE;
+            final ByteBuffer[] segments = new ByteBuffer[(int) ((size + SEGMENT_RECORDS - 1) / SEGMENT_RECORDS)];
+            for (int i = 0; i < segments.length; i++) {
+                final long records = Math.min(SEGMENT_RECORDS, size - i * SEGMENT_RECORDS);
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY,
+                        i * SEGMENT_RECORDS * RECORD_SIZE, records * RECORD_SIZE);
+            }
+            return new MCRHandReader(segments, size);
+        }
+    }
+
+    /**
+     * Get the number of records.
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * Decode the hand of a record.
+     * @throws IllegalArgumentException if the record is not a valid hand
+     */
+    public MCRHand get(long index) {
+        if (index < 0 || index >= size)
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for size " + size);
+        return MCRHandBinaryFormat.decode(segments[(int) (index / SEGMENT_RECORDS)],
+                (int) (index % SEGMENT_RECORDS) * RECORD_SIZE);
+    }
+
+    /**
+     * Get a view of records {@code [from, to)} as a list, whose hands are decoded on each access.
+     */
+    public List<MCRHand> subList(long from, long to) {
+        if (from < 0 || from > to || to > size)
+            throw new IndexOutOfBoundsException("Range [" + from + ", " + to + ") out of bounds for size " + size);
+        if (to - from > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Too many records for a list");
+        return new RecordList(from, (int) (to - from));
+    }
+
+    /**
+     * Get an ordered stream of all hands, which are decoded lazily.
+     */
+    public Stream<MCRHand> stream() {
+        return LongStream.range(0, size).mapToObj(this::get);
+    }
+
+    // records per segment, so that a segment is a whole number of records below 2 GB
+    private static final long SEGMENT_RECORDS = Integer.MAX_VALUE / RECORD_SIZE;
+
+    private final ByteBuffer[] segments;
+    private final long size;
+
+    private class RecordList extends AbstractList<MCRHand> implements RandomAccess {
+
+        RecordList(long from, int size) {
+            this.from = from;
+            this.size = size;
+        }
+
+        @Override
+        public MCRHand get(int index) {
+            if (index < 0 || index >= size)
+                throw new IndexOutOfBoundsException("Index " + index + " out of bounds for size " + size);
+            return MCRHandReader.this.get(from + index);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        private final long from;
+        private final int size;
+
+    }
+
+}
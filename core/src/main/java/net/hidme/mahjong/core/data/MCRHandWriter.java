@@ -0,0 +1,57 @@
+package net.hidme.mahjong.core.data;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+import static net.hidme.mahjong.core.data.MCRHandBinaryFormat.RECORD_SIZE;
+
+/**
+ * A writer of hands in {@link MCRHandBinaryFormat}.
+ * Records are buffered and written to the stream in blocks.
+ * A writer is not safe for concurrent use.
+ */
+public class MCRHandWriter implements Closeable, Flushable {
+
+    public MCRHandWriter(OutputStream out) {
+        this.out = out;
+    }
+
+    /**
+     * Write a hand.
+     * @throws IllegalArgumentException if the hand cannot be encoded
+     */
+    public void write(MCRHand hand) throws IOException {
+        if (!buffer.hasRemaining()) flush();
+        MCRHandBinaryFormat.encode(hand, buffer);
+    }
+
+    /**
+     * Write all buffered records to the stream and flush it.
+     */
+    @Override
+    public void flush() throws IOException {
+        out.write(buffer.array(), 0, buffer.position());
+        buffer.clear();
+        out.flush();
+    }
+
+    /**
+     * Flush and close the stream.
+     */
+    @Override
+    public void close() throws IOException {
+        try (out) {
+            flush();
+        }
+    }
+
+    // the number of records in a block
+    private static final int BLOCK_RECORDS = 1 << 12;
+
+    private final OutputStream out;
+    private final ByteBuffer buffer = ByteBuffer.allocate(BLOCK_RECORDS * RECORD_SIZE);
+
+}
@@ -1,30 +1,78 @@
 package net.hidme.mahjong.core.data;
 
+import java.util.EnumMap;
 import java.util.Map;
-import java.util.TreeMap;
 
 /**
  * The calculation result for MCR (Mahjong Chinese Rule).
  * It contains the Fan combination and the total Fan score.
+ * A result is mutable and not safe for concurrent modification.
+ * <p>
+ *     Fans are kept as a bitset, where bit i of word i / 64 stands for the Fan with ordinal i,
+ *     and a multiplicity array indexed by ordinals.
+ *     A bit is set iff the multiplicity of the Fan is positive.
+ * </p>
  */
 public class MCRResult implements Result {
 
+    /**
+     * The number of longs in a Fan bitset.
+     */
+    public static final int FAN_BITS_LENGTH = (MCRFan.values().length + 63) / 64;
+
     public MCRResult() {
-        fans = new TreeMap<>();
+        fanBits = new long[FAN_BITS_LENGTH];
+        multiplicities = new int[FANS.length];
+    }
+
+    /**
+     * Copy a result.
+     */
+    public MCRResult(MCRResult other) {
+        fanBits = other.fanBits.clone();
+        multiplicities = other.multiplicities.clone();
     }
 
     /**
      * Get the Fan combination.
-     * @return a map whose values are the multiplicity of each Fan
+     * @return a new map in the order of Fans whose values are the multiplicity of each Fan
      */
     public Map<MCRFan, Integer> getFanCombination() {
+        final Map<MCRFan, Integer> fans = new EnumMap<>(MCRFan.class);
+        for (int word = 0; word < FAN_BITS_LENGTH; word++) {
+            for (long bits = fanBits[word]; bits != 0; bits &= bits - 1) {
+                final int ordinal = word * 64 + Long.numberOfTrailingZeros(bits);
+                fans.put(FANS[ordinal], multiplicities[ordinal]);
+            }
+        }
         return fans;
     }
 
+    /**
+     * Get a copy of the Fan bitset.
+     */
+    public long[] getFanBits() {
+        return fanBits.clone();
+    }
+
+    /**
+     * Get a copy of the multiplicity of each Fan, indexed by ordinals.
+     */
+    public int[] getMultiplicities() {
+        return multiplicities.clone();
+    }
+
+    public int getMultiplicity(MCRFan fan) {
+        return multiplicities[fan.ordinal()];
+    }
+
     public int getFanTotal() {
         int total = 0;
-        for (Map.Entry<MCRFan, Integer> fan : fans.entrySet()) {
-            total += fan.getKey().score * fan.getValue();
+        for (int word = 0; word < FAN_BITS_LENGTH; word++) {
+            for (long bits = fanBits[word]; bits != 0; bits &= bits - 1) {
+                final int ordinal = word * 64 + Long.numberOfTrailingZeros(bits);
+                total += FANS[ordinal].score * multiplicities[ordinal];
+            }
         }
         return total;
     }
@@ -35,25 +83,52 @@ public class MCRResult implements Result {
 
     public void addFan(MCRFan fan, int multiplicity) {
         if (multiplicity < 1) return;
-        fans.put(fan, fans.getOrDefault(fan, 0) + multiplicity);
+        final int ordinal = fan.ordinal();
+        multiplicities[ordinal] += multiplicity;
+        fanBits[ordinal >>> 6] |= 1L << ordinal;
     }
 
     public void reduceFan(MCRFan fan) {
-        fans.computeIfPresent(fan, (f, m) -> m <= 1 ? null : m - 1);
+        final int ordinal = fan.ordinal();
+        if (multiplicities[ordinal] == 0) return;
+        if (--multiplicities[ordinal] == 0)
+            fanBits[ordinal >>> 6] &= ~(1L << ordinal);
     }
 
     public void removeFan(MCRFan fan) {
-        fans.remove(fan);
+        final int ordinal = fan.ordinal();
+        multiplicities[ordinal] = 0;
+        fanBits[ordinal >>> 6] &= ~(1L << ordinal);
+    }
+
+    /**
+     * Remove all Fans not in {@code bits}, a bitset of {@link #FAN_BITS_LENGTH} longs.
+     */
+    public void retainFans(long[] bits) {
+        for (int word = 0; word < FAN_BITS_LENGTH; word++) {
+            for (long removed = fanBits[word] & ~bits[word]; removed != 0; removed &= removed - 1) {
+                multiplicities[word * 64 + Long.numberOfTrailingZeros(removed)] = 0;
+            }
+            fanBits[word] &= bits[word];
+        }
     }
 
     public boolean containsFan(MCRFan fan) {
-        return fans.containsKey(fan);
+        final int ordinal = fan.ordinal();
+        return (fanBits[ordinal >>> 6] & 1L << ordinal) != 0;
     }
 
     public boolean isEmpty() {
-        return fans.isEmpty();
+        for (long bits : fanBits) {
+            if (bits != 0) return false;
+        }
+        return true;
     }
 
+    private static final MCRFan[] FANS = MCRFan.values();
+
+    // bit i of word i / 64 is set iff Fan i is present
+    private final long[] fanBits;
     // the multiplicity of each Fan
-    private Map<MCRFan, Integer> fans;
+    private final int[] multiplicities;
 }
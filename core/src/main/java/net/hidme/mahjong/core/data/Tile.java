@@ -4,9 +4,11 @@ import com.google.common.collect.SortedMultiset;
 import com.google.common.collect.TreeMultiset;
 
 import java.text.ParseException;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
 import java.util.HashSet;
-import java.util.List;
 import java.util.Set;
 
 public enum Tile {
@@ -115,7 +117,7 @@ public enum Tile {
         return getInstance(number + offset, suit);
     }
 
-    public static final Set<Tile> ALL_TILE_SET = new HashSet<>(List.of(Tile.values()));
+    public static final Set<Tile> ALL_TILE_SET = Collections.unmodifiableSet(EnumSet.allOf(Tile.class));
 
     public static boolean isNumberSuit(char suit) {
         return suit == 'm' || suit == 's' || suit == 'p';
@@ -156,13 +158,21 @@ public enum Tile {
                 tiles.stream().filter(t -> t.suit == suit).toList());
     }
 
+    /**
+     * Get distinct suits of {@code tiles} in the order of first occurrence.
+     */
     public static char[] getSuits(Collection<Tile> tiles) {
-        final Set<Character> suits = getSuitSet(tiles);
-        final char[] ret = new char[suits.size()];
-        int i = 0;
-        for (Character suit : suits)
-            ret[i++] = suit;
-        return ret;
+        // there are only 6 suits, so a linear scan avoids boxing suits into a set
+        final char[] suits = new char[6];
+        int size = 0;
+        outer:
+        for (Tile tile : tiles) {
+            for (int i = 0; i < size; i++) {
+                if (suits[i] == tile.suit) continue outer;
+            }
+            suits[size++] = tile.suit;
+        }
+        return Arrays.copyOf(suits, size);
     }
 
     public static Set<Character> getSuitSet(Collection<Tile> tiles) {
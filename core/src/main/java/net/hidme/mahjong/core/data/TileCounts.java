@@ -0,0 +1,289 @@
+package net.hidme.mahjong.core.data;
+
+import java.util.Arrays;
+import java.util.function.Predicate;
+
+/**
+ * A compact, immutable count representation of non-flower tiles.
+ * Each of the 34 non-flower tiles is indexed by its ordinal in {@link Tile},
+ * i.e. characters are at 0-8, dots at 9-17, bamboos at 18-26, winds at 27-30 and dragons at 31-33.
+ * Flower tiles are not counted.
+ */
+public final class TileCounts {
+
+    /**
+     * The number of non-flower tiles (i.e. the length of a count array).
+     */
+    public static final int SIZE = 34;
+
+    public static final TileCounts EMPTY = new TileCounts(new byte[SIZE]);
+
+    /**
+     * Masks of tiles, where bit i stands for the tile at index i of a count array.
+     * See {@link #presenceMask()}.
+     */
+    public static final long CHARACTER_MASK = suitMask('m');
+    public static final long DOT_MASK = suitMask('p');
+    public static final long BAMBOO_MASK = suitMask('s');
+    public static final long WIND_MASK = suitMask('w');
+    public static final long DRAGON_MASK = suitMask('d');
+    public static final long NUMBER_MASK = CHARACTER_MASK | DOT_MASK | BAMBOO_MASK;
+    public static final long HONOR_MASK = WIND_MASK | DRAGON_MASK;
+
+    TileCounts(byte[] counts) {
+        this.counts = counts;
+        int size = 0;
+        long presence = 0;
+        for (int i = 0; i < counts.length; i++) {
+            size += counts[i];
+            if (counts[i] > 0) presence |= 1L << i;
+        }
+        this.size = size;
+        this.presence = presence;
+    }
+
+    /**
+     * Count the non-flower tiles among {@code tiles}; flower tiles are ignored.
+     */
+    public static TileCounts of(Tile... tiles) {
+        final byte[] counts = new byte[SIZE];
+        for (Tile tile : tiles) {
+            if (!tile.isFlower()) counts[tile.ordinal()]++;
+        }
+        return new TileCounts(counts);
+    }
+
+    /**
+     * Count the tiles in {@code claims}.
+     */
+    public static TileCounts ofClaims(Claim... claims) {
+        final byte[] counts = new byte[SIZE];
+        for (Claim claim : claims) {
+            addClaim(counts, claim);
+        }
+        return new TileCounts(counts);
+    }
+
+    /**
+     * Get the tile at {@code index} of a count array.
+     */
+    public static Tile tileAt(int index) {
+        return TILES[index];
+    }
+
+    /**
+     * Get the first index of {@code suit} in a count array.
+     * {@code suit} must not be the flower suit.
+     */
+    public static int suitStart(char suit) {
+        return switch (suit) {
+            case 'm' -> 0;
+            case 'p' -> 9;
+            case 's' -> 18;
+            case 'w' -> 27;
+            case 'd' -> 31;
+            default -> throw new IllegalArgumentException("Invalid suit " + suit);
+        };
+    }
+
+    /**
+     * Get the number of distinct tiles of {@code suit}.
+     * {@code suit} must not be the flower suit.
+     */
+    public static int suitSize(char suit) {
+        return switch (suit) {
+            case 'm', 'p', 's' -> 9;
+            case 'w' -> 4;
+            case 'd' -> 3;
+            default -> throw new IllegalArgumentException("Invalid suit " + suit);
+        };
+    }
+
+    /**
+     * Get the mask of all tiles of {@code suit}.
+     * {@code suit} must not be the flower suit.
+     */
+    public static long suitMask(char suit) {
+        return ((1L << suitSize(suit)) - 1) << suitStart(suit);
+    }
+
+    /**
+     * Get the mask of {@code tiles}; flower tiles are ignored.
+     */
+    public static long maskOf(Tile... tiles) {
+        long mask = 0;
+        for (Tile tile : tiles) {
+            if (!tile.isFlower()) mask |= 1L << tile.ordinal();
+        }
+        return mask;
+    }
+
+    /**
+     * Get the mask of non-flower tiles matching {@code predicate}.
+     * It is meant for building constant masks, not for use in hot paths.
+     */
+    public static long maskOf(Predicate<Tile> predicate) {
+        long mask = 0;
+        for (int i = 0; i < SIZE; i++) {
+            if (predicate.test(TILES[i])) mask |= 1L << i;
+        }
+        return mask;
+    }
+
+    /**
+     * Get the number of number suits present in {@code mask}.
+     */
+    public static int numberSuitCount(long mask) {
+        int suitCount = 0;
+        if ((mask & CHARACTER_MASK) != 0) suitCount++;
+        if ((mask & DOT_MASK) != 0) suitCount++;
+        if ((mask & BAMBOO_MASK) != 0) suitCount++;
+        return suitCount;
+    }
+
+    /**
+     * Whether all tiles in {@code mask} are of the same number suit.
+     */
+    public static boolean isOfPureNumberSuit(long mask) {
+        return (mask & HONOR_MASK) == 0 && numberSuitCount(mask) == 1;
+    }
+
+    public int count(Tile tile) {
+        if (tile.isFlower()) return 0;
+        return counts[tile.ordinal()];
+    }
+
+    public int count(int index) {
+        return counts[index];
+    }
+
+    public boolean contains(Tile tile) {
+        return count(tile) > 0;
+    }
+
+    /**
+     * Get the total number of tiles.
+     */
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Get the number of distinct tiles.
+     */
+    public int distinctSize() {
+        int distinct = 0;
+        for (byte count : counts) {
+            if (count > 0) distinct++;
+        }
+        return distinct;
+    }
+
+    /**
+     * Get the total number of tiles of {@code suit}.
+     */
+    public int countOfSuit(char suit) {
+        int total = 0;
+        for (int i = suitStart(suit), bound = i + suitSize(suit); i < bound; i++) {
+            total += counts[i];
+        }
+        return total;
+    }
+
+    /**
+     * Get the mask of present tiles, where bit i is set iff the tile at index i is present.
+     * It is computed once, so whole-hand properties are tested by a single AND.
+     */
+    public long presenceMask() {
+        return presence;
+    }
+
+    /**
+     * Whether all present tiles are in {@code mask}.
+     */
+    public boolean containsOnly(long mask) {
+        return (presence & ~mask) == 0;
+    }
+
+    /**
+     * Whether some present tile is in {@code mask}.
+     */
+    public boolean containsAny(long mask) {
+        return (presence & mask) != 0;
+    }
+
+    /**
+     * Whether all present tiles match {@code predicate}.
+     */
+    public boolean allMatch(Predicate<Tile> predicate) {
+        for (int i = 0; i < SIZE; i++) {
+            if (counts[i] > 0 && !predicate.test(TILES[i])) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Whether no present tile matches {@code predicate}.
+     */
+    public boolean noneMatch(Predicate<Tile> predicate) {
+        for (int i = 0; i < SIZE; i++) {
+            if (counts[i] > 0 && predicate.test(TILES[i])) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Return a copy of the count array.
+     */
+    public byte[] toArray() {
+        return Arrays.copyOf(counts, SIZE);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof TileCounts that)) return false;
+        return Arrays.equals(counts, that.counts);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(counts);
+    }
+
+    @Override
+    public String toString() {
+        return "TileCounts" + Arrays.toString(counts);
+    }
+
+    private static final Tile[] TILES = Tile.values();
+
+    // add tiles of claim into a count array in-place
+    static void addClaim(byte[] counts, Claim claim) {
+        final int start = claim.start().ordinal();
+        switch (claim.type()) {
+            case CHOW -> {
+                counts[start]++;
+                counts[start + 1]++;
+                counts[start + 2]++;
+            }
+            case PUNG -> counts[start] += 3;
+            case KONG -> counts[start] += 4;
+            case KNITTED_CHOW -> {
+                counts[start]++;
+                counts[start + 3]++;
+                counts[start + 6]++;
+            }
+        }
+    }
+
+    private final byte[] counts;
+    private final int size;
+    // bit i is set iff counts[i] > 0
+    private final long presence;
+
+}
@@ -5,11 +5,18 @@ public enum Wind {
     EAST, SOUTH, WEST, NORTH;
 
     public static Wind parse(String name) {
-        if ("E".equals(name)) return EAST;
-        if ("S".equals(name)) return SOUTH;
-        if ("W".equals(name)) return WEST;
-        if ("N".equals(name)) return NORTH;
-        return null;
+        if (name == null || name.length() != 1) return null;
+        return parse(name.charAt(0));
+    }
+
+    public static Wind parse(char name) {
+        return switch (name) {
+            case 'E' -> EAST;
+            case 'S' -> SOUTH;
+            case 'W' -> WEST;
+            case 'N' -> NORTH;
+            default -> null;
+        };
     }
 
 }
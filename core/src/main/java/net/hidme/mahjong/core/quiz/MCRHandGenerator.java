@@ -28,6 +28,7 @@ public class MCRHandGenerator {
         tiles = new ArrayList<>();
         // debug mode
         // 1. the same weight for each claim type
+        // 2. print intermediate claims and tiles
         debugMode = false;
     }
 
@@ -614,8 +615,10 @@ public class MCRHandGenerator {
                     CHOW : claimTypeRandom.next();
             if (claimType == PUNG) pungCount++;
             final Set<Tile> tileRange = getTileRangeInChickenHand(claimType, claims);
-            System.out.println(tileRange);
-            System.out.println(claimType);
+            if (debugMode) {
+                System.out.println(tileRange);
+                System.out.println(claimType);
+            }
             final Set<Tile> actualTileRange = intersect(tileRange,
                     getUsableTilesByClaimType(ALL_TILE_SET, claimType));
             final Tile start = getRandomTile(actualTileRange);
@@ -631,7 +634,7 @@ public class MCRHandGenerator {
             }
             claims.add(Claim.create(claimType, start, 0,
                     isConcealed ? CLAIMED_FROM_SELF : CLAIMED_FROM_OTHER));
-            System.out.println(claims);
+            if (debugMode) System.out.println(claims);
         }
         // reset options
         selfDrawn = false;
@@ -1109,13 +1112,13 @@ public class MCRHandGenerator {
         // fix lastTile
         if (Claim.getTiles(claims).count(declaredTile) == 3) {
             lastTile = true;
-        } else if (hand.getConcealedTiles().count(declaredTile) > 0) {
+        } else if (hand.getConcealedTileCounts().count(declaredTile) > 0) {
             lastTile = false;
         }
         // fix selfDrawn
         if (kong) {
             final boolean selfDrawnDisallowed = hand.claimsOfType(Claim.Type.KONG).isEmpty();
-            final boolean selfDrawnForced = hand.getHandTilesWithClaims().count(declaredTile) > 1;
+            final boolean selfDrawnForced = hand.getTileCountsWithClaims().count(declaredTile) > 1;
             if (selfDrawnDisallowed && selfDrawnForced) {
                 // kong causes an unresolvable conflict; disable kong
                 kong = false;
@@ -1166,9 +1169,11 @@ public class MCRHandGenerator {
     }
 
     private MCRHand getHand() {
-        System.out.println(claims);
-        System.out.println(tiles);
-        System.out.println(declaredTile);
+        if (debugMode) {
+            System.out.println(claims);
+            System.out.println(tiles);
+            System.out.println(declaredTile);
+        }
         final MCRHand hand = new MCRHand(new Tile[0], claims.toArray(new Claim[0]), tiles.toArray(new Tile[0]), declaredTile,
                 selfDrawn, lastTile, lastDrawOrClaim, kong, prevalentWind, seatWind);
         hand.sort();
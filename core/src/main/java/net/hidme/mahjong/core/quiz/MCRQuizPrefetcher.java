@@ -0,0 +1,163 @@
+package net.hidme.mahjong.core.quiz;
+
+import net.hidme.mahjong.core.calc.MCRCalculator;
+import net.hidme.mahjong.core.data.MCRHand;
+import net.hidme.mahjong.core.data.MCRResult;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * A bounded queue of quizzes, i.e. generated hands along with their results,
+ * which is kept filled by a background thread, so taking a quiz is instant unless the queue runs dry.
+ * <p>
+ *     Hands are generated and calculated on a single background thread,
+ *     so the generator does not need to be safe for concurrent use.
+ *     A generator failure is counted and skipped, and the background thread backs off
+ *     exponentially while generations keep failing, so a broken generator does not spin a core.
+ *     The prefetcher is safe for concurrent use, and it should be closed to stop the background thread.
+ * </p>
+ */
+public class MCRQuizPrefetcher implements AutoCloseable {
+
+    /**
+     * A quiz.
+     * @param hand the generated hand
+     * @param result the result of the hand
+     */
+    public record Quiz(MCRHand hand, MCRResult result) {
+    }
+
+    /**
+     * Statistics of a prefetcher.
+     * @param depth the number of quizzes in the queue
+     * @param produced the number of quizzes produced
+     * @param failures the number of failed generations or calculations
+     * @param underruns the number of takes that had to wait for a quiz
+     * @param meanRefillNanos the mean time to produce a quiz in nanoseconds, or 0 if none is produced
+     * @param maxRefillNanos the longest time to produce a quiz in nanoseconds
+     */
+    public record Stats(int depth, long produced, long failures, long underruns,
+                        long meanRefillNanos, long maxRefillNanos) {
+    }
+
+    /**
+     * Start prefetching quizzes of {@link MCRHandGenerator}.
+     * @param capacity the maximum number of quizzes in the queue
+     */
+    public MCRQuizPrefetcher(int capacity) {
+        this(new MCRHandGenerator()::generate, new MCRCalculator(), capacity);
+    }
+
+    /**
+     * Start prefetching quizzes.
+     * @param generator the generator of hands, which is only called by the background thread
+     * @param calculator the calculator of results
+     * @param capacity the maximum number of quizzes in the queue
+     */
+    public MCRQuizPrefetcher(Supplier<MCRHand> generator, MCRCalculator calculator, int capacity) {
+        if (capacity < 1)
+            throw new IllegalArgumentException("The capacity must be positive");
+        this.generator = generator;
+        this.calculator = calculator;
+        queue = new ArrayBlockingQueue<>(capacity);
+        executor = Executors.newSingleThreadExecutor(Thread.ofPlatform().name("quiz-prefetcher").daemon().factory());
+        executor.execute(this::refill);
+    }
+
+    /**
+     * Take the next quiz, waiting for it if the queue is empty.
+     */
+    public Quiz take() throws InterruptedException {
+        final Quiz quiz = queue.poll();
+        if (quiz != null) return quiz;
+        underruns.increment();
+        return queue.take();
+    }
+
+    /**
+     * Take the next quiz, or return {@code null} if the queue is empty.
+     */
+    public Quiz poll() {
+        return queue.poll();
+    }
+
+    /**
+     * Take the next quiz, waiting up to a timeout for it if the queue is empty.
+     * @return the quiz, or {@code null} if none is produced in time
+     */
+    public Quiz poll(long timeout, TimeUnit unit) throws InterruptedException {
+        final Quiz quiz = queue.poll();
+        if (quiz != null) return quiz;
+        underruns.increment();
+        return queue.poll(timeout, unit);
+    }
+
+    public Stats getStats() {
+        final long producedCount = produced.sum();
+        return new Stats(queue.size(), producedCount, failures.sum(), underruns.sum(),
+                producedCount == 0 ? 0 : refillNanos.sum() / producedCount, maxRefillNanos.get());
+    }
+
+    /**
+     * Stop the background thread.
+     * Quizzes in the queue can still be taken.
+     */
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    private final Supplier<MCRHand> generator;
+    private final MCRCalculator calculator;
+    private final BlockingQueue<Quiz> queue;
+    private final ExecutorService executor;
+    private final LongAdder produced = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder underruns = new LongAdder();
+    private final LongAdder refillNanos = new LongAdder();
+    private final LongAccumulator maxRefillNanos = new LongAccumulator(Math::max, 0);
+
+    // the wait after the first of consecutive failures, which doubles up to the max
+    private static final long MIN_BACKOFF_MILLIS = 1;
+    private static final long MAX_BACKOFF_MILLIS = 1000;
+
+    // produce quizzes until interrupted, blocking while the queue is full
+    private void refill() {
+        long backoffMillis = MIN_BACKOFF_MILLIS;
+        while (!Thread.currentThread().isInterrupted()) {
+            final long start = System.nanoTime();
+            final Quiz quiz;
+            try {
+                final MCRHand hand = generator.get();
+                quiz = new Quiz(hand, (MCRResult) calculator.calculate(hand));
+            } catch (RuntimeException e) {
+                failures.increment();
+                try {
+                    Thread.sleep(backoffMillis);
+                } catch (InterruptedException ie) {
+                    return;
+                }
+                backoffMillis = Math.min(MAX_BACKOFF_MILLIS, backoffMillis * 2);
+                continue;
+            }
+            backoffMillis = MIN_BACKOFF_MILLIS;
+            final long nanos = System.nanoTime() - start;
+            refillNanos.add(nanos);
+            maxRefillNanos.accumulate(nanos);
+            produced.increment();
+            try {
+                queue.put(quiz);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+}
@@ -0,0 +1,171 @@
+package net.hidme.mahjong.core.stats;
+
+import net.hidme.mahjong.core.data.MCRFan;
+import net.hidme.mahjong.core.data.MCRResult;
+
+import java.io.*;
+import java.util.Locale;
+
+/**
+ * Fan statistics of a set of MCR results:
+ * the number of results containing each Fan, the total multiplicity of each Fan,
+ * and the number of results containing each pair of Fans.
+ * <p>
+ *     Statistics are mutable and not safe for concurrent modification.
+ *     They can be saved to and loaded from a binary stream, and exported as CSV.
+ * </p>
+ */
+public class MCRFanStatistics {
+
+    public MCRFanStatistics() {
+        handCounts = new long[FANS.length];
+        multiplicities = new long[FANS.length];
+        cooccurrences = new long[FANS.length][FANS.length];
+    }
+
+    /**
+     * Add a result to the statistics.
+     */
+    public void add(MCRResult result) {
+        final long[] fanBits = result.getFanBits();
+        final int[] resultMultiplicities = result.getMultiplicities();
+        final int[] ordinals = new int[FANS.length];
+        int size = 0;
+        for (int word = 0; word < fanBits.length; word++) {
+            for (long bits = fanBits[word]; bits != 0; bits &= bits - 1) {
+                ordinals[size++] = word * 64 + Long.numberOfTrailingZeros(bits);
+            }
+        }
+        for (int i = 0; i < size; i++) {
+            final int ordinal = ordinals[i];
+            handCounts[ordinal]++;
+            multiplicities[ordinal] += resultMultiplicities[ordinal];
+            for (int j = 0; j < size; j++) {
+                cooccurrences[ordinal][ordinals[j]]++;
+            }
+        }
+        total++;
+    }
+
+    /**
+     * Add all results to the statistics.
+     */
+    public void addAll(Iterable<MCRResult> results) {
+        for (MCRResult result : results) {
+            add(result);
+        }
+    }
+
+    /**
+     * Get the number of results added.
+     */
+    public long getTotal() {
+        return total;
+    }
+
+    /**
+     * Get the number of results containing {@code fan}.
+     */
+    public long getHandCount(MCRFan fan) {
+        return handCounts[fan.ordinal()];
+    }
+
+    /**
+     * Get the sum of multiplicities of {@code fan} over all results.
+     */
+    public long getMultiplicity(MCRFan fan) {
+        return multiplicities[fan.ordinal()];
+    }
+
+    /**
+     * Get the number of results containing both {@code fan} and {@code other}.
+     * {@code getCooccurrence(fan, fan)} is {@code getHandCount(fan)}.
+     */
+    public long getCooccurrence(MCRFan fan, MCRFan other) {
+        return cooccurrences[fan.ordinal()][other.ordinal()];
+    }
+
+    /**
+     * Save the statistics in a binary format which {@link #load(DataInput)} reads.
+     */
+    public void save(DataOutput out) throws IOException {
+        out.writeInt(FANS.length);
+        out.writeLong(total);
+        for (int i = 0; i < FANS.length; i++) {
+            out.writeLong(handCounts[i]);
+            out.writeLong(multiplicities[i]);
+        }
+        for (long[] row : cooccurrences) {
+            for (long count : row) {
+                out.writeLong(count);
+            }
+        }
+    }
+
+    /**
+     * Load statistics saved by {@link #save(DataOutput)}.
+     * @throws IOException if the statistics were saved with a different set of Fans
+     */
+    public static MCRFanStatistics load(DataInput in) throws IOException {
+        final int fanCount = in.readInt();
+        if (fanCount != FANS.length)
+            throw new IOException("Incompatible statistics of " + fanCount + " Fans");
+        final MCRFanStatistics statistics = new MCRFanStatistics();
+        statistics.total = in.readLong();
+        for (int i = 0; i < FANS.length; i++) {
+            statistics.handCounts[i] = in.readLong();
+            statistics.multiplicities[i] = in.readLong();
+        }
+        for (long[] row : statistics.cooccurrences) {
+            for (int j = 0; j < row.length; j++) {
+                row[j] = in.readLong();
+            }
+        }
+        return statistics;
+    }
+
+    /**
+     * Write the histogram of Fans as CSV,
+     * with the Fan, its score, the number of results containing it, their ratio to all results,
+     * and the total multiplicity in each row.
+     */
+    public void writeHistogram(Writer writer) throws IOException {
+        final PrintWriter out = new PrintWriter(writer);
+        out.println("fan,score,hands,frequency,multiplicity");
+        for (MCRFan fan : FANS) {
+            final int i = fan.ordinal();
+            out.printf(Locale.ROOT, "%s,%d,%d,%.9g,%d%n", fan, fan.score, handCounts[i],
+                    total == 0 ? 0.0 : (double) handCounts[i] / total, multiplicities[i]);
+        }
+        out.flush();
+    }
+
+    /**
+     * Write the co-occurrence matrix of Fans as CSV, with a header row and a header column of Fans.
+     */
+    public void writeCooccurrences(Writer writer) throws IOException {
+        final PrintWriter out = new PrintWriter(writer);
+        out.print("fan");
+        for (MCRFan fan : FANS) {
+            out.print(',');
+            out.print(fan);
+        }
+        out.println();
+        for (MCRFan fan : FANS) {
+            out.print(fan);
+            for (long count : cooccurrences[fan.ordinal()]) {
+                out.print(',');
+                out.print(count);
+            }
+            out.println();
+        }
+        out.flush();
+    }
+
+    private static final MCRFan[] FANS = MCRFan.values();
+
+    private long total;
+    // indexed by Fan ordinals
+    private final long[] handCounts, multiplicities;
+    private final long[][] cooccurrences;
+}
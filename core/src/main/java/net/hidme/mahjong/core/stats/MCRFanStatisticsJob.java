@@ -0,0 +1,227 @@
+package net.hidme.mahjong.core.stats;
+
+import net.hidme.mahjong.core.calc.MCRCalculator;
+import net.hidme.mahjong.core.calc.MCRWinningHandEnumerator;
+import net.hidme.mahjong.core.data.*;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * The batch job which scores every concealed MCR winning hand
+ * enumerated by {@link MCRWinningHandEnumerator} and collects {@link MCRFanStatistics}.
+ * <p>
+ *     Each tile multiset is scored once for each distinct tile as the declared tile,
+ *     with East as both prevalent and seat wind and without flowers.
+ *     If self-drawn variations are enabled, each hand is also scored as self-drawn.
+ *     Hands are scored in batches on a fork-join pool.
+ * </p>
+ * <p>
+ *     Progress is checkpointed to {@value #CHECKPOINT_FILE} in the output directory
+ *     after enumeration units, so an interrupted job resumes from the last checkpoint
+ *     when run again with the same options and the same first unit.
+ *     When the job completes, the histogram and the co-occurrence matrix are written to
+ *     {@value #HISTOGRAM_FILE} and {@value #COOCCURRENCE_FILE}.
+ * </p>
+ */
+public class MCRFanStatisticsJob {
+
+    public static final String CHECKPOINT_FILE = "checkpoint.bin";
+    public static final String HISTOGRAM_FILE = "fans.csv";
+    public static final String COOCCURRENCE_FILE = "cooccurrence.csv";
+
+    /**
+     * @param outputDirectory the directory of the checkpoint and the output files
+     * @param selfDrawnVariations whether to score each hand as self-drawn as well
+     * @param pool the pool which scores hands
+     * @param checkpointInterval the minimum interval between checkpoints in milliseconds
+     */
+    public MCRFanStatisticsJob(Path outputDirectory, boolean selfDrawnVariations,
+                               ForkJoinPool pool, long checkpointInterval) {
+        this.outputDirectory = outputDirectory;
+        this.selfDrawnVariations = selfDrawnVariations;
+        this.pool = pool;
+        this.checkpointInterval = checkpointInterval;
+    }
+
+    /**
+     * Run the job from the last checkpoint, if any, until all units are scored.
+     * @return the statistics of all scored hands
+     * @throws IOException if the checkpoint was written with different options or cannot be read,
+     *                     or if an output file cannot be written
+     */
+    public MCRFanStatistics run() throws IOException {
+        return run(0, enumerator.getUnitCount());
+    }
+
+    /**
+     * Run the job over units {@code [fromUnit, toUnit)} of {@link MCRWinningHandEnumerator}
+     * from the last checkpoint, if any.
+     * A checkpoint of a job over {@code [fromUnit, u)} with {@code u <= toUnit} is resumed.
+     * @return the statistics of all hands scored in the units
+     * @throws IOException if the checkpoint was written with different options, another first unit,
+     *                     beyond {@code toUnit} or by another enumerator, or it cannot be read,
+     *                     or if an output file cannot be written
+     */
+    public MCRFanStatistics run(int fromUnit, int toUnit) throws IOException {
+        final int unitCount = enumerator.getUnitCount();
+        if (fromUnit < 0 || fromUnit > toUnit || toUnit > unitCount)
+            throw new IllegalArgumentException("Invalid units [" + fromUnit + ", " + toUnit + ")");
+        Files.createDirectories(outputDirectory);
+        int unit = fromUnit;
+        statistics = new MCRFanStatistics();
+        final Path checkpoint = outputDirectory.resolve(CHECKPOINT_FILE);
+        if (Files.exists(checkpoint)) {
+            unit = loadCheckpoint(checkpoint, fromUnit, toUnit);
+            log("Resuming from unit " + unit + "/" + toUnit + " with " + statistics.getTotal() + " hands");
+        }
+        final long start = System.currentTimeMillis();
+        long lastCheckpoint = start;
+        final long resumedTotal = statistics.getTotal();
+        for (; unit < toUnit; unit++) {
+            enumerator.enumerate(unit, this::addHands);
+            final long now = System.currentTimeMillis();
+            if (now - lastCheckpoint >= checkpointInterval || unit + 1 == toUnit) {
+                flush();
+                saveCheckpoint(checkpoint, fromUnit, unit + 1);
+                lastCheckpoint = now;
+                final long scored = statistics.getTotal() - resumedTotal;
+                log(String.format("Unit %d/%d, %d hands, %.0f hands/s", unit + 1, toUnit,
+                        statistics.getTotal(), scored * 1000.0 / Math.max(1, now - start)));
+            }
+        }
+        try (Writer writer = Files.newBufferedWriter(outputDirectory.resolve(HISTOGRAM_FILE))) {
+            statistics.writeHistogram(writer);
+        }
+        try (Writer writer = Files.newBufferedWriter(outputDirectory.resolve(COOCCURRENCE_FILE))) {
+            statistics.writeCooccurrences(writer);
+        }
+        return statistics;
+    }
+
+    /**
+     * Run the job.
+     * Usage: {@code MCRFanStatisticsJob <output-directory> [--self-drawn] [--threads N] [--checkpoint-seconds S]}
+     */
+    public static void main(String[] args) throws IOException {
+        Path outputDirectory = null;
+        boolean selfDrawnVariations = false;
+        int threads = Runtime.getRuntime().availableProcessors();
+        long checkpointSeconds = 60;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--self-drawn" -> selfDrawnVariations = true;
+                case "--threads" -> threads = Integer.parseInt(args[++i]);
+                case "--checkpoint-seconds" -> checkpointSeconds = Long.parseLong(args[++i]);
+                default -> {
+                    if (outputDirectory != null || args[i].startsWith("--")) {
+                        System.err.println(USAGE);
+                        System.exit(2);
+                    }
+                    outputDirectory = Path.of(args[i]);
+                }
+            }
+        }
+        if (outputDirectory == null) {
+            System.err.println(USAGE);
+            System.exit(2);
+        }
+        final ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            new MCRFanStatisticsJob(outputDirectory, selfDrawnVariations, pool, checkpointSeconds * 1000).run();
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static final String USAGE =
+            "Usage: MCRFanStatisticsJob <output-directory> [--self-drawn] [--threads N] [--checkpoint-seconds S]";
+    // the number of hands scored in a single call
+    private static final int BATCH_SIZE = 1 << 16;
+    // the format version of checkpoints
+    private static final int CHECKPOINT_VERSION = 2;
+
+    private final MCRWinningHandEnumerator enumerator = new MCRWinningHandEnumerator();
+    private final MCRCalculator calculator = new MCRCalculator();
+    private final Path outputDirectory;
+    private final boolean selfDrawnVariations;
+    private final ForkJoinPool pool;
+    private final long checkpointInterval;
+    private final List<MCRHand> batch = new ArrayList<>();
+    private MCRFanStatistics statistics;
+
+    // add a hand for each declared tile (and self-drawn variation) of a winning tile multiset
+    private void addHands(byte[] counts) {
+        final Tile[] winningTiles = new Tile[14];
+        int size = 0;
+        for (int i = 0; i < counts.length; i++) {
+            for (int j = 0; j < counts[i]; j++) {
+                winningTiles[size++] = TileCounts.tileAt(i);
+            }
+        }
+        for (int i = 0; i < winningTiles.length; i++) {
+            if (i > 0 && winningTiles[i] == winningTiles[i - 1]) continue;
+            final Tile[] tiles = new Tile[13];
+            System.arraycopy(winningTiles, 0, tiles, 0, i);
+            System.arraycopy(winningTiles, i + 1, tiles, i, 13 - i);
+            batch.add(createHand(tiles, winningTiles[i], false));
+            if (selfDrawnVariations) batch.add(createHand(tiles, winningTiles[i], true));
+        }
+        if (batch.size() >= BATCH_SIZE) flush();
+    }
+
+    private static MCRHand createHand(Tile[] tiles, Tile declaredTile, boolean selfDrawn) {
+        return new MCRHand(new Tile[0], new Claim[0], tiles, declaredTile,
+                selfDrawn, false, false, false, Wind.EAST, Wind.EAST);
+    }
+
+    private void flush() {
+        if (batch.isEmpty()) return;
+        statistics.addAll(calculator.calculateAll(batch, pool));
+        batch.clear();
+    }
+
+    // return the next unit
+    private int loadCheckpoint(Path checkpoint, int fromUnit, int toUnit) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(checkpoint)))) {
+            if (in.readInt() != CHECKPOINT_VERSION)
+                throw new IOException("Unsupported checkpoint version");
+            if (in.readBoolean() != selfDrawnVariations)
+                throw new IOException("The checkpoint was written with different options");
+            // units of another enumerator are other hands
+            if (in.readInt() != enumerator.getUnitCount())
+                throw new IOException("The checkpoint was written for a different enumeration");
+            if (in.readInt() != fromUnit)
+                throw new IOException("The checkpoint was written from a different unit");
+            final int unit = in.readInt();
+            if (unit < fromUnit || unit > toUnit)
+                throw new IOException("The checkpoint is beyond unit " + toUnit);
+            statistics = MCRFanStatistics.load(in);
+            return unit;
+        }
+    }
+
+    // write to a temporary file first so that an interrupted write keeps the last checkpoint
+    private void saveCheckpoint(Path checkpoint, int fromUnit, int nextUnit) throws IOException {
+        final Path temporary = checkpoint.resolveSibling(CHECKPOINT_FILE + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+            out.writeInt(CHECKPOINT_VERSION);
+            out.writeBoolean(selfDrawnVariations);
+            out.writeInt(enumerator.getUnitCount());
+            out.writeInt(fromUnit);
+            out.writeInt(nextUnit);
+            statistics.save(out);
+        }
+        Files.move(temporary, checkpoint, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void log(String message) {
+        System.out.println(message);
+    }
+
+}
@@ -4,13 +4,20 @@ import com.google.common.collect.HashMultiset;
 import com.google.common.collect.Multiset;
 import net.hidme.mahjong.core.data.Hand;
 import net.hidme.mahjong.core.data.MCRFan;
+import net.hidme.mahjong.core.data.MCRHand;
 import net.hidme.mahjong.core.data.MCRHandParser;
 import net.hidme.mahjong.core.data.MCRResult;
+import net.hidme.mahjong.core.quiz.MCRHandGenerator;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
 import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static net.hidme.mahjong.core.data.MCRFan.*;
 
@@ -639,6 +646,90 @@ public class MCRCalculatorTest {
         testSingleCase("12345678f;FFFF2;678999m22sCC2s;E,S,1,0,0,0", 16);
     }
 
+    // a shared calculator gives the same results on multiple threads as separate calculators on a single thread
+    @Test
+    public void testConcurrentCalculation() throws Exception {
+        final MCRHandGenerator generator = new MCRHandGenerator();
+        final List<MCRHand> hands = new ArrayList<>();
+        final List<Map<MCRFan, Integer>> expected = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            final MCRHand hand = generator.generate();
+            hands.add(hand);
+            expected.add(((MCRResult) new MCRCalculator().calculate(hand)).getFanCombination());
+        }
+        final MCRCalculator calculator = new MCRCalculator();
+        final int threadCount = 8;
+        final ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        try {
+            final List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threadCount; t++) {
+                final int offset = t * 131;
+                futures.add(executor.submit(() -> {
+                    // each thread visits the hands in a different order
+                    for (int i = 0; i < hands.size(); i++) {
+                        final int index = (i * 7 + offset) % hands.size();
+                        final MCRResult result = (MCRResult) calculator.calculate(hands.get(index));
+                        Assertions.assertEquals(expected.get(index), result.getFanCombination());
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        // batch calculation keeps the order of hands
+        final List<MCRResult> results = calculator.calculateAll(hands);
+        final List<MCRResult> streamedResults = calculator.calculateAll(hands.parallelStream()).toList();
+        for (int i = 0; i < hands.size(); i++) {
+            Assertions.assertEquals(expected.get(i), results.get(i).getFanCombination());
+            Assertions.assertEquals(expected.get(i), streamedResults.get(i).getFanCombination());
+        }
+    }
+
+    @Test
+    public void testCachedCalculation() throws ParseException {
+        final MCRHandParser parser = new MCRHandParser();
+        final MCRCachedCalculator calculator = new MCRCachedCalculator(new MCRCalculator(), 2);
+        final MCRHand hand = parser.parse(";123m0,345m0;56s678pWW7s;N,E,0,0,0,0");
+        final MCRResult result = (MCRResult) calculator.calculate(hand);
+        Assertions.assertEquals(8, result.getFanTotal());
+        // the returned result is a copy
+        result.addFan(FLOWER_TILE);
+        // only the order of hand tiles is different
+        final MCRHand reordered = parser.parse(";123m0,345m0;WW678p56s7s;N,E,0,0,0,0");
+        Assertions.assertEquals(8, ((MCRResult) calculator.calculate(reordered)).getFanTotal());
+        Assertions.assertEquals(1, calculator.getStats().hitCount());
+        Assertions.assertEquals(1, calculator.getStats().missCount());
+        // options are a part of the key
+        final MCRHand selfDrawn = parser.parse(";123m0,345m0;56s678pWW7s;N,E,1,0,0,0");
+        Assertions.assertEquals(1, ((MCRResult) calculator.calculate(selfDrawn)).getFanTotal());
+        Assertions.assertEquals(2, calculator.getStats().missCount());
+        // the cache is bounded
+        calculator.calculate(parser.parse(";;11123456789999s;E,E,0,0,0,0"));
+        Assertions.assertTrue(calculator.size() <= 2);
+    }
+
+    @Test
+    public void testFanBits() throws ParseException {
+        final MCRHandParser parser = new MCRHandParser();
+        final MCRResult result = (MCRResult) new MCRCalculator().calculate(
+                parser.parse(";;11123456789999s;E,E,0,0,0,0"));
+        // Nine gates excludes full flush and reduces the pung of terminals
+        Assertions.assertEquals(Map.of(NINE_GATES, 1, PURE_STRAIGHT, 1, TILE_HOG, 1), result.getFanCombination());
+        final long[] fanBits = result.getFanBits();
+        final int[] multiplicities = result.getMultiplicities();
+        for (MCRFan fan : MCRFan.values()) {
+            final boolean present = (fanBits[fan.ordinal() / 64] & 1L << fan.ordinal()) != 0;
+            Assertions.assertEquals(result.containsFan(fan), present);
+            Assertions.assertEquals(present, multiplicities[fan.ordinal()] > 0);
+        }
+        result.reduceFan(TILE_HOG);
+        Assertions.assertFalse(result.containsFan(TILE_HOG));
+        Assertions.assertEquals(88 + 16, result.getFanTotal());
+    }
+
     private void testSingleCase(String cas, int expected) throws ParseException {
         final MCRHandParser parser = new MCRHandParser();
         final Hand hand = parser.parse(cas);
@@ -0,0 +1,128 @@
+package net.hidme.mahjong.core.calc;
+
+import net.hidme.mahjong.core.data.Claim;
+import net.hidme.mahjong.core.data.Hand;
+import net.hidme.mahjong.core.data.MCRHandParser;
+import net.hidme.mahjong.core.data.Tile;
+import net.hidme.mahjong.core.data.TileCounts;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+public class MCRDiscardCalculatorTest {
+
+    @Test
+    public void testReadyDiscards() throws ParseException {
+        final Hand hand = parse(";;123456789m1p234s5p");
+        final MCRDiscardCalculator calculator = new MCRDiscardCalculator(hand.claims, toTiles(hand));
+        final MCRDiscardCalculator.Discard discard = calculator.calculate().get(0);
+        // discarding 1p or 5p waits on the other, so the tie is broken by tiles
+        Assertions.assertEquals(new MCRDiscardCalculator.Discard(Tile.P1, 0, List.of(Tile.P5), 3), discard);
+        // visible tiles are not counted
+        final List<MCRDiscardCalculator.Discard> discards = calculator.calculate(TileCounts.of(Tile.P1, Tile.P1));
+        Assertions.assertEquals(new MCRDiscardCalculator.Discard(Tile.P1, 0, List.of(Tile.P5), 3), discards.get(0));
+        Assertions.assertEquals(new MCRDiscardCalculator.Discard(Tile.P5, 0, List.of(Tile.P1), 1), discards.get(1));
+    }
+
+    @Test
+    public void testClaimedTiles() throws ParseException {
+        // 4s of the pung is not counted
+        final Hand hand = parse(";444s3;123456m11p23s5s");
+        final MCRDiscardCalculator calculator = new MCRDiscardCalculator(hand.claims, toTiles(hand));
+        Assertions.assertEquals(new MCRDiscardCalculator.Discard(Tile.S5, 0, List.of(Tile.S1, Tile.S4), 5),
+                calculator.calculate().get(0));
+    }
+
+    // all draws are probed without pruning
+    @Test
+    public void testRandomHands() {
+        final MCRShantenCalculator shantenCalculator = new MCRShantenCalculator();
+        final Random random = new Random(20240502);
+        for (int round = 0; round < 300; round++) {
+            final byte[] counts = new byte[TileCounts.SIZE];
+            final Claim[] claims = new Claim[random.nextInt(3)];
+            for (int i = 0; i < claims.length; ) {
+                final int index = random.nextInt(TileCounts.SIZE);
+                if (counts[index] == 0) {
+                    counts[index] = 3;
+                    claims[i++] = Claim.create(Claim.Type.PUNG, TileCounts.tileAt(index), 0, 3);
+                }
+            }
+            final byte[] claimCounts = counts.clone();
+            // tiles in a single suit form complex shapes
+            final int bound = random.nextBoolean() ? 9 : TileCounts.SIZE;
+            final List<Tile> tiles = new ArrayList<>();
+            while (tiles.size() < 14 - claims.length * 3) {
+                final int index = random.nextInt(bound);
+                if (counts[index] < 4) {
+                    counts[index]++;
+                    tiles.add(TileCounts.tileAt(index));
+                }
+            }
+            final List<Tile> visible = new ArrayList<>();
+            final int visibleSize = random.nextInt(20);
+            while (visible.size() < visibleSize) {
+                final int index = random.nextInt(TileCounts.SIZE);
+                if (counts[index] < 4) {
+                    counts[index]++;
+                    visible.add(TileCounts.tileAt(index));
+                }
+            }
+            final TileCounts visibleTiles = TileCounts.of(visible.toArray(Tile[]::new));
+            final List<MCRDiscardCalculator.Discard> discards = new MCRDiscardCalculator(claims,
+                    tiles.toArray(Tile[]::new)).calculate(visibleTiles);
+            // the concealed tiles
+            final byte[] concealed = TileCounts.of(tiles.toArray(Tile[]::new)).toArray();
+            final List<MCRDiscardCalculator.Discard> expected = new ArrayList<>();
+            for (int discarded = 0; discarded < TileCounts.SIZE; discarded++) {
+                if (concealed[discarded] == 0) continue;
+                concealed[discarded]--;
+                final int shanten = shantenCalculator.calculate(concealed, claims.length);
+                final List<Tile> effectiveTiles = new ArrayList<>();
+                int effectiveTileCount = 0;
+                for (int drawn = 0; drawn < TileCounts.SIZE; drawn++) {
+                    final int remaining = 4 - counts[drawn];
+                    if (remaining == 0) continue;
+                    concealed[drawn]++;
+                    if (shantenCalculator.calculate(concealed, claims.length) < shanten) {
+                        effectiveTiles.add(TileCounts.tileAt(drawn));
+                        effectiveTileCount += remaining;
+                    }
+                    concealed[drawn]--;
+                }
+                concealed[discarded]++;
+                expected.add(new MCRDiscardCalculator.Discard(TileCounts.tileAt(discarded), shanten,
+                        effectiveTiles, effectiveTileCount));
+            }
+            final String message = tiles + " " + Arrays.toString(claimCounts) + " " + visible;
+            Assertions.assertEquals(new HashSet<>(expected), new HashSet<>(discards), message);
+            Assertions.assertEquals(expected.size(), discards.size(), message);
+            // sorted by shanten, then by the number of effective tiles (descending), then by tiles
+            for (int i = 1; i < discards.size(); i++) {
+                final MCRDiscardCalculator.Discard prev = discards.get(i - 1), next = discards.get(i);
+                Assertions.assertTrue(prev.shanten() < next.shanten() || prev.shanten() == next.shanten()
+                        && (prev.effectiveTileCount() > next.effectiveTileCount()
+                        || prev.effectiveTileCount() == next.effectiveTileCount()
+                        && prev.tile().compareTo(next.tile()) < 0), message);
+            }
+        }
+    }
+
+    private static Hand parse(String tiles) throws ParseException {
+        return new MCRHandParser().parse(tiles + ";E,E,0,0,0,0");
+    }
+
+    // the concealed tiles with the declared tile
+    private static Tile[] toTiles(Hand hand) {
+        final Tile[] tiles = Arrays.copyOf(hand.tiles, hand.tiles.length + 1);
+        tiles[hand.tiles.length] = hand.declaredTile;
+        return tiles;
+    }
+
+}
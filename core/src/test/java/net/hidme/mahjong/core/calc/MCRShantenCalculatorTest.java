@@ -0,0 +1,127 @@
+package net.hidme.mahjong.core.calc;
+
+import net.hidme.mahjong.core.data.Hand;
+import net.hidme.mahjong.core.data.MCRHandParser;
+import net.hidme.mahjong.core.data.Tile;
+import net.hidme.mahjong.core.data.TileCounts;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.text.ParseException;
+import java.util.Arrays;
+import java.util.Random;
+
+public class MCRShantenCalculatorTest {
+
+    @Test
+    public void testWinningHands() throws ParseException {
+        // normal hands
+        testSingleCase(";;123456789m11p234s", 0, -1);
+        testSingleCase(";EEE3,SSSS2;55pWWWNNN", 0, -1);
+        testSingleCase(";;1112345678999m9m", 0, -1);
+        // knitted straight
+        testSingleCase(";;147m258p369s123mEE", 0, -1);
+        // seven pairs
+        testSingleCase(";;1122m3344p5566sEE", 0, -1);
+        testSingleCase(";;1111m3344p5566sEE", 0, -1);
+        // thirteen orphans
+        testSingleCase(";;19m19p19sESWNPFCC", 0, -1);
+        // honors and knitted tiles
+        testSingleCase(";;147m258p3sESWNPFC", 0, -1);
+    }
+
+    @Test
+    public void testReadyHands() throws ParseException {
+        // the declared tile is the rightmost tile
+        testSingleCase(";;123456789m1p234s1p", 0, -1);
+        testSingleCase(";;147m258p369s123mEN", 0, 0);
+        testSingleCase(";;147m258p369sEE12m3m", 0, -1);
+        testSingleCase(";;1122m3344p5566sEN", 0, 0);
+        testSingleCase(";;19m19p19sESWNPFCN", 0, -1);
+        testSingleCase(";;147m258pESWNPFC6s", 0, -1);
+    }
+
+    @Test
+    public void testUnreadyHands() throws ParseException {
+        // 2 sets and 2 partial sets
+        testSingleCase(";;123456m13p24s9sEN3s", 2, 1);
+        // with claims
+        testSingleCase(";123m0,456m0;13p58sENW9s", 3, 2);
+        // seven pairs
+        final MCRShantenCalculator calculator = new MCRShantenCalculator();
+        final byte[] counts = toCounts(";;1122m3344p5sENWP9s");
+        Assertions.assertEquals(2, calculator.calculateSevenPairs(counts, 0));
+        Assertions.assertEquals(MCRShantenCalculator.NOT_APPLICABLE, calculator.calculateSevenPairs(
+                toCounts(";123m0;1m3344p5sENWP9s"), 1));
+        // no partial set
+        final byte[] scattered = toCounts(";;1m5m9m3p7p2s6sESWNPF9s");
+        Assertions.assertEquals(8, calculator.calculateNormal(scattered, 0));
+        Assertions.assertEquals(5, calculator.calculateThirteenOrphans(scattered, 0));
+        Assertions.assertEquals(4, calculator.calculateHonorsAndKnitted(scattered, 0));
+        Assertions.assertEquals(4, calculator.calculate(scattered, 0));
+    }
+
+    @Test
+    public void testInvalidArguments() {
+        final MCRShantenCalculator calculator = new MCRShantenCalculator();
+        Assertions.assertThrows(IllegalArgumentException.class, () -> calculator.calculate(new byte[TileCounts.SIZE], 0));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> calculator.calculate(new byte[5], 0));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> calculator.calculate(new byte[TileCounts.SIZE], 5));
+    }
+
+    // a 14-tile hand is winning iff its shanten is -1,
+    // and the shanten decreases by 1 with the best tile drawn
+    @Test
+    public void testRandomHands() {
+        final MCRShantenCalculator calculator = new MCRShantenCalculator();
+        final MCRStructureAnalyzer analyzer = new MCRStructureAnalyzer();
+        final Random random = new Random(20240501);
+        for (int round = 0; round < 300; round++) {
+            final int claimCount = random.nextInt(3);
+            final byte[] counts = new byte[TileCounts.SIZE];
+            // tiles in a single suit form complex shapes
+            final int bound = random.nextBoolean() ? 9 : TileCounts.SIZE;
+            for (int size = 0; size < 14 - claimCount * 3; ) {
+                final int index = random.nextInt(bound);
+                if (counts[index] < 4) {
+                    counts[index]++;
+                    size++;
+                }
+            }
+            final int shanten = calculator.calculate(counts, claimCount);
+            Assertions.assertEquals(analyzer.isWinning(counts, claimCount != 0), shanten == -1,
+                    Arrays.toString(counts));
+            for (int discarded = 0; discarded < TileCounts.SIZE; discarded++) {
+                if (counts[discarded] == 0) continue;
+                counts[discarded]--;
+                final int readyShanten = calculator.calculate(counts, claimCount);
+                int minShanten = Integer.MAX_VALUE;
+                for (int drawn = 0; drawn < TileCounts.SIZE; drawn++) {
+                    counts[drawn]++;
+                    minShanten = Math.min(minShanten, calculator.calculate(counts, claimCount));
+                    counts[drawn]--;
+                }
+                Assertions.assertEquals(readyShanten - 1, minShanten, Arrays.toString(counts));
+                counts[discarded]++;
+            }
+        }
+    }
+
+    // shanten13: the shanten without the declared tile
+    // shanten14: the shanten with the declared tile
+    private void testSingleCase(String tiles, int shanten13, int shanten14) throws ParseException {
+        final MCRShantenCalculator calculator = new MCRShantenCalculator();
+        final Hand hand = new MCRHandParser().parse(tiles + ";E,E,0,0,0,0");
+        Assertions.assertEquals(shanten13, calculator.calculate(hand.claims, hand.tiles), tiles);
+        final Tile[] allTiles = Arrays.copyOf(hand.tiles, hand.tiles.length + 1);
+        allTiles[hand.tiles.length] = hand.declaredTile;
+        Assertions.assertEquals(shanten14, calculator.calculate(hand.claims, allTiles), tiles);
+    }
+
+    // the 13 tiles without the declared tile
+    private byte[] toCounts(String tiles) throws ParseException {
+        final Hand hand = new MCRHandParser().parse(tiles + ";E,E,0,0,0,0");
+        return TileCounts.of(hand.tiles).toArray();
+    }
+
+}
@@ -0,0 +1,58 @@
+package net.hidme.mahjong.core.calc;
+
+import net.hidme.mahjong.core.data.MCRHand;
+import net.hidme.mahjong.core.data.MCRHandParser;
+import net.hidme.mahjong.core.data.MCRResult;
+import net.hidme.mahjong.core.data.Wind;
+import net.hidme.mahjong.core.quiz.MCRHandGenerator;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.text.ParseException;
+
+public class MCRTileAnalysisTest {
+
+    @Test
+    public void testOptions() {
+        final MCRHandGenerator generator = new MCRHandGenerator();
+        final MCRCalculator calculator = new MCRCalculator();
+        for (int i = 0; i < 300; i++) {
+            final MCRHand hand = generator.generate();
+            final MCRTileAnalysis analysis = calculator.analyze(hand);
+            for (int options = 0; options < 16; options++) {
+                for (Wind prevalentWind : Wind.values()) {
+                    for (Wind seatWind : Wind.values()) {
+                        final MCRHand variant;
+                        try {
+                            variant = new MCRHand(hand.flowers, hand.claims, hand.tiles, hand.declaredTile,
+                                    (options & 1) != 0, (options & 2) != 0, (options & 4) != 0, (options & 8) != 0,
+                                    prevalentWind, seatWind);
+                        } catch (IllegalArgumentException e) {
+                            // conflicting options
+                            continue;
+                        }
+                        final MCRResult expected = (MCRResult) calculator.calculate(variant);
+                        Assertions.assertEquals(expected.getFanCombination(),
+                                analysis.calculate(variant).getFanCombination(), variant::toString);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testApplicable() throws ParseException {
+        final MCRHandParser parser = new MCRHandParser();
+        final MCRCalculator calculator = new MCRCalculator();
+        // a concealed pung of the seat wind, which is melded unless self-drawn
+        final MCRTileAnalysis analysis = calculator.analyze(parser.parse(";;11123m456p789sSSS;E,E,0,0,0,0"));
+        final MCRHand selfDrawn = parser.parse("1f;;11123m456p789sSSS;E,S,1,0,0,0");
+        Assertions.assertTrue(analysis.isApplicable(selfDrawn));
+        Assertions.assertEquals(((MCRResult) calculator.calculate(selfDrawn)).getFanCombination(),
+                analysis.calculate(selfDrawn).getFanCombination());
+        final MCRHand other = parser.parse(";;11123m456p789sEEE;E,S,1,0,0,0");
+        Assertions.assertFalse(analysis.isApplicable(other));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> analysis.calculate(other));
+    }
+
+}
@@ -0,0 +1,42 @@
+package net.hidme.mahjong.core.calc;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+public class MCRWinningHandEnumeratorTest {
+
+    private final MCRWinningHandEnumerator enumerator = new MCRWinningHandEnumerator();
+    private final MCRShantenCalculator shantenCalculator = new MCRShantenCalculator();
+
+    @Test
+    public void testNormalHandCount() {
+        final long[] count = {0};
+        for (int unit = 0; unit < enumerator.getNormalUnitCount(); unit++) {
+            enumerator.enumerate(unit, counts -> count[0]++);
+        }
+        Assertions.assertEquals(11498658, count[0]);
+    }
+
+    @Test
+    public void testWinningAndDistinct() {
+        final Set<String> hands = new HashSet<>();
+        final int unitCount = enumerator.getUnitCount();
+        final int normalUnitCount = enumerator.getNormalUnitCount();
+        // sample units of normal hands and seven pairs, and the unit of other special hands
+        for (int unit : new int[]{100, 5000, normalUnitCount - 1, normalUnitCount + 7, normalUnitCount + 500,
+                unitCount - 1}) {
+            final boolean normal = unit < normalUnitCount;
+            enumerator.enumerate(unit, counts -> {
+                Assertions.assertEquals(-1, shantenCalculator.calculate(counts, 0));
+                Assertions.assertEquals(normal, enumerator.isNormal(counts));
+                Assertions.assertTrue(hands.add(Arrays.toString(counts)));
+            });
+        }
+        Assertions.assertFalse(hands.isEmpty());
+    }
+
+}
@@ -0,0 +1,62 @@
+package net.hidme.mahjong.core.calc;
+
+import net.hidme.mahjong.core.data.MCRHand;
+import net.hidme.mahjong.core.data.MCRHandParser;
+import net.hidme.mahjong.core.data.MCRResult;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.util.concurrent.ForkJoinPool;
+
+public class MCRWinningHandIndexTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void testLookup() throws IOException, ParseException {
+        final MCRWinningHandEnumerator enumerator = new MCRWinningHandEnumerator();
+        // the last unit contains thirteen orphans, honors and knitted tiles and knitted straights
+        final int unit = enumerator.getUnitCount() - 1;
+        final Path path = directory.resolve("index.bin");
+        MCRWinningHandIndex.build(path, unit, unit + 1, ForkJoinPool.commonPool());
+        final MCRWinningHandIndex index = MCRWinningHandIndex.open(path);
+        Assertions.assertTrue(index.size() > 0);
+        final MCRCalculator calculator = new MCRCalculator();
+        final MCRCalculator indexedCalculator = new MCRCalculator(index);
+        for (String handString : new String[]{
+                ";;19m19p19sESWNPFCC;E,E,0,0,0,0",
+                "12f;;147m258p3sESWNPFC;S,W,0,0,0,0",
+                ";;147m258p369s123mEE;E,E,0,0,0,0",
+                ";;147m258p369sSSSEE;W,S,0,0,0,0",
+                ";;19m19p19sESWNPFCC;E,E,1,0,0,0",
+                ";;123456789m11p23s4s;E,E,0,0,0,0",
+        }) {
+            final MCRHand hand = new MCRHandParser().parse(handString);
+            final MCRResult expected = (MCRResult) calculator.calculate(hand);
+            final MCRResult actual = (MCRResult) indexedCalculator.calculate(hand);
+            Assertions.assertEquals(expected.getFanCombination(), actual.getFanCombination(), handString);
+        }
+        // covered hands of the unit are found, the others are calculated
+        Assertions.assertNotNull(index.lookup(new MCRHandParser().parse("12f;;147m258p3sESWNPFC;S,W,0,0,0,0")));
+        Assertions.assertNull(index.lookup(new MCRHandParser().parse(";;147m258p369sSSSEE;W,S,0,0,0,0")));
+        Assertions.assertNull(index.lookup(new MCRHandParser().parse(";;19m19p19sESWNPFCC;E,E,1,0,0,0")));
+        Assertions.assertNull(index.lookup(new MCRHandParser().parse(";;123456789m11p23s4s;E,E,0,0,0,0")));
+    }
+
+    @Test
+    public void testLazyOpen() throws ParseException {
+        final MCRWinningHandIndex index = MCRWinningHandIndex.open(directory.resolve("missing.bin"));
+        final MCRCalculator calculator = new MCRCalculator(index);
+        // uncovered hands never open the index
+        calculator.calculate(new MCRHandParser().parse(";;19m19p19sESWNPFCC;E,E,1,0,0,0"));
+        Assertions.assertThrows(UncheckedIOException.class,
+                () -> calculator.calculate(new MCRHandParser().parse(";;19m19p19sESWNPFCC;E,E,0,0,0,0")));
+    }
+
+}
@@ -0,0 +1,65 @@
+package net.hidme.mahjong.core.cli;
+
+import net.hidme.mahjong.core.calc.MCRCalculator;
+import net.hidme.mahjong.core.data.MCRHand;
+import net.hidme.mahjong.core.data.MCRHandBinaryFormat;
+import net.hidme.mahjong.core.data.MCRHandWriter;
+import net.hidme.mahjong.core.data.MCRResult;
+import net.hidme.mahjong.core.quiz.MCRHandGenerator;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+public class MCRHandScorerTest {
+
+    @Test
+    public void testText() throws IOException, InterruptedException {
+        final String input = "12f;9999m0;11m234567891s;E,E,1,0,0,1\n\n;;123m;E,E,0,0,0,0\n;;11123456789999s;E,E,0,0,0,0\n";
+        final List<String> lines = score(new ByteArrayInputStream(input.getBytes(StandardCharsets.UTF_8)), false);
+        Assertions.assertEquals(3, lines.size());
+        Assertions.assertTrue(lines.get(0).startsWith("35\t"), lines.get(0));
+        Assertions.assertTrue(lines.get(1).startsWith("ERROR\t"), lines.get(1));
+        Assertions.assertEquals("106\tNINE_GATES:1,PURE_STRAIGHT:1,TILE_HOG:1", lines.get(2));
+    }
+
+    @Test
+    public void testBinaryOrder() throws IOException, InterruptedException {
+        final MCRHandGenerator generator = new MCRHandGenerator();
+        final MCRCalculator calculator = new MCRCalculator();
+        final List<Integer> totals = new ArrayList<>();
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (MCRHandWriter writer = new MCRHandWriter(bytes)) {
+            for (int i = 0; i < 5000; i++) {
+                final MCRHand hand = generator.generate();
+                writer.write(hand);
+                totals.add(((MCRResult) calculator.calculate(hand)).getFanTotal());
+            }
+        }
+        final List<String> lines = score(new ByteArrayInputStream(bytes.toByteArray()), true);
+        Assertions.assertEquals(totals.size(), lines.size());
+        for (int i = 0; i < totals.size(); i++) {
+            Assertions.assertEquals(totals.get(i), Integer.parseInt(lines.get(i).substring(0, lines.get(i).indexOf('\t'))));
+        }
+        // a truncated record fails after the complete ones are written
+        final byte[] truncated = new byte[MCRHandBinaryFormat.RECORD_SIZE * 3 - 1];
+        System.arraycopy(bytes.toByteArray(), 0, truncated, 0, truncated.length);
+        final StringWriter out = new StringWriter();
+        final MCRHandScorer scorer = new MCRHandScorer(new MCRCalculator(), 4, true, 0,
+                new PrintStream(OutputStream.nullOutputStream()));
+        Assertions.assertThrows(IOException.class, () -> scorer.score(new ByteArrayInputStream(truncated), out));
+        Assertions.assertEquals(lines.subList(0, 2), out.toString().lines().toList());
+    }
+
+    private static List<String> score(InputStream in, boolean binary) throws IOException, InterruptedException {
+        final StringWriter out = new StringWriter();
+        final MCRHandScorer scorer = new MCRHandScorer(new MCRCalculator(), 4, binary, 1000,
+                new PrintStream(OutputStream.nullOutputStream()));
+        scorer.score(in, out);
+        return out.toString().lines().toList();
+    }
+
+}
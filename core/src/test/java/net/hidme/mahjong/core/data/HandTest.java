@@ -0,0 +1,38 @@
+package net.hidme.mahjong.core.data;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import static net.hidme.mahjong.core.data.Tile.*;
+
+public class HandTest {
+
+    private static final Claim[] NO_CLAIMS = new Claim[0];
+
+    @Test
+    public void testValidTileSet() {
+        final Tile[] tiles = {M1, M2, M3, M4, M5, M6, M7, M8, M9, P1, P1, P2, P3};
+        // flower tiles out of place are accepted, but not counted
+        final Hand misplaced = create(new Tile[]{F1, M1}, new Tile[]{F2, M2, M3, M4, M5, M6, M7, M8, M9, P1, P1, P2, P3}, F3);
+        Assertions.assertEquals(12, misplaced.getHandTileCounts().size());
+        Assertions.assertEquals(1, misplaced.getFlowerMask());
+        // at most 4 of each tile
+        create(new Tile[0], new Tile[]{M1, M1, M1, M1, M2, M3, M4, M5, M6, M7, M8, M9, P1}, M9);
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> create(new Tile[0], new Tile[]{M1, M1, M1, M1, M2, M3, M4, M5, M6, M7, M8, M9, P1}, M1));
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> create(new Tile[0], new Tile[]{F1, F1, F1, F1, M2, M3, M4, M5, M6, M7, M8, M9, P1}, F1));
+        // each tile in flowers is unique
+        Assertions.assertEquals(0b1001, create(new Tile[]{F1, F4}, tiles, P4).getFlowerMask());
+        Assertions.assertThrows(IllegalArgumentException.class, () -> create(new Tile[]{F1, F1}, tiles, P4));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> create(new Tile[]{E, E}, tiles, P4));
+        // the declared tile is required
+        Assertions.assertThrows(IllegalArgumentException.class, () -> create(new Tile[0], tiles, null));
+    }
+
+    // options are not checked
+    private static Hand create(Tile[] flowers, Tile[] tiles, Tile declaredTile) {
+        return new MCRHand(flowers, NO_CLAIMS, tiles, declaredTile, false, true);
+    }
+
+}
@@ -0,0 +1,73 @@
+package net.hidme.mahjong.core.data;
+
+import net.hidme.mahjong.core.quiz.MCRHandGenerator;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class MCRHandBinaryFormatTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void testRoundTrip() throws ParseException {
+        final MCRHandParser parser = new MCRHandParser();
+        for (String string : new String[]{
+                "12f;9999m0;11m234567891s;E,E,1,0,0,1",
+                "8531f;123m0,345m2,EEE3;WW67p8p;N,S,0,1,1,0",
+                "18f;FFFF2;678999m22sCC2s;E,S,1,0,0,0",
+                ";;19m19p19sESWNPFCC;W,N,0,0,0,0",
+        }) {
+            final MCRHand hand = parser.parse(string);
+            final ByteBuffer buffer = ByteBuffer.allocate(MCRHandBinaryFormat.RECORD_SIZE);
+            MCRHandBinaryFormat.encode(hand, buffer);
+            Assertions.assertFalse(buffer.hasRemaining());
+            Assertions.assertEquals(normalize(hand), MCRHandBinaryFormat.decode(buffer, 0).toString(), string);
+        }
+    }
+
+    @Test
+    public void testReader() throws IOException {
+        final MCRHandGenerator generator = new MCRHandGenerator();
+        final List<MCRHand> hands = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            hands.add(generator.generate());
+        }
+        final Path path = directory.resolve("hands.bin");
+        try (MCRHandWriter writer = new MCRHandWriter(Files.newOutputStream(path))) {
+            for (MCRHand hand : hands) {
+                writer.write(hand);
+            }
+        }
+        Assertions.assertEquals(hands.size() * (long) MCRHandBinaryFormat.RECORD_SIZE, Files.size(path));
+        final MCRHandReader reader = MCRHandReader.map(path);
+        Assertions.assertEquals(hands.size(), reader.size());
+        for (int i = 0; i < hands.size(); i++) {
+            Assertions.assertEquals(normalize(hands.get(i)), reader.get(i).toString());
+        }
+        final List<MCRHand> subList = reader.subList(100, 200);
+        Assertions.assertEquals(100, subList.size());
+        Assertions.assertEquals(normalize(hands.get(150)), subList.get(50).toString());
+        Assertions.assertEquals(hands.size(), reader.stream().count());
+    }
+
+    // flowers are decoded in order
+    private static String normalize(MCRHand hand) {
+        final Tile[] flowers = hand.flowers.clone();
+        Arrays.sort(flowers);
+        return new MCRHand(flowers, hand.claims, hand.tiles, hand.declaredTile, false, true,
+                hand.selfDrawn, hand.lastTile, hand.lastDrawOrClaim, hand.kong,
+                hand.prevalentWind, hand.seatWind).toString();
+    }
+
+}
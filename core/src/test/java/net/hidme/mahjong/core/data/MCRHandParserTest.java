@@ -0,0 +1,59 @@
+package net.hidme.mahjong.core.data;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.text.ParseException;
+
+public class MCRHandParserTest {
+
+    private final MCRHandParser parser = new MCRHandParser();
+
+    @Test
+    public void testParse() throws ParseException {
+        final MCRHand hand = parser.parse("12f;9999m0,345m2,EEE3;11m222s;S,W,1,0,1,0");
+        Assertions.assertArrayEquals(new Tile[]{Tile.F1, Tile.F2}, hand.flowers);
+        Assertions.assertArrayEquals(new Claim[]{
+                Claim.create(Claim.Type.KONG, Tile.M9, 0, 0),
+                Claim.create(Claim.Type.CHOW, Tile.M3, 2, 3),
+                Claim.create(Claim.Type.PUNG, Tile.E, 0, 3),
+        }, hand.claims);
+        Assertions.assertArrayEquals(new Tile[]{Tile.M1, Tile.M1, Tile.S2, Tile.S2}, hand.tiles);
+        Assertions.assertEquals(Tile.S2, hand.declaredTile);
+        Assertions.assertEquals(Wind.SOUTH, hand.prevalentWind);
+        Assertions.assertEquals(Wind.WEST, hand.seatWind);
+        Assertions.assertTrue(hand.selfDrawn);
+        Assertions.assertFalse(hand.lastTile);
+        Assertions.assertTrue(hand.lastDrawOrClaim);
+        Assertions.assertFalse(hand.kong);
+    }
+
+    @Test
+    public void testRegion() throws ParseException {
+        final String buffer = "x\n;;11123456789999s;E,E,0,0,0,0\n;;123m;E,E,0,0,0,0\n";
+        final MCRHand hand = parser.parse(buffer, 2, 31);
+        Assertions.assertEquals(Tile.S9, hand.declaredTile);
+        final ParseException e = Assertions.assertThrows(ParseException.class, () -> parser.parse(buffer, 32, 50));
+        Assertions.assertEquals(32, e.getErrorOffset());
+    }
+
+    @Test
+    public void testErrorOffsets() {
+        testErrorOffset(";;1112345678999x9s;E,E,0,0,0,0", 15);
+        testErrorOffset(";;111234567899909s;E,E,0,0,0,0", 15);
+        testErrorOffset(";;11123456789999s;E,X,0,0,0,0", 20);
+        testErrorOffset(";;11123456789999s;E,E,0,0,0", 27);
+        testErrorOffset(";;11123456789999s;E,E,0,0,0,0,0", 29);
+        testErrorOffset(";1234m0;123456789s;E,E,0,0,0,0", 1);
+        testErrorOffset(";123m5;1234567899s;E,E,0,0,0,0", 5);
+        testErrorOffset(";;11123456789999;E,E,0,0,0,0", 16);
+        testErrorOffset(";;;E,E,0,0,0,0", 2);
+        testErrorOffset(";;11123456789999s", 17);
+    }
+
+    private void testErrorOffset(String string, int offset) {
+        final ParseException e = Assertions.assertThrows(ParseException.class, () -> parser.parse(string), string);
+        Assertions.assertEquals(offset, e.getErrorOffset(), string);
+    }
+
+}
@@ -0,0 +1,57 @@
+package net.hidme.mahjong.core.quiz;
+
+import net.hidme.mahjong.core.calc.MCRCalculator;
+import net.hidme.mahjong.core.data.MCRHand;
+import net.hidme.mahjong.core.data.MCRResult;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+public class MCRQuizPrefetcherTest {
+
+    @Test
+    public void testPrefetch() throws InterruptedException {
+        final MCRCalculator calculator = new MCRCalculator();
+        final MCRHandGenerator generator = new MCRHandGenerator();
+        // every third generation fails
+        final AtomicInteger calls = new AtomicInteger();
+        final Supplier<MCRHand> failingGenerator = () -> {
+            if (calls.incrementAndGet() % 3 == 0) throw new IllegalStateException("failure");
+            return generator.generate();
+        };
+        try (MCRQuizPrefetcher prefetcher = new MCRQuizPrefetcher(failingGenerator, calculator, 4)) {
+            for (int i = 0; i < 20; i++) {
+                final MCRQuizPrefetcher.Quiz quiz = prefetcher.take();
+                Assertions.assertEquals(((MCRResult) calculator.calculate(quiz.hand())).getFanCombination(),
+                        quiz.result().getFanCombination());
+            }
+            // the queue is refilled up to its capacity
+            while (prefetcher.getStats().depth() < 4) {
+                Thread.sleep(1);
+            }
+            final MCRQuizPrefetcher.Stats stats = prefetcher.getStats();
+            // the producer may hold one more quiz while waiting for space
+            Assertions.assertTrue(stats.produced() == 24 || stats.produced() == 25, stats::toString);
+            Assertions.assertTrue(stats.failures() >= 11, stats::toString);
+            Assertions.assertTrue(stats.maxRefillNanos() >= stats.meanRefillNanos(), stats::toString);
+        }
+    }
+
+    @Test
+    public void testFailingGenerator() throws InterruptedException {
+        final Supplier<MCRHand> failingGenerator = () -> {
+            throw new IllegalStateException("failure");
+        };
+        try (MCRQuizPrefetcher prefetcher = new MCRQuizPrefetcher(failingGenerator, new MCRCalculator(), 4)) {
+            Assertions.assertNull(prefetcher.poll(300, TimeUnit.MILLISECONDS));
+            final MCRQuizPrefetcher.Stats stats = prefetcher.getStats();
+            // backing off from 1 ms, about 8 failures fit in 300 ms
+            Assertions.assertTrue(stats.failures() > 0 && stats.failures() < 20, stats::toString);
+            Assertions.assertEquals(1, stats.underruns(), stats::toString);
+        }
+    }
+
+}
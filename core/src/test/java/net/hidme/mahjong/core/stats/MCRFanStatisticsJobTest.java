@@ -0,0 +1,60 @@
+package net.hidme.mahjong.core.stats;
+
+import net.hidme.mahjong.core.calc.MCRWinningHandEnumerator;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ForkJoinPool;
+
+public class MCRFanStatisticsJobTest {
+
+    @TempDir
+    Path directory;
+
+    private static final int FROM_UNIT = 1000, TO_UNIT = 1008;
+
+    @Test
+    public void testResume() throws IOException {
+        final Path complete = directory.resolve("complete"), resumed = directory.resolve("resumed");
+        final MCRFanStatistics expected = createJob(complete, false).run(FROM_UNIT, TO_UNIT);
+        Assertions.assertTrue(expected.getTotal() > 0);
+        // a job stopped halfway is resumed to the same statistics and output
+        final MCRFanStatistics half = createJob(resumed, false).run(FROM_UNIT, (FROM_UNIT + TO_UNIT) / 2);
+        Assertions.assertTrue(half.getTotal() > 0 && half.getTotal() < expected.getTotal());
+        final MCRFanStatistics actual = createJob(resumed, false).run(FROM_UNIT, TO_UNIT);
+        Assertions.assertEquals(expected.getTotal(), actual.getTotal());
+        for (String file : new String[]{MCRFanStatisticsJob.HISTOGRAM_FILE, MCRFanStatisticsJob.COOCCURRENCE_FILE}) {
+            Assertions.assertEquals(Files.readString(complete.resolve(file)), Files.readString(resumed.resolve(file)));
+        }
+        // a completed job is resumed without scoring again
+        Assertions.assertEquals(expected.getTotal(), createJob(resumed, false).run(FROM_UNIT, TO_UNIT).getTotal());
+    }
+
+    @Test
+    public void testMismatchedCheckpoint() throws IOException {
+        final MCRFanStatistics statistics = createJob(directory, false).run(FROM_UNIT, FROM_UNIT + 1);
+        Assertions.assertThrows(IOException.class, () -> createJob(directory, true).run(FROM_UNIT, TO_UNIT));
+        Assertions.assertThrows(IOException.class, () -> createJob(directory, false).run(FROM_UNIT + 1, TO_UNIT));
+        Assertions.assertThrows(IOException.class, () -> createJob(directory, false).run(FROM_UNIT, FROM_UNIT));
+        // the unit count follows the version and the options
+        final Path checkpoint = directory.resolve(MCRFanStatisticsJob.CHECKPOINT_FILE);
+        final byte[] bytes = Files.readAllBytes(checkpoint);
+        final ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        Assertions.assertEquals(new MCRWinningHandEnumerator().getUnitCount(), buffer.getInt(5));
+        buffer.putInt(5, buffer.getInt(5) + 1);
+        Files.write(checkpoint, bytes);
+        Assertions.assertThrows(IOException.class, () -> createJob(directory, false).run(FROM_UNIT, TO_UNIT));
+        Assertions.assertTrue(statistics.getTotal() > 0);
+    }
+
+    private static MCRFanStatisticsJob createJob(Path directory, boolean selfDrawnVariations) {
+        // checkpoint after every unit
+        return new MCRFanStatisticsJob(directory, selfDrawnVariations, ForkJoinPool.commonPool(), 0);
+    }
+
+}
@@ -0,0 +1,69 @@
+package net.hidme.mahjong.core.stats;
+
+import net.hidme.mahjong.core.calc.MCRCalculator;
+import net.hidme.mahjong.core.data.MCRFan;
+import net.hidme.mahjong.core.data.MCRHandParser;
+import net.hidme.mahjong.core.data.MCRResult;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.*;
+import java.text.ParseException;
+import java.util.List;
+
+public class MCRFanStatisticsTest {
+
+    @Test
+    public void testStatistics() throws ParseException, IOException {
+        final MCRFanStatistics statistics = new MCRFanStatistics();
+        final MCRHandParser parser = new MCRHandParser();
+        final MCRCalculator calculator = new MCRCalculator();
+        // NINE_GATES, PURE_STRAIGHT and TILE_HOG
+        statistics.add((MCRResult) calculator.calculate(parser.parse(";;11123456789999s;E,E,0,0,0,0")));
+        // PURE_STRAIGHT and 2 FLOWER_TILES among others
+        statistics.add((MCRResult) calculator.calculate(parser.parse("12f;9999m0;11m234567891s;E,E,1,0,0,1")));
+        Assertions.assertEquals(2, statistics.getTotal());
+        Assertions.assertEquals(2, statistics.getHandCount(MCRFan.PURE_STRAIGHT));
+        Assertions.assertEquals(1, statistics.getHandCount(MCRFan.NINE_GATES));
+        Assertions.assertEquals(2, statistics.getMultiplicity(MCRFan.FLOWER_TILE));
+        Assertions.assertEquals(1, statistics.getCooccurrence(MCRFan.NINE_GATES, MCRFan.PURE_STRAIGHT));
+        Assertions.assertEquals(0, statistics.getCooccurrence(MCRFan.NINE_GATES, MCRFan.FLOWER_TILE));
+        // saved and loaded
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        statistics.save(new DataOutputStream(bytes));
+        final MCRFanStatistics loaded = MCRFanStatistics.load(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+        Assertions.assertEquals(histogram(statistics), histogram(loaded));
+        Assertions.assertEquals(cooccurrences(statistics), cooccurrences(loaded));
+        // CSV
+        final List<String> histogram = histogram(statistics).lines().toList();
+        Assertions.assertEquals("fan,score,hands,frequency,multiplicity", histogram.get(0));
+        Assertions.assertEquals(MCRFan.values().length + 1, histogram.size());
+        Assertions.assertTrue(histogram.contains("PURE_STRAIGHT,16,2,1.00000000,2"), histogram::toString);
+        Assertions.assertTrue(histogram.contains("NINE_GATES,88,1,0.500000000,1"), histogram::toString);
+        final List<String> cooccurrences = cooccurrences(statistics).lines().toList();
+        Assertions.assertEquals(MCRFan.values().length + 1, cooccurrences.size());
+        Assertions.assertTrue(cooccurrences.get(0).startsWith("fan," + MCRFan.values()[0] + ","));
+        Assertions.assertTrue(cooccurrences.stream().anyMatch(line -> line.startsWith("NINE_GATES,")));
+    }
+
+    @Test
+    public void testIncompatible() throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        new DataOutputStream(bytes).writeInt(MCRFan.values().length + 1);
+        Assertions.assertThrows(IOException.class,
+                () -> MCRFanStatistics.load(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()))));
+    }
+
+    private static String histogram(MCRFanStatistics statistics) throws IOException {
+        final StringWriter writer = new StringWriter();
+        statistics.writeHistogram(writer);
+        return writer.toString();
+    }
+
+    private static String cooccurrences(MCRFanStatistics statistics) throws IOException {
+        final StringWriter writer = new StringWriter();
+        statistics.writeCooccurrences(writer);
+        return writer.toString();
+    }
+
+}
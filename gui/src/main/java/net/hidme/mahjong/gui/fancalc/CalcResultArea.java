@@ -37,10 +37,26 @@ public class CalcResultArea extends JTextArea {
         }
         sb.append(text(KEY_FAN_CALC_TOTAL_SCORE, result.getFanTotal()));
         setText(sb.toString());
+        calculating = false;
+    }
+
+    /**
+     * Show that a result is being calculated, until it is set.
+     */
+    public void setCalculating() {
+        setText(text(KEY_FAN_CALC_CALCULATING));
+        calculating = true;
+    }
+
+    public boolean isCalculating() {
+        return calculating;
     }
 
     public void reset() {
         setText(text(KEY_FAN_CALC_HINT));
+        calculating = false;
     }
 
+    private boolean calculating;
+
 }
@@ -3,78 +3,96 @@ package net.hidme.mahjong.gui.fancalc;
 import net.hidme.mahjong.core.data.Claim;
 import net.hidme.mahjong.core.data.Tile;
 
-import java.util.LinkedList;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.UnaryOperator;
 
 /**
  * For concurrent updates/queries of the same hand.
+ * <p>
+ *     The hand is an immutable {@link HandViewModel} snapshot, which is replaced atomically on each change,
+ *     so readers never lock or copy.
+ *     A change that does not apply (e.g. adding a tile to a full hand) keeps the snapshot and its version.
+ * </p>
  */
 public class ConcurrentHand {
 
     public ConcurrentHand() {
-        claims = new LinkedList<>();
-        tiles = new LinkedList<>();
+        snapshot = new AtomicReference<>(HandViewModel.EMPTY);
     }
 
     /**
-     * Get a copy of view model of this hand for rendering.
+     * Get the current snapshot of this hand for rendering.
      */
-    public synchronized HandViewModel getViewModel() {
-        // copy each list
-        return new HandViewModel(new LinkedList<>(claims),
-                new LinkedList<>(tiles),
-                declaredTile);
+    public HandViewModel getViewModel() {
+        return snapshot.get();
     }
 
-    public synchronized void addClaim(Claim claim) {
-        final int sizeTotal = sizeTotal(), sizeWithoutDeclaredTile = sizeWithoutDeclaredTile();
-        if (sizeTotal >= 12) return;
-        if (sizeWithoutDeclaredTile == 11) {
-            // adding a claim causes the last tile to be the declared one
-            declaredTile = tiles.removeLast();
-        }
-        claims.add(claim);
+    public void addClaim(Claim claim) {
+        update(hand -> {
+            if (hand.size() >= 12) return hand;
+            final List<Claim> claims = append(hand.claims(), claim);
+            if (hand.sizeWithoutDeclaredTile() == 11) {
+                // adding a claim causes the last tile to be the declared one
+                final List<Tile> tiles = hand.tiles();
+                return next(hand, claims, tiles.subList(0, tiles.size() - 1), tiles.getLast());
+            }
+            return next(hand, claims, hand.tiles(), hand.declaredTile());
+        });
     }
 
-    public synchronized void addTile(Tile tile) {
-        final int sizeTotal = sizeTotal(), sizeWithoutDeclaredTile = sizeWithoutDeclaredTile();
-        if (sizeTotal >= 14) return;
-        if (sizeWithoutDeclaredTile >= 13) declaredTile = tile;
-        else tiles.add(tile);
+    public void addTile(Tile tile) {
+        update(hand -> {
+            if (hand.size() >= 14) return hand;
+            if (hand.sizeWithoutDeclaredTile() >= 13) return next(hand, hand.claims(), hand.tiles(), tile);
+            return next(hand, hand.claims(), append(hand.tiles(), tile), hand.declaredTile());
+        });
     }
 
-    public synchronized void setDeclaredTile(Tile tile) {
-        declaredTile = tile;
+    public void setDeclaredTile(Tile tile) {
+        update(hand -> hand.declaredTile() == tile ? hand : next(hand, hand.claims(), hand.tiles(), tile));
     }
 
-    public synchronized void removeClaim(int index) {
-        claims.remove(index);
+    public void removeClaim(int index) {
+        update(hand -> next(hand, remove(hand.claims(), index), hand.tiles(), hand.declaredTile()));
     }
 
-    public synchronized void removeTile(int index) {
-        tiles.remove(index);
+    public void removeTile(int index) {
+        update(hand -> next(hand, hand.claims(), remove(hand.tiles(), index), hand.declaredTile()));
     }
 
-    public synchronized void clear() {
-        claims.clear();
-        tiles.clear();
-        declaredTile = null;
+    public void clear() {
+        update(hand -> hand.size() == 0 ? hand : next(hand, List.of(), List.of(), null));
     }
 
-    public synchronized int size() {
-        return sizeTotal();
+    public int size() {
+        return snapshot.get().size();
     }
 
-    private int sizeTotal() {
-        return sizeWithoutDeclaredTile() + (declaredTile == null ? 0 : 1);
+    private final AtomicReference<HandViewModel> snapshot;
+
+    // the change may be applied more than once under contention, so it must be free of side effects
+    private void update(UnaryOperator<HandViewModel> change) {
+        snapshot.updateAndGet(change);
+    }
+
+    private static HandViewModel next(HandViewModel hand, List<Claim> claims, List<Tile> tiles, Tile declaredTile) {
+        return new HandViewModel(hand.version() + 1, claims, tiles, declaredTile);
     }
 
-    private int sizeWithoutDeclaredTile() {
-        return claims.size() * 3 + tiles.size();
+    private static <T> List<T> append(List<T> list, T element) {
+        final List<T> result = new ArrayList<>(list.size() + 1);
+        result.addAll(list);
+        result.add(element);
+        return result;
     }
 
-    private List<Claim> claims;
-    private List<Tile> tiles;
-    private Tile declaredTile;
+    // throw IndexOutOfBoundsException if index is out of bounds
+    private static <T> List<T> remove(List<T> list, int index) {
+        final List<T> result = new ArrayList<>(list);
+        result.remove(index);
+        return result;
+    }
 
 }
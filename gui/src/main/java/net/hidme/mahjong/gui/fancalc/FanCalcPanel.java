@@ -1,6 +1,7 @@
 package net.hidme.mahjong.gui.fancalc;
 
 import net.hidme.mahjong.core.calc.MCRCalculator;
+import net.hidme.mahjong.core.calc.MCRTileAnalysis;
 import net.hidme.mahjong.core.data.MCRHand;
 import net.hidme.mahjong.core.data.MCRResult;
 import net.hidme.mahjong.gui.MainFrame;
@@ -9,6 +10,9 @@ import net.hidme.mahjong.gui.ScenePanel;
 import javax.swing.*;
 import javax.swing.border.EmptyBorder;
 import java.awt.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static net.hidme.mahjong.gui.text.Localization.emojiFontName;
 import static net.hidme.mahjong.gui.util.GridBagLayoutUtils.makeConstraint;
@@ -23,6 +27,9 @@ public class FanCalcPanel extends ScenePanel {
         setBorder(new EmptyBorder(20, 50, 20, 50));
         // model
         hand = new ConcurrentHand();
+        calculator = new MCRCalculator();
+        // hands are calculated off the EDT, and only the latest result is shown
+        worker = Executors.newSingleThreadExecutor(Thread.ofPlatform().name("fan-calc").daemon().factory());
         // hand preview
         handPreview = new HandPreviewPanel(this, hand);
         handPreview.setBorder(new EmptyBorder(20, 20, 20, 20));
@@ -37,6 +44,9 @@ public class FanCalcPanel extends ScenePanel {
         centerPanel.add(optionPanel, makeConstraint(0, 1, 1, 1, 0, 0));
         final JPanel resultPanel = new JPanel(new BorderLayout());
         calcResultArea = new CalcResultArea();
+        // a fast calculation does not flash the calculating state
+        calculatingTimer = new Timer(CALCULATING_DELAY, e -> calcResultArea.setCalculating());
+        calculatingTimer.setRepeats(false);
         resultPanel.add(calcResultArea);
         resultPanel.setBorder(new EmptyBorder(20, 20, 0, 0));
         centerPanel.add(resultPanel, makeConstraint(1, 0, 1, 2, 1, 0));
@@ -49,10 +59,26 @@ public class FanCalcPanel extends ScenePanel {
         add(backPanel, BorderLayout.SOUTH);
     }
 
+    // the delay in milliseconds before the calculating state is shown
+    private static final int CALCULATING_DELAY = 100;
+
     private final ConcurrentHand hand;
+    private final MCRCalculator calculator;
+    private final ExecutorService worker;
+    private final Timer calculatingTimer;
     private final HandPreviewPanel handPreview;
     private final OptionPanel optionPanel;
     private final CalcResultArea calcResultArea;
+    // the analysis of the latest calculated tiles, which is reused when only options are updated
+    // it is confined to the worker
+    private MCRTileAnalysis analysis;
+    // the sequence number of the latest calculation request, which is confined to the EDT
+    private long latestRequest;
+    // the latest calculation, which is cancelled if it is superseded before it starts
+    private Future<?> pendingCalculation;
+    // the version of the hand and the options of the latest calculation request, which is pending or shown
+    private long requestedVersion = -1;
+    private Options requestedOptions;
 
     private JButton createBackButton() {
         final JButton button = new JButton("👈");
@@ -66,6 +92,8 @@ public class FanCalcPanel extends ScenePanel {
         // if the hand is complete, calculate Fan
         if (hand.size() == 14) {
             calculateResult();
+        } else {
+            stopCalculation();
         }
     }
 
@@ -82,12 +110,63 @@ public class FanCalcPanel extends ScenePanel {
     }
 
     private void calculateResult() {
-        final MCRHand mcrHand = hand.getViewModel().toMCRHand(optionPanel.getOptions());
-        if (mcrHand != null) {
-            final MCRCalculator calculator = new MCRCalculator();
-            final MCRResult result = (MCRResult) calculator.calculate(mcrHand);
-            calcResultArea.setResult(result);
+        final HandViewModel viewModel = hand.getViewModel();
+        final Options options = optionPanel.getOptions();
+        // the same hand with the same options needs no recalculation
+        if (viewModel.version() == requestedVersion && options.equals(requestedOptions)) return;
+        final MCRHand mcrHand = viewModel.toMCRHand(options);
+        if (mcrHand == null) {
+            stopCalculation();
+            return;
         }
+        cancelCalculation();
+        requestedVersion = viewModel.version();
+        requestedOptions = options;
+        final long request = latestRequest;
+        calculatingTimer.restart();
+        pendingCalculation = worker.submit(() -> {
+            MCRResult result;
+            try {
+                result = calculate(mcrHand);
+            } catch (RuntimeException e) {
+                result = null;
+            }
+            final MCRResult finalResult = result;
+            SwingUtilities.invokeLater(() -> onCalculated(request, finalResult));
+        });
+    }
+
+    // supersede the pending calculation, whose result will be ignored
+    private void cancelCalculation() {
+        latestRequest++;
+        if (pendingCalculation != null) pendingCalculation.cancel(false);
+        pendingCalculation = null;
+        calculatingTimer.stop();
+    }
+
+    // cancel the pending calculation without a new one
+    private void stopCalculation() {
+        cancelCalculation();
+        requestedVersion = -1;
+        requestedOptions = null;
+        // no result is coming for the calculating state
+        if (calcResultArea.isCalculating()) calcResultArea.reset();
+    }
+
+    // run on the worker
+    private MCRResult calculate(MCRHand mcrHand) {
+        if (analysis == null || !analysis.isApplicable(mcrHand))
+            analysis = calculator.analyze(mcrHand);
+        return analysis.calculate(mcrHand);
+    }
+
+    // run on the EDT; result is null if the calculation failed
+    private void onCalculated(long request, MCRResult result) {
+        if (request != latestRequest) return;
+        pendingCalculation = null;
+        calculatingTimer.stop();
+        if (result != null) calcResultArea.setResult(result);
+        else calcResultArea.reset();
     }
 
 }
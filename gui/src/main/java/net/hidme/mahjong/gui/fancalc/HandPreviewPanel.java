@@ -84,10 +84,15 @@ public class HandPreviewPanel extends JPanel {
     private final List<TileLabel> tileSlots;
     private final TileLabel declaredTileSlot;
     private final JLabel placeHolder;
+    // the version of the rendered snapshot
+    private long renderedVersion = -1;
 
     public void onHandUpdate() {
         // get updated model
         final HandViewModel viewModel = hand.getViewModel();
+        // nothing changed since the last render
+        if (viewModel.version() == renderedVersion) return;
+        renderedVersion = viewModel.version();
         final List<Claim> claims = viewModel.claims();
         final List<Tile> tiles = viewModel.tiles();
         final Tile declaredTile = viewModel.declaredTile();
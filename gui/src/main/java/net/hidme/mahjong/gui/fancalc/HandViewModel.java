@@ -3,20 +3,47 @@ package net.hidme.mahjong.gui.fancalc;
 import net.hidme.mahjong.core.data.Claim;
 import net.hidme.mahjong.core.data.MCRHand;
 import net.hidme.mahjong.core.data.Tile;
-import net.hidme.mahjong.core.data.Wind;
 
 import java.util.List;
 
 /**
  * Intermediate representation between ConcurrentHand and MCRHand.
  * Useful for view rendering.
+ * <p>
+ *     A view model is an immutable snapshot of a {@link ConcurrentHand}, whose lists are unmodifiable,
+ *     so it can be read without locking or copying.
+ *     The version increases with each change of the hand,
+ *     so snapshots of the same hand are equal iff their versions are.
+ * </p>
  */
 public record HandViewModel(
+        long version,
         List<Claim> claims,
         List<Tile> tiles,
         Tile declaredTile
 ) {
 
+    /**
+     * The snapshot of an empty hand, whose version is 0.
+     */
+    public static final HandViewModel EMPTY = new HandViewModel(0, List.of(), List.of(), null);
+
+    public HandViewModel {
+        claims = List.copyOf(claims);
+        tiles = List.copyOf(tiles);
+    }
+
+    /**
+     * Get the number of tiles including claims and the declared tile, where a kong counts as 3 tiles.
+     */
+    public int size() {
+        return sizeWithoutDeclaredTile() + (declaredTile == null ? 0 : 1);
+    }
+
+    public int sizeWithoutDeclaredTile() {
+        return claims.size() * 3 + tiles.size();
+    }
+
     public MCRHand toMCRHand(Options options) {
         try {
             return new MCRHand(
@@ -1,9 +1,8 @@
 package net.hidme.mahjong.gui.fanquiz;
 
-import net.hidme.mahjong.core.calc.MCRCalculator;
 import net.hidme.mahjong.core.data.MCRHand;
 import net.hidme.mahjong.core.data.MCRResult;
-import net.hidme.mahjong.core.quiz.MCRHandGenerator;
+import net.hidme.mahjong.core.quiz.MCRQuizPrefetcher;
 import net.hidme.mahjong.gui.MainFrame;
 import net.hidme.mahjong.gui.ScenePanel;
 import net.hidme.mahjong.gui.common.AccumulatorButton;
@@ -24,9 +23,9 @@ public class FanQuizPanel extends ScenePanel {
 
     public FanQuizPanel(MainFrame window) {
         super(window);
-        // quiz generator and checker
-        generator = new MCRHandGenerator();
-        calculator = new MCRCalculator();
+        // quizzes are generated and checked in the background
+        prefetcher = new MCRQuizPrefetcher(PREFETCH_CAPACITY);
+        retryTimer = new Timer(RETRY_INTERVAL, e -> retryHand());
         // GUI
         setLayout(new BorderLayout());
         setBorder(new EmptyBorder(20, 50, 20, 50));
@@ -53,8 +52,12 @@ public class FanQuizPanel extends ScenePanel {
         generateHand();
     }
 
-    private final MCRHandGenerator generator;
-    private final MCRCalculator calculator;
+    private static final int PREFETCH_CAPACITY = 8;
+    // how often a quiz is polled for while none is prefetched, in milliseconds
+    private static final int RETRY_INTERVAL = 200;
+
+    private final MCRQuizPrefetcher prefetcher;
+    private final Timer retryTimer;
     private final HandViewPanel handViewPanel;
     private final DetailPanel detailPanel;
     private final List<AccumulatorButton> accumulatorButtons;
@@ -63,13 +66,37 @@ public class FanQuizPanel extends ScenePanel {
     private final JButton checkOrNextButton;
 
     private MCRHand hand;
+    private MCRResult result;
     private boolean isCheckButton;
 
     /**
-     * Generate a random MCR hand.
+     * Take the next random MCR hand without blocking the EDT.
+     * If no hand is prefetched, the check button shows that a hand is being generated,
+     * and the hand is polled for periodically.
      */
     private void generateHand() {
-        hand = generator.generate();
+        final MCRQuizPrefetcher.Quiz quiz = prefetcher.poll();
+        if (quiz == null) {
+            checkOrNextButton.setEnabled(false);
+            checkOrNextButton.setText(text(KEY_FAN_QUIZ_GENERATING));
+            retryTimer.start();
+            return;
+        }
+        showQuiz(quiz);
+    }
+
+    private void retryHand() {
+        final MCRQuizPrefetcher.Quiz quiz = prefetcher.poll();
+        if (quiz == null) return;
+        retryTimer.stop();
+        checkOrNextButton.setText(text(KEY_FAN_QUIZ_BUTTON_CHECK));
+        checkOrNextButton.setEnabled(true);
+        showQuiz(quiz);
+    }
+
+    private void showQuiz(MCRQuizPrefetcher.Quiz quiz) {
+        hand = quiz.hand();
+        result = quiz.result();
         // update GUI
         handViewPanel.updateHand(hand);
         detailPanel.updateDetails(hand);
@@ -173,7 +200,6 @@ public class FanQuizPanel extends ScenePanel {
 
     private void onCheckButtonClicked() {
         // show the answer
-        final MCRResult result = (MCRResult) calculator.calculate(hand);
         answerArea.setResult(result);
         final int playerAnswer;
         try {
@@ -203,11 +229,11 @@ public class FanQuizPanel extends ScenePanel {
         // reset
         resetInput();
         answerArea.reset();
-        // next case
-        generateHand();
         // next -> check
         checkOrNextButton.setText(text(KEY_FAN_QUIZ_BUTTON_CHECK));
         isCheckButton = true;
+        // next case
+        generateHand();
     }
 
 }
@@ -5,12 +5,33 @@ import net.hidme.mahjong.gui.util.ImageUtils;
 
 import javax.imageio.ImageIO;
 import javax.swing.*;
+import java.awt.*;
+import java.awt.geom.AffineTransform;
 import java.awt.image.BufferedImage;
-import java.util.HashMap;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.zip.CRC32;
 
 import static net.hidme.mahjong.core.data.Tile.*;
 
+/**
+ * Icons of tiles of any width, which are painted from sheets of all tiles pre-scaled to the size on the screen.
+ * <p>
+ *     Nothing is decoded until an icon is first painted, and then the atlas is scaled once for that size
+ *     in device pixels, so a HiDPI screen gets sharp tiles and sideways tiles are simply painted rotated.
+ *     The latest {@value #MAX_SHEETS} scaled sheets are kept.
+ *     If the system property {@value #CACHE_DIR_PROPERTY} names a directory,
+ *     scaled sheets are also saved there and loaded instead of scaling again on the next start.
+ * </p>
+ */
 public class MahjongAtlas {
 
     public static final int MAHJONG_WIDTH = 45;
@@ -26,70 +47,215 @@ public class MahjongAtlas {
         return SIDEWAYS_ICON_MAP.get(tile);
     }
 
+    /**
+     * Get the icon of a tile (or the back of a tile if {@code null}) of a width,
+     * whose height is given by {@link #getMahjongHeight(int)}.
+     */
+    public static Icon getMahjongIcon(Tile tile, int width) {
+        if (width == MAHJONG_WIDTH) return getMahjongIcon(tile);
+        return createIcon(tile, width, false);
+    }
+
+    /**
+     * Get the sideways icon of a tile (or the back of a tile if {@code null}) of a width before rotation,
+     * whose height before rotation is given by {@link #getMahjongHeight(int)}.
+     */
+    public static Icon getMahjongIconSideways(Tile tile, int width) {
+        if (width == MAHJONG_WIDTH) return getMahjongIconSideways(tile);
+        return createIcon(tile, width, true);
+    }
+
+    /**
+     * Get the height of a tile of a width, keeping the aspect ratio of the atlas.
+     */
+    public static int getMahjongHeight(int width) {
+        if (width < 1)
+            throw new IllegalArgumentException("The width must be positive");
+        return Math.max(1, (int) Math.round((double) width * MAHJONG_HEIGHT / MAHJONG_WIDTH));
+    }
+
     private static final String PATH = "/mahjong_atlas.png";
-    private static final Map<Tile, Icon> ICON_MAP, SIDEWAYS_ICON_MAP;
-    private static final Icon EMPTY_TILE_ICON, SIDEWAYS_EMPTY_TILE_ICON;
+    private static final String CACHE_DIR_PROPERTY = "mahjong.atlas.cache";
+    private static final int SOURCE_WIDTH = 111, SOURCE_HEIGHT = 154;
+    private static final int COLUMNS = 9, ROWS = 5;
+    // the index of the back of a tile in the atlas
+    private static final int EMPTY_TILE_INDEX = 42;
+    private static final int MAX_SHEETS = 4;
+    // indices of tiles in the atlas
+    private static final Map<Tile, Integer> INDEX_MAP = new EnumMap<>(Tile.class);
+    private static final Map<Tile, Icon> ICON_MAP = new EnumMap<>(Tile.class);
+    private static final Map<Tile, Icon> SIDEWAYS_ICON_MAP = new EnumMap<>(Tile.class);
+    private static final Icon EMPTY_TILE_ICON = createIcon(null, MAHJONG_WIDTH, false);
+    private static final Icon SIDEWAYS_EMPTY_TILE_ICON = createIcon(null, MAHJONG_WIDTH, true);
+    // scaled sheets by the tile width in device pixels, the least recently used of which is evicted
+    private static final Map<Integer, BufferedImage> SHEETS = new LinkedHashMap<>(MAX_SHEETS, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, BufferedImage> eldest) {
+            return size() > MAX_SHEETS;
+        }
+    };
+    private static byte[] source;
 
     static {
+        final Tile[] tiles = {
+                S1, S2, S3, S4, S5, S6, S7, S8, S9,
+                M1, M2, M3, M4, M5, M6, M7, M8, M9,
+                P1, P2, P3, P4, P5, P6, P7, P8, P9,
+                E, S, W, N, C, F, P, F1, F4,
+                F2, F3, F5, F6, F7, F8
+        };
+        for (int i = 0; i < tiles.length; i++) {
+            INDEX_MAP.put(tiles[i], i);
+        }
+        for (Tile tile : tiles) {
+            ICON_MAP.put(tile, createIcon(tile, MAHJONG_WIDTH, false));
+            SIDEWAYS_ICON_MAP.put(tile, createIcon(tile, MAHJONG_WIDTH, true));
+        }
+    }
+
+    private static Icon createIcon(Tile tile, int width, boolean sideways) {
+        final int index = tile == null ? EMPTY_TILE_INDEX : INDEX_MAP.get(tile);
+        return new TileIcon(index % COLUMNS, index / COLUMNS, width, getMahjongHeight(width), sideways);
+    }
+
+    // get the sheet of tiles of a width in device pixels
+    private static synchronized BufferedImage getSheet(int width) {
+        BufferedImage sheet = SHEETS.get(width);
+        if (sheet == null) {
+            sheet = loadSheet(width);
+            SHEETS.put(width, sheet);
+        }
+        return sheet;
+    }
+
+    private static BufferedImage loadSheet(int width) {
+        final int height = getMahjongHeight(width);
+        final Path cacheFile = getCacheFile(width, height);
+        if (cacheFile != null && Files.isRegularFile(cacheFile)) {
+            try {
+                final BufferedImage cached = ImageIO.read(cacheFile.toFile());
+                if (cached != null && cached.getWidth() == width * COLUMNS && cached.getHeight() == height * ROWS)
+                    return toCompatibleImage(cached);
+            } catch (IOException e) {
+                // scale the atlas again
+            }
+        }
+        final BufferedImage atlas;
+        try {
+            atlas = ImageIO.read(new ByteArrayInputStream(getSource()));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        final BufferedImage sheet = createImage(width * COLUMNS, height * ROWS);
+        final Graphics2D g2d = sheet.createGraphics();
+        // tiles are scaled one by one, so they do not bleed into each other
+        for (int y = 0; y < ROWS; y++) {
+            for (int x = 0; x < COLUMNS; x++) {
+                final BufferedImage tile = atlas.getSubimage(x * SOURCE_WIDTH, y * SOURCE_HEIGHT, SOURCE_WIDTH, SOURCE_HEIGHT);
+                g2d.drawImage(ImageUtils.scaleSmooth(tile, width, height), x * width, y * height, null);
+            }
+        }
+        g2d.dispose();
+        if (cacheFile != null) {
+            saveSheet(sheet, cacheFile);
+        }
+        return sheet;
+    }
+
+    private static synchronized byte[] getSource() throws IOException {
+        if (source == null) {
+            try (InputStream in = MahjongAtlas.class.getResourceAsStream(PATH)) {
+                if (in == null) throw new IOException("Missing " + PATH);
+                source = in.readAllBytes();
+            }
+        }
+        return source;
+    }
+
+    // the cache file is named after the checksum of the atlas, so a changed atlas is never served stale
+    private static Path getCacheFile(int width, int height) {
+        final String dir = System.getProperty(CACHE_DIR_PROPERTY);
+        if (dir == null || dir.isEmpty()) return null;
         try {
-            final BufferedImage atlas = ImageIO.read(MahjongAtlas.class.getResourceAsStream(PATH));
-            EMPTY_TILE_ICON = getSubimage(atlas, 6, 4);
-            SIDEWAYS_EMPTY_TILE_ICON = ImageUtils.rotate90CounterClockwise(EMPTY_TILE_ICON);
-            ICON_MAP = new HashMap<>();
-            ICON_MAP.put(S1, getSubimage(atlas, 0, 0));
-            ICON_MAP.put(S2, getSubimage(atlas, 1, 0));
-            ICON_MAP.put(S3, getSubimage(atlas, 2, 0));
-            ICON_MAP.put(S4, getSubimage(atlas, 3, 0));
-            ICON_MAP.put(S5, getSubimage(atlas, 4, 0));
-            ICON_MAP.put(S6, getSubimage(atlas, 5, 0));
-            ICON_MAP.put(S7, getSubimage(atlas, 6, 0));
-            ICON_MAP.put(S8, getSubimage(atlas, 7, 0));
-            ICON_MAP.put(S9, getSubimage(atlas, 8, 0));
-            ICON_MAP.put(M1, getSubimage(atlas, 0, 1));
-            ICON_MAP.put(M2, getSubimage(atlas, 1, 1));
-            ICON_MAP.put(M3, getSubimage(atlas, 2, 1));
-            ICON_MAP.put(M4, getSubimage(atlas, 3, 1));
-            ICON_MAP.put(M5, getSubimage(atlas, 4, 1));
-            ICON_MAP.put(M6, getSubimage(atlas, 5, 1));
-            ICON_MAP.put(M7, getSubimage(atlas, 6, 1));
-            ICON_MAP.put(M8, getSubimage(atlas, 7, 1));
-            ICON_MAP.put(M9, getSubimage(atlas, 8, 1));
-            ICON_MAP.put(P1, getSubimage(atlas, 0, 2));
-            ICON_MAP.put(P2, getSubimage(atlas, 1, 2));
-            ICON_MAP.put(P3, getSubimage(atlas, 2, 2));
-            ICON_MAP.put(P4, getSubimage(atlas, 3, 2));
-            ICON_MAP.put(P5, getSubimage(atlas, 4, 2));
-            ICON_MAP.put(P6, getSubimage(atlas, 5, 2));
-            ICON_MAP.put(P7, getSubimage(atlas, 6, 2));
-            ICON_MAP.put(P8, getSubimage(atlas, 7, 2));
-            ICON_MAP.put(P9, getSubimage(atlas, 8, 2));
-            ICON_MAP.put(E, getSubimage(atlas, 0, 3));
-            ICON_MAP.put(S, getSubimage(atlas, 1, 3));
-            ICON_MAP.put(W, getSubimage(atlas, 2, 3));
-            ICON_MAP.put(N, getSubimage(atlas, 3, 3));
-            ICON_MAP.put(C, getSubimage(atlas, 4, 3));
-            ICON_MAP.put(F, getSubimage(atlas, 5, 3));
-            ICON_MAP.put(P, getSubimage(atlas, 6, 3));
-            ICON_MAP.put(F1, getSubimage(atlas, 7, 3));
-            ICON_MAP.put(F4, getSubimage(atlas, 8, 3));
-            ICON_MAP.put(F2, getSubimage(atlas, 0, 4));
-            ICON_MAP.put(F3, getSubimage(atlas, 1, 4));
-            ICON_MAP.put(F5, getSubimage(atlas, 2, 4));
-            ICON_MAP.put(F6, getSubimage(atlas, 3, 4));
-            ICON_MAP.put(F7, getSubimage(atlas, 4, 4));
-            ICON_MAP.put(F8, getSubimage(atlas, 5, 4));
-            SIDEWAYS_ICON_MAP = new HashMap<>();
-            for (Map.Entry<Tile, Icon> entry : ICON_MAP.entrySet()) {
-                SIDEWAYS_ICON_MAP.put(entry.getKey(), ImageUtils.rotate90CounterClockwise(entry.getValue()));
+            final CRC32 crc = new CRC32();
+            crc.update(getSource());
+            return Path.of(dir, String.format("mahjong_atlas-%08x-%dx%d.png", crc.getValue(), width, height));
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    // the cache is optional, so a sheet that cannot be saved is only kept in memory
+    private static void saveSheet(BufferedImage sheet, Path cacheFile) {
+        try {
+            Files.createDirectories(cacheFile.getParent());
+            final Path tmpFile = Files.createTempFile(cacheFile.getParent(), "mahjong_atlas", ".tmp");
+            try {
+                ImageIO.write(sheet, "png", tmpFile.toFile());
+                Files.move(tmpFile, cacheFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(tmpFile);
             }
-        } catch (Throwable e) {
-            throw new RuntimeException(e);
+        } catch (IOException | RuntimeException e) {
+            // ignored
         }
     }
 
-    private static Icon getSubimage(BufferedImage atlas, int indexX, int indexY) {
-        final BufferedImage rawImage = atlas.getSubimage(indexX * 111, indexY * 154, 111, 154);
-        return new ImageIcon(rawImage.getScaledInstance(MAHJONG_WIDTH, MAHJONG_HEIGHT, BufferedImage.SCALE_SMOOTH));
+    // an image compatible with the screen can be accelerated by Java 2D
+    private static BufferedImage createImage(int width, int height) {
+        if (!GraphicsEnvironment.isHeadless()) {
+            final GraphicsConfiguration config = GraphicsEnvironment.getLocalGraphicsEnvironment()
+                    .getDefaultScreenDevice().getDefaultConfiguration();
+            return config.createCompatibleImage(width, height, Transparency.TRANSLUCENT);
+        }
+        return new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+    }
+
+    private static BufferedImage toCompatibleImage(BufferedImage image) {
+        final BufferedImage compatible = createImage(image.getWidth(), image.getHeight());
+        final Graphics2D g2d = compatible.createGraphics();
+        g2d.drawImage(image, 0, 0, null);
+        g2d.dispose();
+        return compatible;
+    }
+
+    // width and height are those before rotation
+    private record TileIcon(int indexX, int indexY, int width, int height, boolean sideways) implements Icon {
+
+        @Override
+        public void paintIcon(Component c, Graphics g, int x, int y) {
+            final Graphics2D g2d = (Graphics2D) g.create();
+            try {
+                if (sideways) {
+                    // rotate 90 degrees counterclockwise
+                    g2d.translate(x, y + width);
+                    g2d.rotate(-Math.PI / 2);
+                } else {
+                    g2d.translate(x, y);
+                }
+                final AffineTransform transform = g2d.getTransform();
+                final double scale = Math.hypot(transform.getScaleX(), transform.getShearY());
+                final int deviceWidth = Math.max(1, (int) Math.round(width * scale));
+                final int deviceHeight = getMahjongHeight(deviceWidth);
+                final BufferedImage sheet = getSheet(deviceWidth);
+                g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                g2d.drawImage(sheet, 0, 0, width, height, indexX * deviceWidth, indexY * deviceHeight,
+                        (indexX + 1) * deviceWidth, (indexY + 1) * deviceHeight, null);
+            } finally {
+                g2d.dispose();
+            }
+        }
+
+        @Override
+        public int getIconWidth() {
+            return sideways ? height : width;
+        }
+
+        @Override
+        public int getIconHeight() {
+            return sideways ? width : height;
+        }
+
     }
 
 }
@@ -31,6 +31,7 @@ public class Localization {
     public static final String KEY_FAN_CALC_OPTION_SEAT_WIND_WEST = "fan-calc.option.seat-wind.west";
     public static final String KEY_FAN_CALC_OPTION_SEAT_WIND_NORTH = "fan-calc.option.seat-wind.north";
     public static final String KEY_FAN_CALC_HINT = "fan-calc.hint";
+    public static final String KEY_FAN_CALC_CALCULATING = "fan-calc.calculating";
 
     public static final String KEY_FAN_QUIZ_DETAIL_SELF_DRAWN = "fan-quiz.detail.self-drawn";
     public static final String KEY_FAN_QUIZ_DETAIL_LAST_TILE = "fan-quiz.detail.last-tile";
@@ -48,6 +49,7 @@ public class Localization {
     public static final String KEY_FAN_QUIZ_BUTTON_CHECK = "fan-quiz.button.check";
     public static final String KEY_FAN_QUIZ_BUTTON_NEXT = "fan-quiz.button.next";
     public static final String KEY_FAN_QUIZ_HINT = "fan-quiz.hint";
+    public static final String KEY_FAN_QUIZ_GENERATING = "fan-quiz.generating";
 
     public static final String KEY_FAN_CALC_SINGLE_SCORE = "fan-calc.single-score";
     public static final String KEY_FAN_CALC_TOTAL_SCORE = "fan-calc.total-score";
@@ -110,6 +112,7 @@ public class Localization {
             - 输入牌张后，可点击上方显示的牌张移除。
               最下方有若干选项，会影响算番结果，
               所以请仔细设置。""");
+        TEXT_MAP.put(KEY_FAN_CALC_CALCULATING, "计算中……");
         TEXT_MAP.put(KEY_FAN_QUIZ_DETAIL_SELF_DRAWN, "自摸");
         TEXT_MAP.put(KEY_FAN_QUIZ_DETAIL_LAST_TILE, "绝张");
         TEXT_MAP.put(KEY_FAN_QUIZ_DETAIL_LAST_DRAW_OR_CLAIM, "海底");
@@ -126,6 +129,7 @@ public class Localization {
         TEXT_MAP.put(KEY_FAN_QUIZ_BUTTON_CHECK, "检查");
         TEXT_MAP.put(KEY_FAN_QUIZ_BUTTON_NEXT, "下一个！");
         TEXT_MAP.put(KEY_FAN_QUIZ_HINT, "在左侧点击番数按钮进行累加，或直接在输入栏输入结果，然后点击下方检查按钮");
+        TEXT_MAP.put(KEY_FAN_QUIZ_GENERATING, "生成中……");
         // default text template
         TEXT_TEMPLATE_MAP = new HashMap<>();
         TEXT_TEMPLATE_MAP.put(KEY_FAN_CALC_SINGLE_SCORE, "%d番");
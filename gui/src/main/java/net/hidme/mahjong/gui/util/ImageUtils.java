@@ -1,48 +1,33 @@
 package net.hidme.mahjong.gui.util;
 
-import javax.swing.*;
 import java.awt.*;
-import java.awt.geom.AffineTransform;
 import java.awt.image.BufferedImage;
 
 public interface ImageUtils {
 
-    static Icon rotate90Clockwise(Icon icon) {
-        return rotate90Clockwise(icon, 1);
-    }
-
-    static Icon rotate90CounterClockwise(Icon icon) {
-        return rotate90Clockwise(icon, 3);
-    }
-
-    static Icon rotate90Clockwise(Icon icon, int times) {
-        int w = icon.getIconWidth();
-        int h = icon.getIconHeight();
-
-        // Convert to BufferedImage
-        BufferedImage image = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
-        Graphics2D g2d = image.createGraphics();
-        icon.paintIcon(null, g2d, 0, 0);
-        g2d.dispose();
-
-        // Create new rotated image with swapped dimensions
-        BufferedImage rotated = new BufferedImage(h, w, BufferedImage.TYPE_INT_ARGB);
-        g2d = rotated.createGraphics();
-
-        // Rotate times*90 degrees clockwise around the center
-        AffineTransform at = new AffineTransform();
-        switch (times % 4) {
-            case 1 -> at.translate(h, 0);
-            case 2 -> at.translate(w, h);
-            case 3 -> at.translate(0, w);
-        }
-        at.rotate(Math.toRadians(times * 90));
-
-        g2d.setTransform(at);
-        g2d.drawImage(image, 0, 0, null);
-        g2d.dispose();
-
-        return new ImageIcon(rotated);
+    /**
+     * Scale an image smoothly, halving it with bilinear interpolation until it is at most twice the target size,
+     * which looks close to {@link Image#SCALE_SMOOTH} at a fraction of the cost.
+     */
+    static BufferedImage scaleSmooth(BufferedImage image, int width, int height) {
+        BufferedImage scaled = image;
+        int w = image.getWidth();
+        int h = image.getHeight();
+        do {
+            w = Math.max(width, w / 2);
+            h = Math.max(height, h / 2);
+            if (w < width * 2 && h < height * 2) {
+                w = width;
+                h = height;
+            }
+            final BufferedImage step = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
+            final Graphics2D g2d = step.createGraphics();
+            g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g2d.drawImage(scaled, 0, 0, w, h, null);
+            g2d.dispose();
+            scaled = step;
+        } while (w != width || h != height);
+        return scaled;
     }
 
 }
@@ -0,0 +1,6 @@
+module net.hidme.mahjong.server {
+    requires net.hidme.mahjong.core;
+    requires jdk.httpserver;
+
+    exports net.hidme.mahjong.server;
+}
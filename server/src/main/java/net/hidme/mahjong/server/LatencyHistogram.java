@@ -0,0 +1,101 @@
+package net.hidme.mahjong.server;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A histogram of latencies with buckets of powers of 2 microseconds.
+ * Bucket 0 counts latencies below 1 microsecond, and bucket {@code i > 0} counts latencies
+ * in {@code [2^(i-1), 2^i)} microseconds, so a percentile is exact up to a factor of 2.
+ * <p>
+ *     Recording never blocks, so the histogram is safe for concurrent use.
+ *     A snapshot taken during recording may be slightly inconsistent, e.g. its count may lag its buckets.
+ * </p>
+ */
+public class LatencyHistogram {
+
+    /**
+     * The number of buckets, where the last one also counts all longer latencies.
+     */
+    public static final int BUCKET_COUNT = 40;
+
+    public LatencyHistogram() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Record a latency.
+     */
+    public void record(long nanos) {
+        final long micros = Math.max(nanos, 0) / 1000;
+        buckets[Math.min(64 - Long.numberOfLeadingZeros(micros), BUCKET_COUNT - 1)].increment();
+        count.increment();
+        totalNanos.add(nanos);
+        maxNanos.accumulate(nanos);
+    }
+
+    /**
+     * Get the exclusive upper bound of latencies of a bucket in microseconds,
+     * or {@link Long#MAX_VALUE} for the last bucket.
+     */
+    public static long getBucketBound(int bucket) {
+        return bucket == BUCKET_COUNT - 1 ? Long.MAX_VALUE : 1L << bucket;
+    }
+
+    /**
+     * Take a snapshot of the histogram.
+     */
+    public Snapshot snapshot() {
+        final long[] counts = new long[BUCKET_COUNT];
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts[i] = buckets[i].sum();
+        }
+        return new Snapshot(counts, count.sum(), totalNanos.sum(), maxNanos.get());
+    }
+
+    /**
+     * A snapshot of a histogram.
+     * @param buckets the number of latencies of each bucket
+     * @param count the number of latencies
+     * @param totalNanos the sum of latencies in nanoseconds
+     * @param maxNanos the longest latency in nanoseconds, or 0 if there are none
+     */
+    public record Snapshot(long[] buckets, long count, long totalNanos, long maxNanos) {
+
+        /**
+         * Get the mean latency in microseconds, or 0 if there are no latencies.
+         */
+        public double getMeanMicros() {
+            return count == 0 ? 0 : totalNanos / 1000.0 / count;
+        }
+
+        /**
+         * Get the upper bound of a percentile in microseconds,
+         * i.e. the bound of the first bucket where the cumulative count reaches the percentile,
+         * which is capped by the longest latency.
+         * @param percentile the percentile in {@code (0, 100]}
+         * @return the bound, or 0 if there are no latencies
+         */
+        public long getPercentileMicros(double percentile) {
+            final long total = Arrays.stream(buckets).sum();
+            if (total == 0) return 0;
+            final long rank = (long) Math.ceil(total * percentile / 100);
+            long cumulative = 0;
+            for (int i = 0; i < buckets.length; i++) {
+                cumulative += buckets[i];
+                if (cumulative >= rank) return Math.min(getBucketBound(i), Math.ceilDiv(maxNanos, 1000));
+            }
+            return Math.ceilDiv(maxNanos, 1000);
+        }
+
+    }
+
+    private final LongAdder[] buckets = new LongAdder[BUCKET_COUNT];
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+}
@@ -0,0 +1,296 @@
+package net.hidme.mahjong.server;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import net.hidme.mahjong.core.calc.MCRCalculator;
+import net.hidme.mahjong.core.calc.MCRDeclaredTileCalculator;
+import net.hidme.mahjong.core.calc.MCRTileAnalysis;
+import net.hidme.mahjong.core.calc.MCRWinningHandIndex;
+import net.hidme.mahjong.core.cli.MCRHandScorer;
+import net.hidme.mahjong.core.data.MCRHand;
+import net.hidme.mahjong.core.data.MCRHandParser;
+import net.hidme.mahjong.core.data.MCRResult;
+import net.hidme.mahjong.core.data.Tile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * An embedded HTTP server that scores hands in MCR.
+ * Hands are in the format of {@link MCRHandParser}, and results are plain text lines
+ * like those of {@link MCRHandScorer}, i.e. the total Fan and the Fan combination separated by a tab.
+ * <ul>
+ *     <li>{@code POST /score}: score the hand of the body</li>
+ *     <li>
+ *         {@code POST /waits}: find the tiles that complete the hand of the body without its declared tile,
+ *         one line for each tile with the result of the hand where the tile is declared instead
+ *     </li>
+ *     <li>
+ *         {@code POST /batch}: score the hands of the body, one per line (blank lines are skipped),
+ *         in parallel; a hand that cannot be read or scored gets {@code ERROR} and a message separated by a tab,
+ *         and hands with the same tiles only different in flowers and options share a {@link MCRTileAnalysis}
+ *     </li>
+ *     <li>{@code GET /stats}: latency summaries and histograms of each endpoint as tab-separated lines</li>
+ * </ul>
+ * <p>
+ *     Each request is handled on its own virtual thread, and all requests share the same calculator,
+ *     which is immutable after construction.
+ *     A batch amortizes the overhead of a request over its hands,
+ *     which are calculated in parallel on the common fork-join pool, grouped by their tiles.
+ * </p>
+ */
+public class MCRScoringServer {
+
+    /**
+     * Create a server, which is not started.
+     * @param calculator the calculator shared by all requests
+     * @param address the address to bind, whose port may be 0 for an ephemeral port
+     * @throws IOException if the address cannot be bound
+     */
+    public MCRScoringServer(MCRCalculator calculator, InetSocketAddress address) throws IOException {
+        this.calculator = calculator;
+        server = HttpServer.create(address, 0);
+        executor = Executors.newVirtualThreadPerTaskExecutor();
+        server.setExecutor(executor);
+        for (String endpoint : ENDPOINTS) {
+            histograms.put(endpoint, new LatencyHistogram());
+        }
+        server.createContext("/score", exchange -> handle(exchange, "/score", "POST", this::score));
+        server.createContext("/waits", exchange -> handle(exchange, "/waits", "POST", this::waits));
+        server.createContext("/batch", exchange -> handle(exchange, "/batch", "POST", this::batch));
+        server.createContext("/stats", exchange -> handle(exchange, "/stats", "GET", body -> stats()));
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    /**
+     * Stop accepting requests, and wait for at most {@code delaySeconds} until requests in flight are handled.
+     */
+    public void stop(int delaySeconds) {
+        server.stop(delaySeconds);
+        executor.shutdown();
+    }
+
+    /**
+     * Get the bound address, e.g. to find the ephemeral port.
+     */
+    public InetSocketAddress getAddress() {
+        return server.getAddress();
+    }
+
+    /**
+     * Get the latency histogram of an endpoint like {@code "/score"}.
+     * @throws IllegalArgumentException if there is no such endpoint
+     */
+    public LatencyHistogram getHistogram(String endpoint) {
+        final LatencyHistogram histogram = histograms.get(endpoint);
+        if (histogram == null)
+            throw new IllegalArgumentException("Unknown endpoint " + endpoint);
+        return histogram;
+    }
+
+    /**
+     * Run a server until the process is terminated.
+     * Usage: {@code MCRScoringServer [--port N] [--index FILE]}, where the port is 8080 by default.
+     */
+    public static void main(String[] args) throws IOException {
+        int port = 8080;
+        Path index = null;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--port" -> port = Integer.parseInt(args[++i]);
+                    case "--index" -> index = Path.of(args[++i]);
+                    default -> throw new IllegalArgumentException(args[i]);
+                }
+            }
+        } catch (RuntimeException e) {
+            System.err.println(USAGE);
+            System.exit(2);
+            return;
+        }
+        final MCRCalculator calculator = index == null ? new MCRCalculator()
+                : new MCRCalculator(MCRWinningHandIndex.open(index));
+        final MCRScoringServer server = new MCRScoringServer(calculator, new InetSocketAddress(port));
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> server.stop(1)));
+        server.start();
+        System.err.println("Listening on " + server.getAddress());
+    }
+
+    private static final String USAGE = "Usage: MCRScoringServer [--port N] [--index FILE]";
+    private static final List<String> ENDPOINTS = List.of("/score", "/waits", "/batch", "/stats");
+    // the maximum size of a request body in bytes
+    private static final int MAX_BODY_SIZE = 1 << 20;
+    // the maximum number of hands of a batch
+    private static final int MAX_BATCH_SIZE = 1 << 14;
+
+    private final MCRCalculator calculator;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final Map<String, LatencyHistogram> histograms = new LinkedHashMap<>();
+
+    private void handle(HttpExchange exchange, String endpoint, String method, Endpoint handler) throws IOException {
+        final long start = System.nanoTime();
+        try (exchange) {
+            Response response;
+            if (!exchange.getRequestURI().getPath().equals(endpoint)) {
+                response = new Response(404, "Not found");
+            } else if (!exchange.getRequestMethod().equals(method)) {
+                exchange.getResponseHeaders().set("Allow", method);
+                response = new Response(405, "Method not allowed");
+            } else {
+                final String body = readBody(exchange.getRequestBody());
+                try {
+                    response = body == null ? new Response(413, "Request body too large") : handler.handle(body);
+                } catch (ParseException | IllegalArgumentException e) {
+                    response = new Response(400, error(e));
+                } catch (RuntimeException e) {
+                    response = new Response(500, error(e));
+                }
+            }
+            final byte[] bytes = response.body().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+            exchange.sendResponseHeaders(response.status(), bytes.length == 0 ? -1 : bytes.length);
+            if (bytes.length > 0) {
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(bytes);
+                }
+            }
+        } finally {
+            histograms.get(endpoint).record(System.nanoTime() - start);
+        }
+    }
+
+    // return null if the body is too large
+    private static String readBody(InputStream in) throws IOException {
+        final byte[] bytes = in.readNBytes(MAX_BODY_SIZE + 1);
+        return bytes.length > MAX_BODY_SIZE ? null : new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private Response score(String body) throws ParseException {
+        final MCRHand hand = new MCRHandParser().parse(body.strip());
+        return new Response(200, MCRHandScorer.format((MCRResult) calculator.calculate(hand)) + "\n");
+    }
+
+    private Response waits(String body) throws ParseException {
+        final MCRHand hand = new MCRHandParser().parse(body.strip());
+        final StringBuilder builder = new StringBuilder();
+        for (Tile tile : new MCRDeclaredTileCalculator(hand.claims, hand.tiles).calculate(false)) {
+            builder.append(tile.name()).append('\t');
+            try {
+                final MCRHand winningHand = new MCRHand(hand.flowers, hand.claims, hand.tiles, tile,
+                        hand.selfDrawn, hand.lastTile, hand.lastDrawOrClaim, hand.kong,
+                        hand.prevalentWind, hand.seatWind);
+                builder.append(MCRHandScorer.format((MCRResult) calculator.calculate(winningHand)));
+            } catch (IllegalArgumentException e) {
+                // the options may not be valid for every tile, e.g. the last tile
+                builder.append(error(e));
+            }
+            builder.append('\n');
+        }
+        return new Response(200, builder.toString());
+    }
+
+    private Response batch(String body) {
+        final MCRHandParser parser = new MCRHandParser();
+        // the hand or the error of each line
+        final List<Object> lines = new ArrayList<>();
+        final List<MCRHand> hands = new ArrayList<>();
+        for (int start = 0, end; start < body.length(); start = end + 1) {
+            end = body.indexOf('\n', start);
+            if (end < 0) end = body.length();
+            int lineStart = start, lineEnd = end;
+            while (lineStart < lineEnd && Character.isWhitespace(body.charAt(lineStart))) lineStart++;
+            while (lineEnd > lineStart && Character.isWhitespace(body.charAt(lineEnd - 1))) lineEnd--;
+            if (lineStart == lineEnd) continue;
+            if (lines.size() == MAX_BATCH_SIZE)
+                return new Response(413, "More than " + MAX_BATCH_SIZE + " hands");
+            try {
+                final MCRHand hand = parser.parse(body, lineStart, lineEnd);
+                lines.add(hand);
+                hands.add(hand);
+            } catch (ParseException | RuntimeException e) {
+                lines.add(error(e));
+            }
+        }
+        // hands with the same tiles share their analysis, e.g. variants of options for what-if analysis
+        final Map<String, List<Integer>> groups = new LinkedHashMap<>();
+        for (int i = 0; i < hands.size(); i++) {
+            groups.computeIfAbsent(MCRTileAnalysis.keyOf(hands.get(i)), key -> new ArrayList<>()).add(i);
+        }
+        final String[] results = new String[hands.size()];
+        new ArrayList<>(groups.values()).parallelStream().forEach(indices -> {
+            MCRTileAnalysis analysis = null;
+            for (int i : indices) {
+                final MCRHand hand = hands.get(i);
+                try {
+                    final MCRResult result;
+                    if (indices.size() == 1) {
+                        result = (MCRResult) calculator.calculate(hand);
+                    } else {
+                        if (analysis == null) analysis = calculator.analyze(hand);
+                        result = analysis.calculate(hand);
+                    }
+                    results[i] = MCRHandScorer.format(result);
+                } catch (RuntimeException e) {
+                    results[i] = error(e);
+                }
+            }
+        });
+        final StringBuilder builder = new StringBuilder();
+        int index = 0;
+        for (Object line : lines) {
+            builder.append(line instanceof MCRHand ? results[index++] : line).append('\n');
+        }
+        return new Response(200, builder.toString());
+    }
+
+    private Response stats() {
+        final StringBuilder builder = new StringBuilder("endpoint\tcount\tmean_us\tp50_us\tp90_us\tp99_us\tmax_us\n");
+        final Map<String, LatencyHistogram.Snapshot> snapshots = new LinkedHashMap<>();
+        histograms.forEach((endpoint, histogram) -> snapshots.put(endpoint, histogram.snapshot()));
+        snapshots.forEach((endpoint, snapshot) -> builder.append(endpoint)
+                .append('\t').append(snapshot.count())
+                .append('\t').append(String.format(Locale.ROOT, "%.1f", snapshot.getMeanMicros()))
+                .append('\t').append(snapshot.getPercentileMicros(50))
+                .append('\t').append(snapshot.getPercentileMicros(90))
+                .append('\t').append(snapshot.getPercentileMicros(99))
+                .append('\t').append(Math.ceilDiv(snapshot.maxNanos(), 1000))
+                .append('\n'));
+        // non-empty buckets by their exclusive upper bounds
+        builder.append("\nendpoint\tbucket_us\tcount\n");
+        snapshots.forEach((endpoint, snapshot) -> {
+            for (int i = 0; i < LatencyHistogram.BUCKET_COUNT; i++) {
+                if (snapshot.buckets()[i] == 0) continue;
+                final long bound = LatencyHistogram.getBucketBound(i);
+                builder.append(endpoint).append('\t')
+                        .append(bound == Long.MAX_VALUE ? "inf" : "<" + bound)
+                        .append('\t').append(snapshot.buckets()[i]).append('\n');
+            }
+        });
+        return new Response(200, builder.toString());
+    }
+
+    private static String error(Exception e) {
+        return "ERROR\t" + e.getMessage();
+    }
+
+    private record Response(int status, String body) {
+    }
+
+    @FunctionalInterface
+    private interface Endpoint {
+        Response handle(String body) throws ParseException;
+    }
+
+}
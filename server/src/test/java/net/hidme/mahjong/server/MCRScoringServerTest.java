@@ -0,0 +1,123 @@
+package net.hidme.mahjong.server;
+
+import net.hidme.mahjong.core.calc.MCRCalculator;
+import net.hidme.mahjong.core.cli.MCRHandScorer;
+import net.hidme.mahjong.core.data.MCRHand;
+import net.hidme.mahjong.core.data.MCRHandParser;
+import net.hidme.mahjong.core.data.MCRResult;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import java.util.List;
+
+public class MCRScoringServerTest {
+
+    private static MCRScoringServer server;
+
+    @BeforeAll
+    public static void start() throws IOException {
+        server = new MCRScoringServer(new MCRCalculator(), new InetSocketAddress("localhost", 0));
+        server.start();
+    }
+
+    @AfterAll
+    public static void stop() {
+        server.stop(0);
+    }
+
+    @Test
+    public void testScore() throws IOException {
+        Assertions.assertEquals(new Reply(200, "106\tNINE_GATES:1,PURE_STRAIGHT:1,TILE_HOG:1\n"),
+                request("POST", "/score", ";;11123456789999s;E,E,0,0,0,0\n"));
+        final Reply error = request("POST", "/score", ";;123m;E,E,0,0,0,0");
+        Assertions.assertEquals(400, error.status());
+        Assertions.assertTrue(error.body().startsWith("ERROR\t"), error.body());
+        Assertions.assertEquals(405, request("GET", "/score", null).status());
+        Assertions.assertEquals(404, request("POST", "/scores", "").status());
+    }
+
+    @Test
+    public void testWaits() throws IOException {
+        // nine gates waits on every characters tile, and the declared tile is only a placeholder
+        final List<String> lines = request("POST", "/waits", ";;11123456789995m;E,E,0,0,0,0")
+                .body().lines().toList();
+        Assertions.assertEquals(9, lines.size());
+        Assertions.assertTrue(lines.get(0).startsWith("M1\t"), lines.get(0));
+        Assertions.assertTrue(lines.get(8).startsWith("M9\t"), lines.get(8));
+        Assertions.assertTrue(lines.stream().allMatch(line -> line.contains("NINE_GATES")), lines.toString());
+    }
+
+    @Test
+    public void testBatch() throws IOException, ParseException {
+        final String body = "12f;9999m0;11m234567891s;E,E,1,0,0,1\n\n;;123m;E,E,0,0,0,0\r\n;;11123456789999s;E,E,0,0,0,0"
+                + "\n1f;;11123456789999s;S,W,1,0,1,0";
+        final List<String> lines = request("POST", "/batch", body).body().lines().toList();
+        Assertions.assertEquals(4, lines.size());
+        Assertions.assertTrue(lines.get(0).startsWith("35\t"), lines.get(0));
+        Assertions.assertTrue(lines.get(1).startsWith("ERROR\t"), lines.get(1));
+        Assertions.assertEquals("106\tNINE_GATES:1,PURE_STRAIGHT:1,TILE_HOG:1", lines.get(2));
+        // the same tiles with other flowers and options
+        final MCRHand variant = new MCRHandParser().parse("1f;;11123456789999s;S,W,1,0,1,0");
+        Assertions.assertEquals(MCRHandScorer.format((MCRResult) new MCRCalculator().calculate(variant)), lines.get(3));
+    }
+
+    @Test
+    public void testStats() throws IOException {
+        request("POST", "/score", ";;11123456789999s;E,E,0,0,0,0");
+        Assertions.assertTrue(server.getHistogram("/score").snapshot().count() > 0);
+        final Reply reply = request("GET", "/stats", null);
+        Assertions.assertEquals(200, reply.status());
+        Assertions.assertTrue(reply.body().lines().anyMatch(line -> line.startsWith("/score\t")), reply.body());
+        Assertions.assertThrows(IllegalArgumentException.class, () -> server.getHistogram("/unknown"));
+    }
+
+    @Test
+    public void testHistogram() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < 99; i++) {
+            histogram.record(3_000);
+        }
+        histogram.record(1_000_000);
+        final LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        Assertions.assertEquals(100, snapshot.count());
+        // 3 us falls in [2, 4) us
+        Assertions.assertEquals(4, snapshot.getPercentileMicros(50));
+        Assertions.assertEquals(4, snapshot.getPercentileMicros(99));
+        Assertions.assertEquals(1000, snapshot.getPercentileMicros(100));
+        Assertions.assertEquals(0, new LatencyHistogram().snapshot().getPercentileMicros(50));
+    }
+
+    private record Reply(int status, String body) {
+    }
+
+    private static Reply request(String method, String path, String body) throws IOException {
+        final URI uri = URI.create("http://localhost:" + server.getAddress().getPort() + path);
+        final HttpURLConnection connection = (HttpURLConnection) uri.toURL().openConnection();
+        try {
+            connection.setRequestMethod(method);
+            if (body != null) {
+                connection.setDoOutput(true);
+                try (OutputStream out = connection.getOutputStream()) {
+                    out.write(body.getBytes(StandardCharsets.UTF_8));
+                }
+            }
+            final int status = connection.getResponseCode();
+            try (InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream()) {
+                return new Reply(status, in == null ? "" : new String(in.readAllBytes(), StandardCharsets.UTF_8));
+            }
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+}